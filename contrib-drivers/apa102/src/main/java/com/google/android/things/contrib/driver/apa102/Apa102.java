@@ -23,6 +23,7 @@ import com.google.android.things.pio.PeripheralManagerService;
 import com.google.android.things.pio.SpiDevice;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Device driver for APA102 / Dotstar RGB LEDs using 2-wire SPI.
@@ -31,6 +32,11 @@ import java.io.IOException;
  *   https://en.wikipedia.org/wiki/Serial_Peripheral_Interface_Bus
  * For information on the APA102 protocol, see:
  *   https://cpldcpu.wordpress.com/2014/11/30/understanding-the-apa102-superled
+ *
+ * Sending frames, the transfer and frame skipping settings and the frame statistics are
+ * synchronized on the driver, so they can be used while an {@link Apa102Writer} or an
+ * {@link Apa102Group} sends frames from another thread. The packing settings (brightness, color
+ * correction, mode and direction) are not, and must not change while frames are written.
  */
 
 @SuppressWarnings({"unused", "WeakerAccess"})
@@ -62,6 +68,29 @@ public class Apa102 implements AutoCloseable {
      */
     public static final int MAX_BRIGHTNESS = 31;
 
+    /**
+     * The default interval at which unchanged frames are sent again, in milliseconds.
+     * @see #setRefreshInterval(long)
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL_MS = 1000;
+
+    /**
+     * The default SPI clock frequency, in Hz.
+     */
+    public static final int DEFAULT_SPI_FREQUENCY = 1000000;
+
+    /**
+     * The highest SPI clock frequency accepted by {@link #setFrequency(int)}, in Hz. Each LED
+     * regenerates the clock for the next one, so long strips or long wires may need less.
+     */
+    public static final int MAX_SPI_FREQUENCY = 20000000;
+
+    /**
+     * The default maximum size of a SPI transfer, in bytes, matching the default buffer size of
+     * the Linux spidev driver.
+     */
+    public static final int DEFAULT_MAX_TRANSFER_SIZE = 4096;
+
     // RGB LED strip configuration that must be provided by the caller.
     private Mode mLedMode;
 
@@ -71,15 +100,79 @@ public class Apa102 implements AutoCloseable {
     // Direction of the led strip;
     private Direction mDirection;
 
+    // Whether the end frame is made of zeros instead of ones
+    private boolean mZeroEndFrame;
+
     // Device SPI Configuration constants
     private static final int APA102_PACKET_LENGTH = 4;
     private static final int SPI_BPW = 8; // Bits per word
-    private static final int SPI_FREQUENCY = 1000000;
     private static final int SPI_MODE = 2;
 
     // Protocol constants for APA102c
     private static final byte[] APA_START_DATA = {0, 0, 0, 0};
-    private static final byte[] APA_END_DATA = {-1, -1, -1, -1};
+    private static final int APA_END_FRAME_MIN_LENGTH = 4;
+    // Each LED delays the data by half a clock cycle, so the end frame needs one clock edge
+    // for every two LEDs, i.e. one byte every 16 LEDs.
+    private static final int APA_END_FRAME_LEDS_PER_BYTE = 16;
+
+    // Bit shifts of the color components sent after the brightness byte, indexed by Mode ordinal
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int BLUE_SHIFT = 0;
+    private static final int[][] MODE_SHIFTS = {
+            {RED_SHIFT, GREEN_SHIFT, BLUE_SHIFT},   // RGB
+            {RED_SHIFT, BLUE_SHIFT, GREEN_SHIFT},   // RBG
+            {GREEN_SHIFT, RED_SHIFT, BLUE_SHIFT},   // GRB
+            {GREEN_SHIFT, BLUE_SHIFT, RED_SHIFT},   // GBR
+            {BLUE_SHIFT, RED_SHIFT, GREEN_SHIFT},   // BRG
+            {BLUE_SHIFT, GREEN_SHIFT, RED_SHIFT},   // BGR
+    };
+
+    // Shifts of the current mode
+    private int mShift1;
+    private int mShift2;
+    private int mShift3;
+
+    // Color correction: 8-bit component to 16-bit linear intensity, in the order the components
+    // are sent. Null when colors are sent as is.
+    private int[] mCorrection1;
+    private int[] mCorrection2;
+    private int[] mCorrection3;
+    private int[] mCorrectionRed;
+    private int[] mCorrectionGreen;
+    private int[] mCorrectionBlue;
+    // Brightness level to Q15 intensity scale
+    private static final int[] BRIGHTNESS_SCALE = new int[MAX_BRIGHTNESS + 1];
+    // Hardware brightness level to the Q16 factor mapping a 16-bit intensity to an 8-bit value
+    private static final int[] LEVEL_FACTOR = new int[MAX_BRIGHTNESS + 1];
+
+    static {
+        for (int i = 0; i <= MAX_BRIGHTNESS; i++) {
+            BRIGHTNESS_SCALE[i] = Math.round(i * 32768f / MAX_BRIGHTNESS);
+            if (i > 0) {
+                LEVEL_FACTOR[i] = (int) Math.round(
+                        MAX_BRIGHTNESS * 255 * 65536.0 / (i * 65535.0));
+            }
+        }
+    }
+
+    // Frame sent to the strip, reused as long as the number of LEDs does not change
+    private byte[] mFrame;
+    private int mFrameLedCount = -1;
+
+    // Frame diffing: copy of the last frame sent, and time it was sent. Guarded by this.
+    private boolean mSkipUnchangedFrames;
+    private long mRefreshInterval = DEFAULT_REFRESH_INTERVAL_MS * 1000000L;
+    private byte[] mLastFrame;
+    private long mLastFrameTime;
+    private long mSentFrames;
+    private long mSkippedFrames;
+
+    // SPI clock frequency and largest transfer, frames longer than that are sent in chunks.
+    // Guarded by this.
+    private int mFrequency = DEFAULT_SPI_FREQUENCY;
+    private int mMaxTransferSize = DEFAULT_MAX_TRANSFER_SIZE;
+    private byte[] mChunk;
 
     // For peripherals access
     private SpiDevice mDevice = null;
@@ -102,7 +195,7 @@ public class Apa102 implements AutoCloseable {
      * @param direction The {@link Direction} or the led strip.
      */
     public Apa102(String spiBusPort, Mode ledMode, Direction direction) throws IOException {
-        mLedMode = ledMode;
+        setLedMode(ledMode);
         mDirection = direction;
         PeripheralManagerService pioService = new PeripheralManagerService();
         mDevice = pioService.openSpiDevice(spiBusPort);
@@ -125,7 +218,7 @@ public class Apa102 implements AutoCloseable {
      */
     @VisibleForTesting
     /*package*/ Apa102(SpiDevice device, Mode ledMode, Direction direction) throws IOException {
-        mLedMode = ledMode;
+        setLedMode(ledMode);
         mDirection = direction;
         mDevice = device;
         configure(mDevice);
@@ -134,11 +227,67 @@ public class Apa102 implements AutoCloseable {
     private void configure(SpiDevice device) throws IOException {
         // Note: You may need to set bit justification for your board.
         // mDevice.setBitJustification(SPI_BITJUST);
-        device.setFrequency(SPI_FREQUENCY);
+        device.setFrequency(mFrequency);
         device.setMode(SPI_MODE);
         device.setBitsPerWord(SPI_BPW);
     }
 
+    private void setLedMode(Mode ledMode) {
+        mLedMode = ledMode;
+        int[] shifts = MODE_SHIFTS[ledMode.ordinal()];
+        mShift1 = shifts[0];
+        mShift2 = shifts[1];
+        mShift3 = shifts[2];
+    }
+
+    private int[] getCorrection(int shift) {
+        return shift == RED_SHIFT ? mCorrectionRed
+                : shift == GREEN_SHIFT ? mCorrectionGreen : mCorrectionBlue;
+    }
+
+    /**
+     * Enables gamma and color correction of the colors written to the strip. Colors are converted
+     * to linear intensities through lookup tables computed here, scaled by the white balance and
+     * the brightness, then sent with the lowest hardware brightness level able to represent them.
+     * This uses the 5-bit brightness field of each LED as extra dynamic range, so dim colors and
+     * fades keep their smoothness instead of collapsing to a few steps.
+     * @param gamma The gamma of the colors written, e.g. 2.2 for sRGB-like colors, 1 for colors
+     *              that are already linear.
+     * @param whiteBalance A {@link Color} whose components scale the red, green and blue
+     *                     channels, to compensate for the relative efficiency of the LEDs.
+     *                     {@link Color#WHITE} leaves the channels unchanged.
+     * @see #clearColorCorrection()
+     */
+    public void setColorCorrection(float gamma, int whiteBalance) {
+        if (!(gamma > 0) || Float.isInfinite(gamma)) {
+            throw new IllegalArgumentException("Invalid gamma: " + gamma);
+        }
+        mCorrectionRed = createCorrection(gamma, (whiteBalance >> RED_SHIFT) & 0xff);
+        mCorrectionGreen = createCorrection(gamma, (whiteBalance >> GREEN_SHIFT) & 0xff);
+        mCorrectionBlue = createCorrection(gamma, (whiteBalance >> BLUE_SHIFT) & 0xff);
+        mCorrection1 = getCorrection(mShift1);
+        mCorrection2 = getCorrection(mShift2);
+        mCorrection3 = getCorrection(mShift3);
+    }
+
+    /**
+     * Disables the color correction, colors are sent as is with the brightness as the hardware
+     * brightness level. This is the default.
+     * @see #setColorCorrection(float, int)
+     */
+    public void clearColorCorrection() {
+        mCorrectionRed = mCorrectionGreen = mCorrectionBlue = null;
+        mCorrection1 = mCorrection2 = mCorrection3 = null;
+    }
+
+    private static int[] createCorrection(float gamma, int scale) {
+        int[] correction = new int[256];
+        for (int i = 0; i < correction.length; i++) {
+            correction[i] = (int) Math.round(Math.pow(i / 255.0, gamma) * scale * 65535 / 255);
+        }
+        return correction;
+    }
+
     /**
      * Sets the brightness for all LEDs in the strip.
      * @param ledBrightness The brightness of the LED strip, between 0 and {@link #MAX_BRIGHTNESS}.
@@ -158,41 +307,368 @@ public class Apa102 implements AutoCloseable {
         return mLedBrightness;
     }
 
+    /**
+     * Sets the value of the end frame clocked out after the LED data. The end frame only provides
+     * the clock edges needed to push the data to the end of the strip. Ones are the traditional
+     * value, zeros avoid lighting up an LED past the end of the data when the strip is longer
+     * than the data written, and are required by some compatible LEDs such as the SK9822.
+     * @param zeroEndFrame true to send zeros, false to send ones (the default).
+     */
+    public void setZeroEndFrame(boolean zeroEndFrame) {
+        if (zeroEndFrame != mZeroEndFrame) {
+            mZeroEndFrame = zeroEndFrame;
+            // The end frame is written when the frame buffer is allocated
+            mFrame = null;
+            mFrameLedCount = -1;
+        }
+    }
+
+    /**
+     * Returns true if the end frame is made of zeros.
+     */
+    public boolean isZeroEndFrame() {
+        return mZeroEndFrame;
+    }
+
+    /**
+     * Sets the SPI clock frequency. Higher frequencies allow higher frame rates on long strips.
+     * @param frequencyHz The SPI clock frequency, up to {@link #MAX_SPI_FREQUENCY}.
+     * @throws IOException
+     */
+    public synchronized void setFrequency(int frequencyHz) throws IOException {
+        if (frequencyHz <= 0 || frequencyHz > MAX_SPI_FREQUENCY) {
+            throw new IllegalArgumentException("Frequency needs to be between 1 and "
+                    + MAX_SPI_FREQUENCY);
+        }
+        if (mDevice == null) {
+            throw new IllegalStateException("SPI device not open");
+        }
+        mDevice.setFrequency(frequencyHz);
+        mFrequency = frequencyHz;
+    }
+
+    /**
+     * Returns the SPI clock frequency, in Hz.
+     */
+    public synchronized int getFrequency() {
+        return mFrequency;
+    }
+
+    /**
+     * Sets the maximum size of a single SPI transfer. Longer frames are split into several
+     * transfers, which the APA102 protocol allows since the LEDs only follow the clock.
+     * @param maxTransferSize The maximum transfer size of the SPI bus, in bytes.
+     */
+    public synchronized void setMaxTransferSize(int maxTransferSize) {
+        if (maxTransferSize <= 0) {
+            throw new IllegalArgumentException("Max transfer size must be positive");
+        }
+        mMaxTransferSize = maxTransferSize;
+        mChunk = null;
+    }
+
+    /**
+     * Returns the maximum size of a single SPI transfer, in bytes.
+     */
+    public synchronized int getMaxTransferSize() {
+        return mMaxTransferSize;
+    }
+
+    /**
+     * Sets whether frames identical to the last frame sent are skipped. Frames are compared
+     * after packing, so changes of brightness or color correction are detected too.
+     * @param skipUnchangedFrames true to skip unchanged frames, false to send all frames
+     *                            (the default).
+     * @see #setRefreshInterval(long)
+     * @see #getSkipRatio()
+     */
+    public synchronized void setSkipUnchangedFrames(boolean skipUnchangedFrames) {
+        mSkipUnchangedFrames = skipUnchangedFrames;
+        if (!skipUnchangedFrames) {
+            mLastFrame = null;
+        }
+    }
+
+    /**
+     * Returns true if frames identical to the last frame sent are skipped.
+     */
+    public synchronized boolean isSkipUnchangedFrames() {
+        return mSkipUnchangedFrames;
+    }
+
+    /**
+     * Sets the interval at which an unchanged frame is sent anyway, to recover from glitches
+     * on the data or clock lines.
+     * @param intervalMillis The refresh interval in milliseconds, or 0 to never resend an
+     *                       unchanged frame.
+     */
+    public synchronized void setRefreshInterval(long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Refresh interval must not be negative");
+        }
+        mRefreshInterval = intervalMillis * 1000000L;
+    }
+
+    /**
+     * Returns the interval at which an unchanged frame is sent anyway, in milliseconds.
+     */
+    public synchronized long getRefreshInterval() {
+        return mRefreshInterval / 1000000L;
+    }
+
+    /**
+     * Returns the fraction of the frames written that were skipped because they were unchanged,
+     * since the last call to {@link #resetFrameStatistics()}.
+     */
+    public synchronized float getSkipRatio() {
+        long total = mSentFrames + mSkippedFrames;
+        return total == 0 ? 0f : (float) mSkippedFrames / total;
+    }
+
+    /**
+     * Returns the number of frames sent to the strip.
+     */
+    public synchronized long getSentFrames() {
+        return mSentFrames;
+    }
+
+    /**
+     * Returns the number of frames skipped because they were unchanged.
+     */
+    public synchronized long getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    /**
+     * Resets the sent and skipped frame counters.
+     */
+    public synchronized void resetFrameStatistics() {
+        mSentFrames = 0;
+        mSkippedFrames = 0;
+    }
+
     /**
      * Writes the current RGB Led data to the peripheral bus.
      * @param colors An array of integers corresponding to a {@link Color}.
      * @throws IOException
      */
     public void write(int[] colors) throws IOException {
+        write(colors, null);
+    }
+
+    /**
+     * Writes the current RGB Led data to the peripheral bus, with a brightness for each LED.
+     * @param colors An array of integers corresponding to a {@link Color}.
+     * @param brightness The brightness of each LED, between 0 and {@link #MAX_BRIGHTNESS}, or
+     *                   null to use {@link #getBrightness()} for all of them.
+     * @throws IOException
+     */
+    public void write(int[] colors, int[] brightness) throws IOException {
         if (mDevice == null) {
             throw new IllegalStateException("SPI device not open");
         }
 
-        byte[] ledData = new byte[(APA102_PACKET_LENGTH * (2 + colors.length))];
+        byte[] ledData = getFrame(colors.length);
+        packFrame(colors, brightness, ledData);
+        writeFrame(ledData);
+    }
 
-        // Add the RGB LED start bits (0 ... 0)
-        System.arraycopy(APA_START_DATA, 0, ledData, 0, APA102_PACKET_LENGTH);
+    /**
+     * Packs the LED data into a frame created by {@link #createFrame(int)}, with the current
+     * mode, direction, brightness and color correction.
+     */
+    /*package*/ void packFrame(int[] colors, int[] brightness, byte[] frame) {
+        if (brightness != null && brightness.length != colors.length) {
+            throw new IllegalArgumentException("Brightness and colors lengths differ");
+        }
+        packFrame(colors, brightness, 0, colors.length, frame);
+    }
 
-        // Compute the packets to send.
-        byte brightness = (byte) (0xE0 | mLedBrightness); // Less brightness possible
-        for (int i = 0; i < colors.length; i++) {
-            int position = ((i + 1) * APA102_PACKET_LENGTH);
-            int di = mDirection == Direction.NORMAL ? i : colors.length - i - 1;
-            byte[] colorData = getApaColorData(colors[di], brightness, mLedMode);
-            System.arraycopy(colorData, 0, ledData, position, APA102_PACKET_LENGTH);
+    /**
+     * Packs the LED data of a range of the arrays into a frame created by
+     * {@link #createFrame(int)} for count LEDs.
+     */
+    /*package*/ void packFrame(int[] colors, int[] brightness, int offset, int count,
+            byte[] frame) {
+        if (offset < 0 || count < 0 || offset + count > colors.length
+                || (brightness != null && offset + count > brightness.length)) {
+            throw new IllegalArgumentException("Range exceeds the colors");
+        }
+        if (frame.length != getFrameLength(count)) {
+            throw new IllegalArgumentException("Frame length does not match the colors");
+        }
+        // The start frame is already in place
+        if (mCorrection1 == null) {
+            pack(colors, brightness, offset, count, frame, APA102_PACKET_LENGTH);
+        } else {
+            packCorrected(colors, brightness, offset, count, frame, APA102_PACKET_LENGTH);
         }
+    }
 
-        // Add the RGB LED end bits
-        System.arraycopy(APA_END_DATA, 0, ledData, ledData.length - 4, 4);
+    /**
+     * Sends a frame packed by {@link #packFrame(int[], int[], byte[])} to the strip, unless it
+     * is skipped as unchanged.
+     * @return true if the frame was sent.
+     */
+    /*package*/ synchronized boolean writeFrame(byte[] frame) throws IOException {
+        if (mDevice == null) {
+            throw new IllegalStateException("SPI device not open");
+        }
+        long now = System.nanoTime();
+        byte[] lastFrame = mLastFrame;
+        if (mSkipUnchangedFrames && lastFrame != null
+                && (mRefreshInterval == 0 || now - mLastFrameTime < mRefreshInterval)
+                && Arrays.equals(frame, lastFrame)) {
+            mSkippedFrames++;
+            return false;
+        }
 
-        mDevice.write(ledData, ledData.length);
+        writeChunks(frame);
+        mSentFrames++;
+        if (mSkipUnchangedFrames) {
+            if (lastFrame == null || lastFrame.length != frame.length) {
+                lastFrame = mLastFrame = new byte[frame.length];
+            }
+            System.arraycopy(frame, 0, lastFrame, 0, frame.length);
+            mLastFrameTime = now;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a frame in transfers of at most the maximum transfer size.
+     */
+    private void writeChunks(byte[] frame) throws IOException {
+        int maxTransferSize = mMaxTransferSize;
+        if (frame.length <= maxTransferSize) {
+            mDevice.write(frame, frame.length);
+            return;
+        }
+        // SpiDevice.write() sends from the start of the buffer, so the first chunk is sent
+        // in place and the next ones are copied.
+        mDevice.write(frame, maxTransferSize);
+        if (mChunk == null) {
+            mChunk = new byte[maxTransferSize];
+        }
+        for (int offset = maxTransferSize; offset < frame.length; offset += maxTransferSize) {
+            int length = Math.min(maxTransferSize, frame.length - offset);
+            System.arraycopy(frame, offset, mChunk, 0, length);
+            mDevice.write(mChunk, length);
+        }
+    }
+
+    /**
+     * Packs colors as is, with the brightness as the hardware brightness level.
+     */
+    private void pack(int[] colors, int[] brightness, int offset, int count, byte[] ledData,
+            int position) {
+        byte defaultBrightness = (byte) (0xE0 | mLedBrightness); // Less brightness possible
+        int shift1 = mShift1;
+        int shift2 = mShift2;
+        int shift3 = mShift3;
+        boolean reversed = mDirection == Direction.REVERSED;
+        for (int i = 0; i < count; i++) {
+            int index = offset + (reversed ? count - i - 1 : i);
+            int color = colors[index];
+            ledData[position] = brightness == null ? defaultBrightness
+                    : (byte) (0xE0 | checkBrightness(brightness[index]));
+            ledData[position + 1] = (byte) (color >> shift1);
+            ledData[position + 2] = (byte) (color >> shift2);
+            ledData[position + 3] = (byte) (color >> shift3);
+            position += APA102_PACKET_LENGTH;
+        }
+    }
+
+    /**
+     * Packs colors through the color correction tables, choosing the hardware brightness level
+     * of each LED from its intensity.
+     */
+    private void packCorrected(int[] colors, int[] brightness, int offset, int count, byte[] ledData,
+            int position) {
+        int defaultScale = BRIGHTNESS_SCALE[mLedBrightness];
+        int shift1 = mShift1;
+        int shift2 = mShift2;
+        int shift3 = mShift3;
+        int[] correction1 = mCorrection1;
+        int[] correction2 = mCorrection2;
+        int[] correction3 = mCorrection3;
+        boolean reversed = mDirection == Direction.REVERSED;
+        for (int i = 0; i < count; i++) {
+            int index = offset + (reversed ? count - i - 1 : i);
+            int color = colors[index];
+            int scale = brightness == null ? defaultScale
+                    : BRIGHTNESS_SCALE[checkBrightness(brightness[index])];
+            // 16-bit linear intensities
+            int c1 = correction1[(color >> shift1) & 0xff] * scale >> 15;
+            int c2 = correction2[(color >> shift2) & 0xff] * scale >> 15;
+            int c3 = correction3[(color >> shift3) & 0xff] * scale >> 15;
+            // Lowest level at which the brightest component fits in 8 bits
+            int level = (Math.max(c1, Math.max(c2, c3)) * MAX_BRIGHTNESS >> 16) + 1;
+            if (level > MAX_BRIGHTNESS) {
+                level = MAX_BRIGHTNESS;
+            }
+            int factor = LEVEL_FACTOR[level];
+            ledData[position] = (byte) (0xE0 | level);
+            ledData[position + 1] = (byte) Math.min(255, (c1 * factor + 0x8000) >> 16);
+            ledData[position + 2] = (byte) Math.min(255, (c2 * factor + 0x8000) >> 16);
+            ledData[position + 3] = (byte) Math.min(255, (c3 * factor + 0x8000) >> 16);
+            position += APA102_PACKET_LENGTH;
+        }
+    }
+
+    private static int checkBrightness(int brightness) {
+        if ((brightness & ~MAX_BRIGHTNESS) != 0) {
+            throw new IllegalArgumentException("Brightness needs to be between 0 and "
+                    + MAX_BRIGHTNESS);
+        }
+        return brightness;
+    }
+
+    /**
+     * Returns the frame buffer for the given number of LEDs, with the start and end frames
+     * already written.
+     */
+    private byte[] getFrame(int ledCount) {
+        if (ledCount != mFrameLedCount) {
+            mFrame = createFrame(ledCount);
+            mFrameLedCount = ledCount;
+        }
+        return mFrame;
+    }
+
+    /**
+     * Creates a frame buffer for the given number of LEDs, with the start and end frames
+     * written.
+     */
+    /*package*/ byte[] createFrame(int ledCount) {
+        int dataLength = APA102_PACKET_LENGTH * (1 + ledCount);
+        byte[] frame = new byte[getFrameLength(ledCount)];
+        System.arraycopy(APA_START_DATA, 0, frame, 0, APA102_PACKET_LENGTH);
+        Arrays.fill(frame, dataLength, frame.length, mZeroEndFrame ? 0 : (byte) 0xFF);
+        return frame;
+    }
+
+    /**
+     * Returns the length of a frame for the given number of LEDs, in bytes.
+     */
+    /*package*/ static int getFrameLength(int ledCount) {
+        return APA102_PACKET_LENGTH * (1 + ledCount) + getEndFrameLength(ledCount);
+    }
+
+    /**
+     * Returns the length of the end frame for the given number of LEDs, in bytes.
+     */
+    @VisibleForTesting
+    static int getEndFrameLength(int ledCount) {
+        return Math.max(APA_END_FRAME_MIN_LENGTH,
+                (ledCount + APA_END_FRAME_LEDS_PER_BYTE - 1) / APA_END_FRAME_LEDS_PER_BYTE);
     }
 
     /**
      * Releases the SPI interface and related resources.
      */
     @Override
-    public void close() throws IOException {
+    public synchronized void close() throws IOException {
         if (mDevice != null) {
             try {
                 mDevice.close();
@@ -209,24 +685,8 @@ public class Apa102 implements AutoCloseable {
      */
     @VisibleForTesting
     static byte[] getApaColorData(int color, byte brightness, Mode ledMode) {
-        int r = Color.red(color);
-        int g = Color.green(color);
-        int b = Color.blue(color);
-
-        switch(ledMode) {
-            case RBG:
-                return new byte[] {brightness, (byte) r, (byte) b, (byte) g};
-            case BGR:
-                return new byte[] {brightness, (byte) b, (byte) g, (byte) r};
-            case BRG:
-                return new byte[] {brightness, (byte) b, (byte) r, (byte) g};
-            case GRB:
-                return new byte[] {brightness, (byte) g, (byte) r, (byte) b};
-            case GBR:
-                return new byte[] {brightness, (byte) g, (byte) b, (byte) r};
-            default:
-                // RGB
-                return new byte[] {brightness, (byte) r, (byte) g, (byte) b};
-        }
+        int[] shifts = MODE_SHIFTS[ledMode.ordinal()];
+        return new byte[] {brightness, (byte) (color >> shifts[0]), (byte) (color >> shifts[1]),
+                (byte) (color >> shifts[2])};
     }
 }
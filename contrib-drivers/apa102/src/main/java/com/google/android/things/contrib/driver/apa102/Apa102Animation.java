@@ -0,0 +1,368 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays a sequence of keyframed effects on an {@link Apa102} strip.
+ *
+ * Each keyframe shows an {@link Effect} for a duration, optionally cross-fading from the previous
+ * keyframe. Frames are computed from the elapsed time rather than a frame counter, so the
+ * animation keeps its speed whatever the frame rate. The colors and the packed frame are
+ * allocated once, and the provided effects use integer math and precomputed palettes, so
+ * rendering a frame does not allocate.
+ *
+ * The strip settings (mode, direction, end frame) must be set before the animation is created;
+ * brightness and color correction are applied when a frame is written.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Apa102Animation {
+
+    /**
+     * Renders the colors of an effect at a given time.
+     */
+    public interface Effect {
+        /**
+         * Renders the effect.
+         * @param colors The colors to fill, one for each LED.
+         * @param timeMillis The time since the start of the keyframe, in milliseconds.
+         */
+        void render(int[] colors, long timeMillis);
+    }
+
+    private final Apa102 mLeds;
+    private final int[] mColors;
+    private final int[] mTransitionColors;
+    private final byte[] mFrame;
+
+    private final List<Keyframe> mKeyframes = new ArrayList<>();
+    private long mDuration;
+    private boolean mLooping = true;
+
+    /**
+     * Create a new animation for the given strip.
+     *
+     * @param leds The strip frames are written to. The animation does not close it.
+     * @param ledCount The number of LEDs of the strip.
+     */
+    public Apa102Animation(Apa102 leds, int ledCount) {
+        if (ledCount < 0) {
+            throw new IllegalArgumentException("ledCount must not be negative");
+        }
+        mLeds = leds;
+        mColors = new int[ledCount];
+        mTransitionColors = new int[ledCount];
+        mFrame = leds.createFrame(ledCount);
+    }
+
+    /**
+     * Adds a keyframe at the end of the animation.
+     * @param effect The effect shown by the keyframe.
+     * @param durationMillis The duration of the keyframe, in milliseconds.
+     * @param transitionMillis The duration of the cross-fade from the previous keyframe at the
+     *                         start of this one, in milliseconds. Ignored for the first keyframe
+     *                         of an animation that does not loop.
+     */
+    public void addKeyframe(Effect effect, long durationMillis, long transitionMillis) {
+        if (durationMillis <= 0) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        if (transitionMillis < 0 || transitionMillis > durationMillis) {
+            throw new IllegalArgumentException("Transition must be between 0 and the duration");
+        }
+        mKeyframes.add(new Keyframe(effect, mDuration, durationMillis, transitionMillis));
+        mDuration += durationMillis;
+    }
+
+    /**
+     * Removes all the keyframes.
+     */
+    public void clearKeyframes() {
+        mKeyframes.clear();
+        mDuration = 0;
+    }
+
+    /**
+     * Returns the total duration of the keyframes, in milliseconds.
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * Sets whether the animation starts over after the last keyframe. Otherwise the last
+     * keyframe keeps being rendered.
+     */
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    /**
+     * Returns true if the animation starts over after the last keyframe.
+     */
+    public boolean isLooping() {
+        return mLooping;
+    }
+
+    /**
+     * Renders the animation at the given time.
+     * @param timeMillis The time since the start of the animation, in milliseconds.
+     * @return The colors of the LEDs, valid until the next frame is rendered.
+     */
+    public int[] render(long timeMillis) {
+        if (mKeyframes.isEmpty()) {
+            throw new IllegalStateException("No keyframes");
+        }
+        if (timeMillis < 0) {
+            timeMillis = 0;
+        }
+        if (mLooping) {
+            timeMillis %= mDuration;
+        }
+        int index = findKeyframe(timeMillis);
+        Keyframe keyframe = mKeyframes.get(index);
+        long keyframeTime = timeMillis - keyframe.mStart;
+        keyframe.mEffect.render(mColors, keyframeTime);
+
+        if (keyframeTime < keyframe.mTransition && (index > 0 || mLooping)) {
+            // Cross-fade from the end of the previous keyframe
+            Keyframe previous = mKeyframes.get(index > 0 ? index - 1 : mKeyframes.size() - 1);
+            previous.mEffect.render(mTransitionColors, previous.mDuration + keyframeTime);
+            int amount = (int) (keyframeTime * 255 / keyframe.mTransition);
+            for (int i = 0; i < mColors.length; i++) {
+                mColors[i] = Apa102Colors.blend(mTransitionColors[i], mColors[i], amount);
+            }
+        }
+        return mColors;
+    }
+
+    /**
+     * Renders the animation at the given time and writes it to the strip.
+     * @param timeMillis The time since the start of the animation, in milliseconds.
+     * @throws IOException
+     */
+    public void write(long timeMillis) throws IOException {
+        mLeds.packFrame(render(timeMillis), null, mFrame);
+        mLeds.writeFrame(mFrame);
+    }
+
+    private int findKeyframe(long timeMillis) {
+        int index = mKeyframes.size() - 1;
+        while (index > 0 && mKeyframes.get(index).mStart > timeMillis) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Creates an effect rotating a cyclic gradient along the strip.
+     * @param palette The colors of the gradient, spread over the whole strip, for example from
+     *                {@link Apa102Colors#createHuePalette(int, int, int)}.
+     * @param periodMillis The time of a full rotation in milliseconds, or 0 for a still
+     *                     gradient. Negative periods rotate backwards.
+     */
+    public static Effect gradient(int[] palette, long periodMillis) {
+        if (palette.length == 0) {
+            throw new IllegalArgumentException("Palette must not be empty");
+        }
+        return new GradientEffect(palette.clone(), periodMillis);
+    }
+
+    /**
+     * Creates an effect moving a dot with a fading tail along the strip.
+     * @param color The color of the dot.
+     * @param background The color of the other LEDs.
+     * @param tailLength The number of LEDs of the dot and its tail.
+     * @param periodMillis The time for the dot to go along the whole strip, in milliseconds.
+     */
+    public static Effect chase(int color, int background, int tailLength, long periodMillis) {
+        if (tailLength <= 0) {
+            throw new IllegalArgumentException("Tail length must be positive");
+        }
+        checkPeriod(periodMillis);
+        return new ChaseEffect(color, background, tailLength, periodMillis);
+    }
+
+    /**
+     * Creates an effect smoothly dimming and brightening a color, like breathing.
+     * @param color The color at full brightness.
+     * @param periodMillis The time of a full breath, in milliseconds.
+     */
+    public static Effect breathe(int color, long periodMillis) {
+        checkPeriod(periodMillis);
+        return new BreatheEffect(color, periodMillis);
+    }
+
+    /**
+     * Creates an effect fading all the LEDs from a color to another.
+     * @param from The color at the start of the keyframe.
+     * @param to The color at the end of the fade, kept afterwards.
+     * @param durationMillis The duration of the fade, in milliseconds.
+     */
+    public static Effect fade(int from, int to, long durationMillis) {
+        if (durationMillis < 0) {
+            throw new IllegalArgumentException("Duration must not be negative");
+        }
+        return new FadeEffect(from, to, durationMillis);
+    }
+
+    private static void checkPeriod(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+    }
+
+    /**
+     * Returns the position in a cycle at the given time, from 0 to range - 1.
+     */
+    private static long getPhase(long timeMillis, long periodMillis, long range) {
+        long time = timeMillis % periodMillis;
+        if (time < 0) {
+            time += periodMillis;
+        }
+        return time * range / periodMillis;
+    }
+
+    private static class Keyframe {
+        final Effect mEffect;
+        final long mStart;
+        final long mDuration;
+        final long mTransition;
+
+        Keyframe(Effect effect, long start, long duration, long transition) {
+            mEffect = effect;
+            mStart = start;
+            mDuration = duration;
+            mTransition = transition;
+        }
+    }
+
+    private static class GradientEffect implements Effect {
+        private final int[] mPalette;
+        private final long mPeriod;
+
+        GradientEffect(int[] palette, long period) {
+            mPalette = palette;
+            mPeriod = period;
+        }
+
+        @Override
+        public void render(int[] colors, long timeMillis) {
+            int size = mPalette.length;
+            // Positions in the palette, with 8 fractional bits
+            long total = (long) size << 8;
+            long shift = 0;
+            if (mPeriod > 0) {
+                shift = getPhase(timeMillis, mPeriod, total);
+            } else if (mPeriod < 0) {
+                shift = (total - getPhase(timeMillis, -mPeriod, total)) % total;
+            }
+            for (int i = 0; i < colors.length; i++) {
+                long position = ((long) i * total / colors.length + shift) % total;
+                int index = (int) (position >> 8);
+                colors[i] = Apa102Colors.blend(mPalette[index], mPalette[(index + 1) % size],
+                        (int) (position & 0xff));
+            }
+        }
+    }
+
+    private static class ChaseEffect implements Effect {
+        private final int mColor;
+        private final int mBackground;
+        private final int mTailLength;
+        private final long mPeriod;
+
+        ChaseEffect(int color, int background, int tailLength, long period) {
+            mColor = color;
+            mBackground = background;
+            mTailLength = tailLength;
+            mPeriod = period;
+        }
+
+        @Override
+        public void render(int[] colors, long timeMillis) {
+            int count = colors.length;
+            int head = (int) getPhase(timeMillis, mPeriod, count);
+            for (int i = 0; i < count; i++) {
+                int distance = head - i;
+                if (distance < 0) {
+                    distance += count;
+                }
+                colors[i] = distance >= mTailLength ? mBackground
+                        : Apa102Colors.blend(mBackground, mColor,
+                                255 * (mTailLength - distance) / mTailLength);
+            }
+        }
+    }
+
+    private static class BreatheEffect implements Effect {
+        // Breathing curve over a period, (1 - cos) / 2 scaled to 0..255
+        private static final int[] CURVE = new int[256];
+
+        static {
+            for (int i = 0; i < CURVE.length; i++) {
+                CURVE[i] = (int) Math.round(
+                        (1 - Math.cos(2 * Math.PI * i / CURVE.length)) / 2 * 255);
+            }
+        }
+
+        private final int mColor;
+        private final long mPeriod;
+
+        BreatheEffect(int color, long period) {
+            mColor = color;
+            mPeriod = period;
+        }
+
+        @Override
+        public void render(int[] colors, long timeMillis) {
+            int phase = (int) getPhase(timeMillis, mPeriod, 65536);
+            int index = phase >> 8;
+            int fraction = phase & 0xff;
+            int level = CURVE[index]
+                    + ((CURVE[(index + 1) & 0xff] - CURVE[index]) * fraction >> 8);
+            int color = Apa102Colors.scale(mColor, level);
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = color;
+            }
+        }
+    }
+
+    private static class FadeEffect implements Effect {
+        private final int mFrom;
+        private final int mTo;
+        private final long mDuration;
+
+        FadeEffect(int from, int to, long duration) {
+            mFrom = from;
+            mTo = to;
+            mDuration = duration;
+        }
+
+        @Override
+        public void render(int[] colors, long timeMillis) {
+            int color = timeMillis >= mDuration ? mTo
+                    : Apa102Colors.blend(mFrom, mTo, (int) (timeMillis * 255 / mDuration));
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = color;
+            }
+        }
+    }
+}
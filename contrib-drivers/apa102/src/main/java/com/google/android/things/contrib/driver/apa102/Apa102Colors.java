@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+/**
+ * Integer color math for LED animations: HSV to RGB conversion, blending and palettes.
+ *
+ * Colors are packed like {@link android.graphics.Color}, with 8 bits per channel. Hue is an
+ * integer from 0 to {@link #HUE_RANGE} - 1, with 256 steps between primary and secondary colors,
+ * and saturation and value go from 0 to 255. Nothing here uses floating point or allocates,
+ * except the palette factories.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Apa102Colors {
+
+    /**
+     * Number of hue steps in a full turn of the color wheel.
+     */
+    public static final int HUE_RANGE = 6 * 256;
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private Apa102Colors() {
+    }
+
+    /**
+     * Converts a HSV color to RGB.
+     * @param hue The hue, wrapped to 0..{@link #HUE_RANGE} - 1.
+     * @param saturation The saturation, from 0 to 255.
+     * @param value The value, from 0 to 255.
+     * @return The opaque RGB color.
+     */
+    public static int hsvToColor(int hue, int saturation, int value) {
+        hue %= HUE_RANGE;
+        if (hue < 0) {
+            hue += HUE_RANGE;
+        }
+        int sector = hue >> 8;
+        int fraction = hue & 0xff;
+        int p = div255(value * (255 - saturation));
+        int q = div255(value * (255 - div255(saturation * fraction)));
+        int t = div255(value * (255 - div255(saturation * (255 - fraction))));
+        switch (sector) {
+            case 0:
+                return rgb(value, t, p);
+            case 1:
+                return rgb(q, value, p);
+            case 2:
+                return rgb(p, value, t);
+            case 3:
+                return rgb(p, q, value);
+            case 4:
+                return rgb(t, p, value);
+            default:
+                return rgb(value, p, q);
+        }
+    }
+
+    /**
+     * Blends two colors.
+     * @param from The color returned for an amount of 0.
+     * @param to The color returned for an amount of 255.
+     * @param amount The weight of the second color, from 0 to 255.
+     * @return The opaque blended color.
+     */
+    public static int blend(int from, int to, int amount) {
+        int inverse = 255 - amount;
+        return rgb(div255(((from >> 16) & 0xff) * inverse + ((to >> 16) & 0xff) * amount),
+                div255(((from >> 8) & 0xff) * inverse + ((to >> 8) & 0xff) * amount),
+                div255((from & 0xff) * inverse + (to & 0xff) * amount));
+    }
+
+    /**
+     * Scales the channels of a color.
+     * @param color The color.
+     * @param scale The scale, from 0 for black to 255 for the color unchanged.
+     * @return The opaque scaled color.
+     */
+    public static int scale(int color, int scale) {
+        return blend(0, color, scale);
+    }
+
+    /**
+     * Creates a palette going around the color wheel.
+     * @param size The number of colors of the palette.
+     * @param saturation The saturation of the colors, from 0 to 255.
+     * @param value The value of the colors, from 0 to 255.
+     */
+    public static int[] createHuePalette(int size, int saturation, int value) {
+        checkPaletteSize(size);
+        int[] palette = new int[size];
+        for (int i = 0; i < size; i++) {
+            palette[i] = hsvToColor(i * HUE_RANGE / size, saturation, value);
+        }
+        return palette;
+    }
+
+    /**
+     * Creates a cyclic palette blending evenly spaced key colors, the last one blending back
+     * into the first one.
+     * @param size The number of colors of the palette.
+     * @param colors The key colors.
+     */
+    public static int[] createGradientPalette(int size, int... colors) {
+        checkPaletteSize(size);
+        if (colors.length == 0) {
+            throw new IllegalArgumentException("At least one color is needed");
+        }
+        int[] palette = new int[size];
+        for (int i = 0; i < size; i++) {
+            // Position in key colors, with 8 fractional bits
+            int position = (int) ((long) i * colors.length * 256 / size);
+            int key = position >> 8;
+            palette[i] = blend(colors[key], colors[(key + 1) % colors.length],
+                    position & 0xff);
+        }
+        return palette;
+    }
+
+    private static void checkPaletteSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Palette size must be positive");
+        }
+    }
+
+    private static int rgb(int red, int green, int blue) {
+        return OPAQUE | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Divides a value from 0 to 255 * 255 by 255, rounded.
+     */
+    private static int div255(int value) {
+        value += 128;
+        return (value + (value >> 8)) >> 8;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drives several {@link Apa102} strips, typically on different SPI buses, as one canvas of LEDs.
+ *
+ * Each strip shows a range of the canvas. Once started, {@link #write(int[], int[])} packs and
+ * sends the range of each strip from its own thread, the first strip on the calling thread, and
+ * returns when all of them are sent. A frame then takes as long as the longest strip rather than
+ * the sum of all strips. When not started, the strips are written one after the other on the
+ * calling thread.
+ *
+ * Strips must be added before the group is started, with their settings (mode, direction, end
+ * frame) already set. Frames must be written from a single thread.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Apa102Group {
+    private static final String TAG = "Apa102Group";
+
+    private final List<Output> mOutputs = new ArrayList<>();
+    private int mLedCount;
+
+    private final Object mLock = new Object();
+    private boolean mRunning;
+    private Thread[] mThreads;
+    // Frame being written by the output threads, published with mLock held
+    private int mGeneration;
+    private int mPending;
+    private int[] mColors;
+    private int[] mBrightness;
+    private Exception mError;
+    // Set when an output thread exits while the group is running
+    private boolean mOutputStopped;
+
+    /**
+     * Adds a strip showing a range of the canvas. The group does not close it.
+     * @param leds The strip.
+     * @param offset The index in the canvas of the first LED of the strip.
+     * @param ledCount The number of LEDs of the strip.
+     * @return The index of the strip in the group.
+     */
+    public int addStrip(Apa102 leds, int offset, int ledCount) {
+        if (offset < 0 || ledCount < 0) {
+            throw new IllegalArgumentException("offset and ledCount must not be negative");
+        }
+        synchronized (mLock) {
+            if (mThreads != null) {
+                throw new IllegalStateException("Strips must be added before start()");
+            }
+            mOutputs.add(new Output(leds, offset, ledCount));
+            mLedCount = Math.max(mLedCount, offset + ledCount);
+            return mOutputs.size() - 1;
+        }
+    }
+
+    /**
+     * Returns the number of strips.
+     */
+    public int getStripCount() {
+        return mOutputs.size();
+    }
+
+    /**
+     * Returns the strip at the given index.
+     */
+    public Apa102 getStrip(int index) {
+        return mOutputs.get(index).mLeds;
+    }
+
+    /**
+     * Returns the number of LEDs of the canvas, up to the end of the last range.
+     */
+    public int getLedCount() {
+        return mLedCount;
+    }
+
+    /**
+     * Starts one output thread for each strip after the first one.
+     * @throws IllegalStateException if no strip was added.
+     */
+    public void start() {
+        synchronized (mLock) {
+            if (mThreads != null) {
+                return;
+            }
+            if (mOutputs.isEmpty()) {
+                throw new IllegalStateException("No strips");
+            }
+            mRunning = true;
+            mOutputStopped = false;
+            mThreads = new Thread[mOutputs.size() - 1];
+            for (int i = 0; i < mThreads.length; i++) {
+                mThreads[i] = new Thread(new OutputLoop(mOutputs.get(i + 1), mGeneration),
+                        TAG + "-" + (i + 1));
+                mThreads[i].start();
+            }
+        }
+    }
+
+    /**
+     * Stops the output threads. Must not be called during {@link #write(int[], int[])}.
+     * @throws InterruptedException if interrupted while waiting for the output threads.
+     */
+    public void stop() throws InterruptedException {
+        Thread[] threads;
+        synchronized (mLock) {
+            threads = mThreads;
+            if (threads == null) {
+                return;
+            }
+            mRunning = false;
+            mThreads = null;
+            mLock.notifyAll();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Writes the canvas to all the strips.
+     * @param colors An array of {@link #getLedCount()} integers corresponding to a
+     *               {@link android.graphics.Color}.
+     * @throws IOException
+     * @see #write(int[], int[])
+     */
+    public void write(int[] colors) throws IOException {
+        write(colors, null);
+    }
+
+    /**
+     * Writes the canvas to all the strips, and waits until all of them are sent. The arrays are
+     * not used after the call returns, so the call waits for the strips even if the thread is
+     * interrupted, and the interrupt status is set again on return.
+     * @param colors An array of {@link #getLedCount()} integers corresponding to a
+     *               {@link android.graphics.Color}.
+     * @param brightness The brightness of each LED, or null to use the brightness of each strip.
+     * @throws IOException if the transfer to one of the strips failed. The other strips are
+     *                     still written.
+     * @throws IllegalStateException if an output thread stopped, for example because it was
+     *                               interrupted. The group must be stopped and started again.
+     */
+    public void write(int[] colors, int[] brightness) throws IOException {
+        if (colors.length != mLedCount) {
+            throw new IllegalArgumentException("Expected " + mLedCount + " colors");
+        }
+        if (brightness != null && brightness.length != mLedCount) {
+            throw new IllegalArgumentException("Brightness and colors lengths differ");
+        }
+        if (mOutputs.isEmpty()) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mThreads == null) {
+                // Not started, write each strip in turn
+                Exception error = null;
+                for (Output output : mOutputs) {
+                    error = firstError(error, output.write(colors, brightness));
+                }
+                throwError(error);
+                return;
+            }
+            if (mOutputStopped) {
+                throw new IllegalStateException("An output thread stopped");
+            }
+            mColors = colors;
+            mBrightness = brightness;
+            mPending = mThreads.length;
+            mGeneration++;
+            mLock.notifyAll();
+        }
+
+        Exception error = mOutputs.get(0).write(colors, brightness);
+        boolean interrupted = false;
+        synchronized (mLock) {
+            while (mRunning && mPending > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // The output threads may still be using the arrays
+                    interrupted = true;
+                }
+            }
+            mColors = null;
+            mBrightness = null;
+            error = firstError(error, mError);
+            mError = null;
+            if (mOutputStopped) {
+                error = firstError(error, new IllegalStateException("An output thread stopped"));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        throwError(error);
+    }
+
+    private static Exception firstError(Exception error, Exception newError) {
+        return error != null ? error : newError;
+    }
+
+    private static void throwError(Exception error) throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+
+    /**
+     * A strip with its range of the canvas and its own frame buffer.
+     */
+    private static class Output {
+        private final Apa102 mLeds;
+        private final int mOffset;
+        private final int mLedCount;
+        private final byte[] mFrame;
+
+        Output(Apa102 leds, int offset, int ledCount) {
+            mLeds = leds;
+            mOffset = offset;
+            mLedCount = ledCount;
+            mFrame = leds.createFrame(ledCount);
+        }
+
+        /**
+         * Packs and sends the range of the strip.
+         * @return the error that occurred, if any.
+         */
+        Exception write(int[] colors, int[] brightness) {
+            try {
+                mLeds.packFrame(colors, brightness, mOffset, mLedCount, mFrame);
+                mLeds.writeFrame(mFrame);
+                return null;
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Unable to write strip", e);
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Loop of an output thread, writing one strip for each new frame.
+     */
+    private class OutputLoop implements Runnable {
+        private final Output mOutput;
+        private int mLastGeneration;
+
+        OutputLoop(Output output, int generation) {
+            mOutput = output;
+            mLastGeneration = generation;
+        }
+
+        @Override
+        public void run() {
+            boolean writing = false;
+            try {
+                while (true) {
+                    int[] colors;
+                    int[] brightness;
+                    synchronized (mLock) {
+                        while (mRunning && mGeneration == mLastGeneration) {
+                            mLock.wait();
+                        }
+                        if (!mRunning) {
+                            return;
+                        }
+                        mLastGeneration = mGeneration;
+                        colors = mColors;
+                        brightness = mBrightness;
+                        writing = true;
+                    }
+                    // Only this thread uses the frame of its strip
+                    Exception error = mOutput.write(colors, brightness);
+                    synchronized (mLock) {
+                        mError = firstError(mError, error);
+                        writing = false;
+                        if (--mPending == 0) {
+                            mLock.notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Output thread interrupted", e);
+            } finally {
+                synchronized (mLock) {
+                    if (mRunning) {
+                        // Fail the following writes rather than waiting for this thread
+                        mOutputStopped = true;
+                        if ((writing || mLastGeneration != mGeneration) && --mPending == 0) {
+                            mLock.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
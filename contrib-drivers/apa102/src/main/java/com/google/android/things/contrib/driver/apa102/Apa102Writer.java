@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * Writes frames to an {@link Apa102} strip from a dedicated output thread, so that the next
+ * frame can be rendered while the current one is clocked out.
+ *
+ * {@link #swap(int[], int[])} packs the colors into the back buffer on the calling thread and
+ * queues it for output, then returns without waiting for the transfer. The output thread sends
+ * the most recent frame at each slot of the target frame rate. A frame replaced before it was
+ * sent is counted as dropped, a frame sent more than one period after its slot as late.
+ *
+ * The strip settings (mode, direction, end frame) must be set before the writer is created;
+ * brightness and color correction are applied when a frame is swapped.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Apa102Writer {
+    private static final String TAG = "Apa102Writer";
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final Apa102 mLeds;
+    private final int mLedCount;
+
+    // Triple buffer: the back frame is packed by the caller, the middle one is queued, and the
+    // front one is sent by the output thread. Frames are only exchanged with mLock held.
+    private final byte[][] mFrames = new byte[3][];
+    private int mBack = 0;
+    private int mMiddle = 1;
+    private int mFront = 2;
+    private boolean mQueued;
+
+    private final Object mLock = new Object();
+    private Thread mThread;
+    private boolean mRunning;
+    private long mFramePeriod;
+    private long mNextSlot;
+    private IOException mError;
+    // Set when the output thread exits while the writer is running
+    private boolean mOutputStopped;
+
+    private long mFramesWritten;
+    private long mDroppedFrames;
+    private long mLateFrames;
+
+    /**
+     * Create a new writer for the given strip.
+     *
+     * @param leds The strip frames are written to. The writer does not close it.
+     * @param ledCount The number of LEDs of each frame.
+     */
+    public Apa102Writer(Apa102 leds, int ledCount) {
+        if (ledCount < 0) {
+            throw new IllegalArgumentException("ledCount must not be negative");
+        }
+        mLeds = leds;
+        mLedCount = ledCount;
+        for (int i = 0; i < mFrames.length; i++) {
+            mFrames[i] = leds.createFrame(ledCount);
+        }
+    }
+
+    /**
+     * Returns the number of LEDs of each frame.
+     */
+    public int getLedCount() {
+        return mLedCount;
+    }
+
+    /**
+     * Sets the target frame rate. Frames are sent at most at this rate, at regular intervals.
+     * @param framesPerSecond The target frame rate, or 0 to send each frame as soon as possible.
+     */
+    public void setFrameRate(int framesPerSecond) {
+        if (framesPerSecond < 0) {
+            throw new IllegalArgumentException("Frame rate must not be negative");
+        }
+        synchronized (mLock) {
+            mFramePeriod = framesPerSecond == 0 ? 0 : NANOS_PER_SECOND / framesPerSecond;
+            mNextSlot = 0;
+        }
+    }
+
+    /**
+     * Starts the output thread.
+     */
+    public void start() {
+        synchronized (mLock) {
+            if (mThread != null) {
+                return;
+            }
+            mRunning = true;
+            mNextSlot = 0;
+            mThread = new Thread(mOutputLoop, TAG);
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stops the output thread, after the transfer in progress if any. A queued frame stays
+     * queued until the writer is started again. Also recovers from an output thread that
+     * stopped by itself, see {@link #swap(int[], int[])}.
+     * @throws InterruptedException if interrupted while waiting for the output thread.
+     */
+    public void stop() throws InterruptedException {
+        Thread thread;
+        synchronized (mLock) {
+            thread = mThread;
+            if (thread == null) {
+                return;
+            }
+            mRunning = false;
+            mThread = null;
+            mOutputStopped = false;
+            mLock.notifyAll();
+        }
+        thread.join();
+    }
+
+    /**
+     * Packs a frame and queues it for output, replacing the queued frame if it was not sent yet.
+     * @param colors An array of {@link #getLedCount()} integers corresponding to a
+     *               {@link android.graphics.Color}.
+     * @throws IOException if the transfer of a previous frame failed.
+     * @throws IllegalStateException if the output thread stopped.
+     * @see #swap(int[], int[])
+     */
+    public void swap(int[] colors) throws IOException {
+        swap(colors, null);
+    }
+
+    /**
+     * Packs a frame and queues it for output, replacing the queued frame if it was not sent yet.
+     * The arrays are not used after the call returns, and can be updated for the next frame.
+     * @param colors An array of {@link #getLedCount()} integers corresponding to a
+     *               {@link android.graphics.Color}.
+     * @param brightness The brightness of each LED, or null to use the strip brightness.
+     * @throws IOException if the transfer of a previous frame failed.
+     * @throws IllegalStateException if the output thread stopped, for example because it was
+     *                               interrupted. The writer must be stopped and started again.
+     */
+    public void swap(int[] colors, int[] brightness) throws IOException {
+        if (colors.length != mLedCount) {
+            throw new IllegalArgumentException("Expected " + mLedCount + " colors");
+        }
+        synchronized (mLock) {
+            if (mOutputStopped) {
+                throw new IllegalStateException("Output thread stopped");
+            }
+        }
+        // Only the caller uses the back frame
+        mLeds.packFrame(colors, brightness, mFrames[mBack]);
+        IOException error;
+        synchronized (mLock) {
+            if (mQueued) {
+                mDroppedFrames++;
+            }
+            int back = mBack;
+            mBack = mMiddle;
+            mMiddle = back;
+            mQueued = true;
+            error = mError;
+            mError = null;
+            mLock.notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Returns the number of frames sent to the strip, not counting the frames skipped by
+     * {@link Apa102#setSkipUnchangedFrames(boolean)}.
+     */
+    public long getFramesWritten() {
+        synchronized (mLock) {
+            return mFramesWritten;
+        }
+    }
+
+    /**
+     * Returns the number of frames replaced before they were sent.
+     */
+    public long getDroppedFrames() {
+        synchronized (mLock) {
+            return mDroppedFrames;
+        }
+    }
+
+    /**
+     * Returns the number of frames sent more than one frame period after their slot, because
+     * the previous transfer or the rendering took too long.
+     */
+    public long getLateFrames() {
+        synchronized (mLock) {
+            return mLateFrames;
+        }
+    }
+
+    /**
+     * Resets the frame counters.
+     */
+    public void resetCounters() {
+        synchronized (mLock) {
+            mFramesWritten = 0;
+            mDroppedFrames = 0;
+            mLateFrames = 0;
+        }
+    }
+
+    /**
+     * Waits for a queued frame and its slot, then makes it the front frame.
+     * @return false if the writer was stopped.
+     */
+    private boolean takeFrame() throws InterruptedException {
+        synchronized (mLock) {
+            while (mRunning && !mQueued) {
+                mLock.wait();
+            }
+            long now = System.nanoTime();
+            if (mFramePeriod > 0) {
+                if (mNextSlot == 0) {
+                    mNextSlot = now;
+                }
+                while (mRunning && now < mNextSlot) {
+                    long delay = mNextSlot - now;
+                    mLock.wait(delay / NANOS_PER_MILLI, (int) (delay % NANOS_PER_MILLI));
+                    now = System.nanoTime();
+                }
+                if (now - mNextSlot >= mFramePeriod) {
+                    // Missed the slot, restart the schedule from now
+                    mLateFrames++;
+                    mNextSlot = now;
+                }
+                mNextSlot += mFramePeriod;
+            }
+            if (!mRunning) {
+                return false;
+            }
+            int middle = mMiddle;
+            mMiddle = mFront;
+            mFront = middle;
+            mQueued = false;
+            return true;
+        }
+    }
+
+    /**
+     * Loop of the output thread.
+     */
+    private final Runnable mOutputLoop = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                while (takeFrame()) {
+                    // Only the output thread uses the front frame
+                    try {
+                        if (mLeds.writeFrame(mFrames[mFront])) {
+                            synchronized (mLock) {
+                                mFramesWritten++;
+                            }
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        Log.w(TAG, "Unable to write frame", e);
+                        synchronized (mLock) {
+                            mError = e instanceof IOException ? (IOException) e
+                                    : new IOException(e);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Output thread interrupted", e);
+            } finally {
+                synchronized (mLock) {
+                    if (mRunning) {
+                        // Fail the following swaps rather than queuing frames nobody sends
+                        mOutputStopped = true;
+                    }
+                }
+            }
+        }
+    };
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import com.google.android.things.pio.SpiDevice;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class Apa102AnimationTest {
+
+    private static final int RED = 0xFFFF0000;
+    private static final int GREEN = 0xFF00FF00;
+    private static final int BLUE = 0xFF0000FF;
+    private static final int BLACK = 0xFF000000;
+
+    @Mock
+    SpiDevice mSpiDevice;
+
+    @Rule
+    public MockitoRule mMockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    private Apa102Animation createAnimation(int ledCount) throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setBrightness(Apa102.MAX_BRIGHTNESS);
+        return new Apa102Animation(leds, ledCount);
+    }
+
+    private static int[] fill(int ledCount, int color) {
+        int[] colors = new int[ledCount];
+        for (int i = 0; i < ledCount; i++) {
+            colors[i] = color;
+        }
+        return colors;
+    }
+
+    @Test
+    public void gradient_rotates() throws IOException {
+        Apa102Animation animation = createAnimation(3);
+        animation.addKeyframe(Apa102Animation.gradient(new int[] {RED, GREEN, BLUE}, 300),
+                1000, 0);
+        assertArrayEquals(new int[] {RED, GREEN, BLUE}, animation.render(0));
+        assertArrayEquals(new int[] {GREEN, BLUE, RED}, animation.render(100));
+        assertArrayEquals(new int[] {BLUE, RED, GREEN}, animation.render(200));
+        // Halfway between two palette colors
+        assertEquals(0xFF7F8000, animation.render(50)[0]);
+    }
+
+    @Test
+    public void gradient_rotatesBackwards() throws IOException {
+        Apa102Animation animation = createAnimation(3);
+        animation.addKeyframe(Apa102Animation.gradient(new int[] {RED, GREEN, BLUE}, -300),
+                1000, 0);
+        assertArrayEquals(new int[] {BLUE, RED, GREEN}, animation.render(100));
+    }
+
+    @Test
+    public void chase() throws IOException {
+        Apa102Animation animation = createAnimation(5);
+        animation.addKeyframe(Apa102Animation.chase(0xFFFFFFFF, BLACK, 2, 500), 1000, 0);
+        assertArrayEquals(new int[] {BLACK, BLACK, 0xFF7F7F7F, 0xFFFFFFFF, BLACK},
+                animation.render(300));
+        // Wraps around the end of the strip
+        assertArrayEquals(new int[] {0xFFFFFFFF, BLACK, BLACK, BLACK, 0xFF7F7F7F},
+                animation.render(500));
+    }
+
+    @Test
+    public void breathe() throws IOException {
+        Apa102Animation animation = createAnimation(2);
+        animation.addKeyframe(Apa102Animation.breathe(0xFF804020, 1000), 1000, 0);
+        assertArrayEquals(fill(2, BLACK), animation.render(0));
+        assertArrayEquals(fill(2, 0xFF804020), animation.render(500));
+        assertArrayEquals(fill(2, 0xFF402010), animation.render(250));
+    }
+
+    @Test
+    public void fade() throws IOException {
+        Apa102Animation animation = createAnimation(2);
+        animation.addKeyframe(Apa102Animation.fade(BLACK, 0xFFFFFFFF, 100), 200, 0);
+        assertArrayEquals(fill(2, BLACK), animation.render(0));
+        assertArrayEquals(fill(2, 0xFF7F7F7F), animation.render(50));
+        assertArrayEquals(fill(2, 0xFFFFFFFF), animation.render(150));
+    }
+
+    @Test
+    public void keyframes_crossFade() throws IOException {
+        Apa102Animation animation = createAnimation(1);
+        animation.addKeyframe(Apa102Animation.fade(RED, RED, 0), 100, 0);
+        animation.addKeyframe(Apa102Animation.fade(BLUE, BLUE, 0), 100, 50);
+        assertEquals(200, animation.getDuration());
+        assertArrayEquals(new int[] {RED}, animation.render(50));
+        assertArrayEquals(new int[] {0xFF80007F}, animation.render(125));
+        assertArrayEquals(new int[] {BLUE}, animation.render(150));
+    }
+
+    @Test
+    public void keyframes_loop() throws IOException {
+        Apa102Animation animation = createAnimation(1);
+        animation.addKeyframe(Apa102Animation.fade(RED, RED, 0), 100, 0);
+        animation.addKeyframe(Apa102Animation.fade(BLUE, BLUE, 0), 100, 0);
+        assertArrayEquals(new int[] {RED}, animation.render(250));
+        animation.setLooping(false);
+        assertArrayEquals(new int[] {BLUE}, animation.render(250));
+    }
+
+    @Test
+    public void render_reusesColors() throws IOException {
+        Apa102Animation animation = createAnimation(4);
+        animation.addKeyframe(Apa102Animation.breathe(RED, 1000), 1000, 0);
+        assertSame(animation.render(0), animation.render(100));
+    }
+
+    @Test
+    public void render_throwsWithoutKeyframes() throws IOException {
+        Apa102Animation animation = createAnimation(4);
+        mExpectedException.expect(IllegalStateException.class);
+        animation.render(0);
+    }
+
+    @Test
+    public void write() throws IOException {
+        Apa102Animation animation = createAnimation(2);
+        animation.addKeyframe(Apa102Animation.gradient(new int[] {0x123456, 0xabcdef}, 0),
+                1000, 0);
+        animation.write(0);
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                (byte) 0xFF, (byte) 0x12, (byte) 0x34, (byte) 0x56,
+                (byte) 0xFF, (byte) 0xab, (byte) 0xcd, (byte) 0xef
+        )), Mockito.eq(16));
+    }
+}
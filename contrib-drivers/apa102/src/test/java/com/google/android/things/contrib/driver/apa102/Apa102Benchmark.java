@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import com.google.android.things.pio.SpiDevice;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+
+/**
+ * Frame rates of {@link Apa102}. Except for {@link #write_spiClock()}, the SPI device discards
+ * the data, so the runs measure the packing cost alone.
+ */
+public class Apa102Benchmark {
+
+    private static final int LED_COUNT = 1000;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int FRAMES = 20000;
+    private static final int SPI_FRAMES = 50;
+    // Typical cost of a SPI transfer besides clocking out the data, in nanoseconds
+    private static final long TRANSFER_OVERHEAD_NS = 50000;
+
+    @Test
+    public void write() throws IOException {
+        Apa102 leds = createLeds();
+        run("write", leds);
+    }
+
+    @Test
+    public void write_colorCorrection() throws IOException {
+        Apa102 leds = createLeds();
+        leds.setColorCorrection(2.2f, 0xffe0c0);
+        run("write with color correction", leds);
+    }
+
+    @Test
+    public void write_chunked() throws IOException {
+        Apa102 leds = createLeds();
+        leds.setMaxTransferSize(256);
+        run("write in 256-byte transfers", leds);
+    }
+
+    @Test
+    public void animation() throws IOException {
+        Apa102Animation animation = new Apa102Animation(createLeds(), LED_COUNT);
+        animation.addKeyframe(Apa102Animation.gradient(
+                Apa102Colors.createHuePalette(256, 255, 255), 5000), 10000, 0);
+        animation.addKeyframe(Apa102Animation.chase(0xffffff, 0x000040, 20, 2000), 10000, 1000);
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            animation.write(i * 10);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            // Covers both keyframes and the transition between them
+            animation.write(i);
+        }
+        long time = System.nanoTime() - start;
+
+        double framesPerSecond = FRAMES * 1e9 / time;
+        System.out.println(String.format("Apa102 animation, %d LEDs: %.0f frames/s, %.1f us/frame",
+                LED_COUNT, framesPerSecond, time / 1000.0 / FRAMES));
+    }
+
+    /**
+     * Frame rates at several SPI clocks, with a SPI device that takes the time of the transfer
+     * at its clock plus a fixed cost per transfer, in whole frames and in 256-byte chunks.
+     */
+    @Test
+    public void write_spiClock() throws IOException {
+        int[] colors = new int[LED_COUNT];
+        int frameLength = Apa102.getFrameLength(LED_COUNT);
+        for (int frequency : new int[] {1000000, 4000000, 8000000, 16000000}) {
+            for (int maxTransferSize : new int[] {Apa102.DEFAULT_MAX_TRANSFER_SIZE, 256}) {
+                Apa102 leds = new Apa102(createTimedSpiDevice(), Apa102.Mode.BGR,
+                        Apa102.Direction.NORMAL);
+                leds.setFrequency(frequency);
+                leds.setMaxTransferSize(maxTransferSize);
+
+                long start = System.nanoTime();
+                for (int i = 0; i < SPI_FRAMES; i++) {
+                    leds.write(colors);
+                }
+                long time = System.nanoTime() - start;
+
+                System.out.println(String.format("Apa102 write at %d MHz in %d-byte transfers, "
+                        + "%d LEDs: %.0f frames/s, bus limit %.0f frames/s",
+                        frequency / 1000000, maxTransferSize, LED_COUNT,
+                        SPI_FRAMES * 1e9 / time, frequency / 8.0 / frameLength));
+            }
+        }
+    }
+
+    /**
+     * Creates a SPI device whose writes last as long as the transfer at the current clock.
+     */
+    private static SpiDevice createTimedSpiDevice() throws IOException {
+        SpiDevice device = Mockito.mock(SpiDevice.class, Mockito.withSettings().stubOnly());
+        final int[] frequency = new int[1];
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                frequency[0] = (Integer) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(device).setFrequency(Mockito.anyInt());
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                int length = (Integer) invocation.getArguments()[1];
+                long end = System.nanoTime() + TRANSFER_OVERHEAD_NS
+                        + length * 8 * 1000000000L / frequency[0];
+                while (System.nanoTime() < end) {
+                    // Busy wait, sleeping is not precise enough
+                }
+                return null;
+            }
+        }).when(device).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        return device;
+    }
+
+    private static Apa102 createLeds() throws IOException {
+        SpiDevice device = Mockito.mock(SpiDevice.class, Mockito.withSettings().stubOnly());
+        return new Apa102(device, Apa102.Mode.BGR, Apa102.Direction.NORMAL);
+    }
+
+    private static void run(String name, Apa102 leds) throws IOException {
+        int[] colors = new int[LED_COUNT];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = i * 0x010203;
+        }
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            leds.write(colors);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            leds.write(colors);
+        }
+        long time = System.nanoTime() - start;
+
+        double framesPerSecond = FRAMES * 1e9 / time;
+        System.out.println(String.format("Apa102 %s, %d LEDs: %.0f frames/s, %.1f us/frame",
+                name, LED_COUNT, framesPerSecond, time / 1000.0 / FRAMES));
+    }
+}
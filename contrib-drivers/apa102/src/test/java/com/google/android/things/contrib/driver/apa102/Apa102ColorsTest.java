@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Apa102ColorsTest {
+
+    @Test
+    public void hsvToColor_primaries() {
+        assertEquals(0xFFFF0000, Apa102Colors.hsvToColor(0, 255, 255));
+        assertEquals(0xFFFFFF00, Apa102Colors.hsvToColor(256, 255, 255));
+        assertEquals(0xFF00FF00, Apa102Colors.hsvToColor(512, 255, 255));
+        assertEquals(0xFF00FFFF, Apa102Colors.hsvToColor(768, 255, 255));
+        assertEquals(0xFF0000FF, Apa102Colors.hsvToColor(1024, 255, 255));
+        assertEquals(0xFFFF00FF, Apa102Colors.hsvToColor(1280, 255, 255));
+        assertEquals(0xFFFFFFFF, Apa102Colors.hsvToColor(100, 0, 255));
+        assertEquals(0xFF000000, Apa102Colors.hsvToColor(100, 255, 0));
+    }
+
+    @Test
+    public void hsvToColor_wrapsHue() {
+        assertEquals(Apa102Colors.hsvToColor(10, 200, 100),
+                Apa102Colors.hsvToColor(10 + Apa102Colors.HUE_RANGE, 200, 100));
+        assertEquals(Apa102Colors.hsvToColor(Apa102Colors.HUE_RANGE - 10, 200, 100),
+                Apa102Colors.hsvToColor(-10, 200, 100));
+    }
+
+    @Test
+    public void hsvToColor_matchesFloatConversion() {
+        for (int hue = 0; hue < Apa102Colors.HUE_RANGE; hue += 7) {
+            for (int saturation = 0; saturation <= 255; saturation += 15) {
+                for (int value = 0; value <= 255; value += 15) {
+                    int color = Apa102Colors.hsvToColor(hue, saturation, value);
+                    int expected = floatHsvToColor(hue * 360f / Apa102Colors.HUE_RANGE,
+                            saturation / 255f, value / 255f);
+                    for (int shift = 0; shift <= 16; shift += 8) {
+                        int error = ((color >> shift) & 0xff) - ((expected >> shift) & 0xff);
+                        assertTrue("hsv " + hue + " " + saturation + " " + value,
+                                Math.abs(error) <= 2);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int floatHsvToColor(float hue, float saturation, float value) {
+        float chroma = value * saturation;
+        float x = chroma * (1 - Math.abs(hue / 60 % 2 - 1));
+        float m = value - chroma;
+        float r, g, b;
+        if (hue < 60) {
+            r = chroma; g = x; b = 0;
+        } else if (hue < 120) {
+            r = x; g = chroma; b = 0;
+        } else if (hue < 180) {
+            r = 0; g = chroma; b = x;
+        } else if (hue < 240) {
+            r = 0; g = x; b = chroma;
+        } else if (hue < 300) {
+            r = x; g = 0; b = chroma;
+        } else {
+            r = chroma; g = 0; b = x;
+        }
+        return (Math.round((r + m) * 255) << 16) | (Math.round((g + m) * 255) << 8)
+                | Math.round((b + m) * 255);
+    }
+
+    @Test
+    public void blend() {
+        assertEquals(0xFF102030, Apa102Colors.blend(0x102030, 0xF0E0D0, 0));
+        assertEquals(0xFFF0E0D0, Apa102Colors.blend(0x102030, 0xF0E0D0, 255));
+        assertEquals(0xFF808080, Apa102Colors.blend(0x000000, 0xFFFFFF, 128));
+        assertEquals(0xFF402008, Apa102Colors.scale(0x804010, 128));
+    }
+
+    @Test
+    public void createHuePalette() {
+        int[] palette = Apa102Colors.createHuePalette(6, 255, 255);
+        assertArrayEquals(new int[] {0xFFFF0000, 0xFFFFFF00, 0xFF00FF00, 0xFF00FFFF,
+                0xFF0000FF, 0xFFFF00FF}, palette);
+    }
+
+    @Test
+    public void createGradientPalette() {
+        int[] palette = Apa102Colors.createGradientPalette(4, 0x000000, 0xFFFFFF);
+        assertArrayEquals(new int[] {0xFF000000, 0xFF808080, 0xFFFFFFFF, 0xFF7F7F7F}, palette);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import com.google.android.things.pio.SpiDevice;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Apa102GroupTest {
+
+    private static final long WRITE_DURATION_MS = 100;
+    private static final long TIMEOUT_MS = 1000;
+
+    @Mock
+    SpiDevice mSpiDevice1;
+
+    @Mock
+    SpiDevice mSpiDevice2;
+
+    @Mock
+    SpiDevice mSpiDevice3;
+
+    @Rule
+    public MockitoRule mMockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    private Apa102Group mGroup = new Apa102Group();
+
+    @After
+    public void tearDown() throws InterruptedException {
+        mGroup.stop();
+    }
+
+    private Apa102 createLeds(SpiDevice device, Apa102.Direction direction) throws IOException {
+        Apa102 leds = new Apa102(device, Apa102.Mode.RGB, direction);
+        leds.setBrightness(Apa102.MAX_BRIGHTNESS);
+        return leds;
+    }
+
+    private static void slowWrites(SpiDevice device) throws IOException {
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(WRITE_DURATION_MS);
+                return null;
+            }
+        }).when(device).write(Mockito.<byte[]>any(), Mockito.anyInt());
+    }
+
+    /**
+     * Makes each write wait at the given barrier, so that the writes only complete if all the
+     * strips are written at the same time.
+     */
+    private static void barrierWrites(SpiDevice device, final CyclicBarrier barrier)
+            throws IOException {
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    barrier.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | BrokenBarrierException e) {
+                    throw new IOException("Strips not written in parallel", e);
+                }
+                return null;
+            }
+        }).when(device).write(Mockito.<byte[]>any(), Mockito.anyInt());
+    }
+
+    private void verifyRanges() throws IOException {
+        Mockito.verify(mSpiDevice1).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                (byte) 0xFF, (byte) 0x11, (byte) 0x11, (byte) 0x11,
+                (byte) 0xFF, (byte) 0x22, (byte) 0x22, (byte) 0x22,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF
+        )), Mockito.eq(16));
+        // Reversed strip
+        Mockito.verify(mSpiDevice2).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                (byte) 0xFF, (byte) 0x55, (byte) 0x55, (byte) 0x55,
+                (byte) 0xFF, (byte) 0x44, (byte) 0x44, (byte) 0x44,
+                (byte) 0xFF, (byte) 0x33, (byte) 0x33, (byte) 0x33,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF
+        )), Mockito.eq(20));
+    }
+
+    @Test
+    public void write() throws IOException {
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.REVERSED), 2, 3);
+        assertEquals(5, mGroup.getLedCount());
+        mGroup.write(new int[] {0x111111, 0x222222, 0x333333, 0x444444, 0x555555});
+        verifyRanges();
+    }
+
+    @Test
+    public void write_started() throws IOException {
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.REVERSED), 2, 3);
+        mGroup.start();
+        mGroup.write(new int[] {0x111111, 0x222222, 0x333333, 0x444444, 0x555555});
+        verifyRanges();
+    }
+
+    @Test
+    public void write_stripsInParallel() throws IOException {
+        // The barrier only opens once the three strips are being written
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        barrierWrites(mSpiDevice1, barrier);
+        barrierWrites(mSpiDevice2, barrier);
+        barrierWrites(mSpiDevice3, barrier);
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 10);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.NORMAL), 10, 10);
+        mGroup.addStrip(createLeds(mSpiDevice3, Apa102.Direction.NORMAL), 20, 10);
+        mGroup.start();
+        int[] colors = new int[30];
+        for (int i = 0; i < 3; i++) {
+            mGroup.write(colors);
+        }
+        Mockito.verify(mSpiDevice1, Mockito.times(3))
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+        Mockito.verify(mSpiDevice2, Mockito.times(3))
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+        Mockito.verify(mSpiDevice3, Mockito.times(3))
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void write_throwsErrorOfAnyStrip() throws IOException {
+        Mockito.doThrow(new IOException("bus error"))
+                .when(mSpiDevice2).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 1);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.NORMAL), 1, 1);
+        mGroup.start();
+        mExpectedException.expect(IOException.class);
+        mExpectedException.expectMessage("bus error");
+        try {
+            mGroup.write(new int[2]);
+        } finally {
+            // The other strip is still written
+            Mockito.verify(mSpiDevice1).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        }
+    }
+
+    @Test
+    public void write_waitsForStripsWhenInterrupted() throws IOException {
+        slowWrites(mSpiDevice2);
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.REVERSED), 2, 3);
+        mGroup.start();
+        Thread.currentThread().interrupt();
+        try {
+            mGroup.write(new int[] {0x111111, 0x222222, 0x333333, 0x444444, 0x555555});
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        verifyRanges();
+    }
+
+    @Test
+    public void write_throwsIfOutputThreadStopped() throws IOException, InterruptedException {
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.REVERSED), 2, 3);
+        mGroup.start();
+        Thread outputThread = null;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Apa102Group-1")) {
+                outputThread = thread;
+            }
+        }
+        assertNotNull(outputThread);
+        outputThread.interrupt();
+        outputThread.join();
+
+        try {
+            mGroup.write(new int[5]);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+
+        // Restarting the group recovers
+        mGroup.stop();
+        mGroup.start();
+        mGroup.write(new int[] {0x111111, 0x222222, 0x333333, 0x444444, 0x555555});
+        verifyRanges();
+    }
+
+    @Test
+    public void write_throwsIfLengthDiffers() throws IOException {
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mExpectedException.expect(IllegalArgumentException.class);
+        mGroup.write(new int[3]);
+    }
+
+    @Test
+    public void start_throwsWithoutStrips() {
+        mExpectedException.expect(IllegalStateException.class);
+        mGroup.start();
+    }
+
+    @Test
+    public void addStrip_throwsIfStarted() throws IOException {
+        mGroup.addStrip(createLeds(mSpiDevice1, Apa102.Direction.NORMAL), 0, 2);
+        mGroup.start();
+        mExpectedException.expect(IllegalStateException.class);
+        mGroup.addStrip(createLeds(mSpiDevice2, Apa102.Direction.NORMAL), 2, 2);
+    }
+}
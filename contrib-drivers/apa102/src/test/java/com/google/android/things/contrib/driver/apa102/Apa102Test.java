@@ -27,12 +27,18 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -128,6 +134,248 @@ public class Apa102Test {
         )), Mockito.eq(headerSize + colors.length*4 + endframeSize));
     }
 
+    @Test
+    public void write_changingLength() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        final int brightness = 15;
+        leds.setBrightness(brightness);
+        leds.write(new int[] {0xff0000, 0x00ff00, 0x0000ff});
+        final int[] colors = {0x123456, 0xabcdef};
+        leds.write(colors);
+        int headerSize = 4;
+        int endframeSize = 4;
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                (byte)(0xE0|brightness), (byte) 0x12, (byte) 0x34, (byte) 0x56,
+                (byte)(0xE0|brightness), (byte) 0xab, (byte) 0xcd, (byte) 0xef,
+                (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff
+        )), Mockito.eq(headerSize + colors.length*4 + endframeSize));
+    }
+
+    @Test
+    public void write_longStrip() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.BGR, Apa102.Direction.NORMAL);
+        final int[] colors = new int[200];
+        leds.write(colors);
+        int headerSize = 4;
+        // One byte for every 16 LEDs
+        int endframeSize = 13;
+        Mockito.verify(mSpiDevice).write(Mockito.<byte[]>any(),
+                Mockito.eq(headerSize + colors.length*4 + endframeSize));
+    }
+
+    @Test
+    public void write_chunksLongFrames() throws IOException {
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        final List<Integer> lengths = new ArrayList<>();
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                byte[] buffer = (byte[]) invocation.getArguments()[0];
+                int length = (Integer) invocation.getArguments()[1];
+                sent.write(buffer, 0, length);
+                lengths.add(length);
+                return null;
+            }
+        }).when(mSpiDevice).write(Mockito.<byte[]>any(), Mockito.anyInt());
+
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setMaxTransferSize(100);
+        final int[] colors = new int[60];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = i * 0x010203;
+        }
+        leds.write(colors);
+
+        // 4 + 60 * 4 + 4 bytes
+        assertEquals(Arrays.asList(100, 100, 48), lengths);
+        byte[] expected = leds.createFrame(colors.length);
+        leds.packFrame(colors, null, expected);
+        assertArrayEquals(expected, sent.toByteArray());
+    }
+
+    @Test
+    public void write_doesNotChunkShortFrames() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setMaxTransferSize(12);
+        leds.write(new int[] {0x123456});
+        Mockito.verify(mSpiDevice, times(1)).write(Mockito.<byte[]>any(), Mockito.eq(12));
+    }
+
+    @Test
+    public void setMaxTransferSize_throwsIfInvalid() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        mExpectedException.expect(IllegalArgumentException.class);
+        leds.setMaxTransferSize(0);
+    }
+
+    @Test
+    public void setFrequency() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        Mockito.verify(mSpiDevice).setFrequency(Apa102.DEFAULT_SPI_FREQUENCY);
+        leds.setFrequency(8000000);
+        Mockito.verify(mSpiDevice).setFrequency(8000000);
+        assertEquals(8000000, leds.getFrequency());
+    }
+
+    @Test
+    public void setFrequency_throwsIfTooLarge() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        mExpectedException.expect(IllegalArgumentException.class);
+        leds.setFrequency(Apa102.MAX_SPI_FREQUENCY + 1);
+    }
+
+    @Test
+    public void write_zeroEndFrame() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.BGR, Apa102.Direction.NORMAL);
+        leds.setZeroEndFrame(true);
+        assertEquals(true, leds.isZeroEndFrame());
+        final int brightness = 15;
+        leds.setBrightness(brightness);
+        final int[] colors = {0xffffff};
+        leds.write(colors);
+        int headerSize = 4;
+        int endframeSize = 4;
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte)(0xE0|brightness), (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0
+        )), Mockito.eq(headerSize + colors.length*4 + endframeSize));
+    }
+
+    @Test
+    public void getEndFrameLength() {
+        assertEquals(4, Apa102.getEndFrameLength(0));
+        assertEquals(4, Apa102.getEndFrameLength(64));
+        assertEquals(5, Apa102.getEndFrameLength(65));
+        assertEquals(19, Apa102.getEndFrameLength(300));
+        assertEquals(63, Apa102.getEndFrameLength(1000));
+    }
+
+    @Test
+    public void write_perPixelBrightness() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        final int[] colors = {0x123456, 0xabcdef};
+        leds.write(colors, new int[] {1, Apa102.MAX_BRIGHTNESS});
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0xE1, (byte) 0x12, (byte) 0x34, (byte) 0x56,
+                (byte) 0xFF, (byte) 0xab, (byte) 0xcd, (byte) 0xef
+        )), Mockito.anyInt());
+    }
+
+    @Test
+    public void write_perPixelBrightness_throwsIfInvalid() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        mExpectedException.expect(IllegalArgumentException.class);
+        leds.write(new int[] {0, 0}, new int[] {0, Apa102.MAX_BRIGHTNESS + 1});
+    }
+
+    @Test
+    public void write_perPixelBrightness_throwsIfLengthDiffers() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        mExpectedException.expect(IllegalArgumentException.class);
+        leds.write(new int[] {0, 0}, new int[] {0});
+    }
+
+    @Test
+    public void write_colorCorrection() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.BGR, Apa102.Direction.NORMAL);
+        leds.setColorCorrection(1f, 0xffffff);
+        leds.write(new int[] {0xff8000, 0x010000}, new int[] {Apa102.MAX_BRIGHTNESS,
+                Apa102.MAX_BRIGHTNESS});
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                // Full range at the highest level
+                (byte) 0xFF, (byte) 0, (byte) 128, (byte) 255,
+                // Lowest level, with 5 more bits of resolution
+                (byte) 0xE1, (byte) 0, (byte) 0, (byte) 31
+        )), Mockito.anyInt());
+    }
+
+    @Test
+    public void write_colorCorrection_gammaAndWhiteBalance() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setColorCorrection(2f, 0xff8000);
+        leds.setBrightness(Apa102.MAX_BRIGHTNESS);
+        leds.write(new int[] {0xffffff, 0x808080});
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0xFF, (byte) 255, (byte) 128, (byte) 0,
+                // (128/255)^2 = 0.252 of the intensity, shown at 8/31
+                (byte) 0xE8, (byte) 249, (byte) 125, (byte) 0
+        )), Mockito.anyInt());
+    }
+
+    @Test
+    public void clearColorCorrection() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setColorCorrection(2.2f, 0xffffff);
+        leds.clearColorCorrection();
+        leds.write(new int[] {0x808080}, new int[] {Apa102.MAX_BRIGHTNESS});
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0xFF, (byte) 0x80, (byte) 0x80, (byte) 0x80
+        )), Mockito.anyInt());
+    }
+
+    @Test
+    public void setColorCorrection_throwsIfInvalidGamma() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        mExpectedException.expect(IllegalArgumentException.class);
+        leds.setColorCorrection(0f, 0xffffff);
+    }
+
+    @Test
+    public void write_skipsUnchangedFrames() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setSkipUnchangedFrames(true);
+        leds.setRefreshInterval(0);
+        final int[] colors = {0x123456, 0xabcdef};
+        leds.write(colors);
+        leds.write(colors);
+        leds.write(colors);
+        colors[1] = 0;
+        leds.write(colors);
+        Mockito.verify(mSpiDevice, times(2)).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        assertEquals(2, leds.getSentFrames());
+        assertEquals(2, leds.getSkippedFrames());
+        assertEquals(.5f, leds.getSkipRatio(), 0f);
+    }
+
+    @Test
+    public void write_detectsBrightnessChange() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setSkipUnchangedFrames(true);
+        final int[] colors = {0x123456};
+        leds.write(colors);
+        leds.setBrightness(3);
+        leds.write(colors);
+        Mockito.verify(mSpiDevice, times(2)).write(Mockito.<byte[]>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void write_refreshesUnchangedFrames() throws IOException, InterruptedException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setSkipUnchangedFrames(true);
+        // Long enough for the last two writes to always fall within one interval
+        leds.setRefreshInterval(500);
+        final int[] colors = {0x123456};
+        leds.write(colors);
+        Thread.sleep(600);
+        leds.write(colors);
+        leds.write(colors);
+        Mockito.verify(mSpiDevice, times(2)).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        assertEquals(1, leds.getSkippedFrames());
+    }
+
+    @Test
+    public void write_sendsAllFramesByDefault() throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        final int[] colors = {0x123456};
+        leds.write(colors);
+        leds.write(colors);
+        Mockito.verify(mSpiDevice, times(2)).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        assertEquals(0f, leds.getSkipRatio(), 0f);
+        leds.resetFrameStatistics();
+        assertEquals(0, leds.getSentFrames());
+    }
+
     @Test
     public void write_throwsIfClosed() throws IOException {
         Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.BGR, Apa102.Direction.NORMAL);
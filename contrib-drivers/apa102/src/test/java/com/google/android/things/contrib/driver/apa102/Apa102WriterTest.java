@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.apa102;
+
+import com.google.android.things.pio.SpiDevice;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class Apa102WriterTest {
+
+    private static final long TIMEOUT_MS = 1000;
+
+    @Mock
+    SpiDevice mSpiDevice;
+
+    @Rule
+    public MockitoRule mMockitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    private Apa102Writer mWriter;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mWriter != null) {
+            mWriter.stop();
+        }
+    }
+
+    private Apa102Writer createWriter(int ledCount) throws IOException {
+        Apa102 leds = new Apa102(mSpiDevice, Apa102.Mode.RGB, Apa102.Direction.NORMAL);
+        leds.setBrightness(Apa102.MAX_BRIGHTNESS);
+        mWriter = new Apa102Writer(leds, ledCount);
+        return mWriter;
+    }
+
+    /**
+     * Records the time of each transfer, optionally taking some time like a slow bus.
+     */
+    private List<Long> recordWrites(final long durationMs) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                synchronized (times) {
+                    times.add(System.nanoTime());
+                }
+                Thread.sleep(durationMs);
+                return null;
+            }
+        }).when(mSpiDevice).write(Mockito.<byte[]>any(), Mockito.anyInt());
+        return times;
+    }
+
+    private void awaitFramesWritten(Apa102Writer writer, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (writer.getFramesWritten() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, writer.getFramesWritten());
+    }
+
+    @Test
+    public void swap() throws IOException, InterruptedException {
+        Apa102Writer writer = createWriter(2);
+        writer.start();
+        writer.swap(new int[] {0x123456, 0xabcdef});
+        awaitFramesWritten(writer, 1);
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0, (byte) 0, (byte) 0, (byte) 0,
+                (byte) 0xFF, (byte) 0x12, (byte) 0x34, (byte) 0x56,
+                (byte) 0xFF, (byte) 0xab, (byte) 0xcd, (byte) 0xef
+        )), Mockito.eq(16));
+    }
+
+    @Test
+    public void swap_dropsUnsentFrame() throws IOException, InterruptedException {
+        Apa102Writer writer = createWriter(1);
+        writer.swap(new int[] {0x111111});
+        writer.swap(new int[] {0x222222});
+        assertEquals(1, writer.getDroppedFrames());
+        writer.start();
+        awaitFramesWritten(writer, 1);
+        Mockito.verify(mSpiDevice).write(Mockito.argThat(BytesMatcher.contains(
+                (byte) 0xFF, (byte) 0x22, (byte) 0x22, (byte) 0x22)), Mockito.anyInt());
+        Mockito.verify(mSpiDevice, Mockito.times(1))
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void swap_throwsIfLengthDiffers() throws IOException {
+        Apa102Writer writer = createWriter(2);
+        mExpectedException.expect(IllegalArgumentException.class);
+        writer.swap(new int[1]);
+    }
+
+    @Test
+    public void swap_throwsAfterFailedTransfer() throws IOException, InterruptedException {
+        Mockito.doThrow(new IOException()).when(mSpiDevice)
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+        Apa102Writer writer = createWriter(1);
+        writer.start();
+        writer.swap(new int[1]);
+        Mockito.verify(mSpiDevice, Mockito.timeout(TIMEOUT_MS))
+                .write(Mockito.<byte[]>any(), Mockito.anyInt());
+        writer.stop();
+        mExpectedException.expect(IOException.class);
+        writer.swap(new int[1]);
+    }
+
+    @Test
+    public void swap_throwsIfOutputThreadStopped() throws IOException, InterruptedException {
+        Apa102Writer writer = createWriter(1);
+        writer.start();
+        Thread outputThread = null;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Apa102Writer")) {
+                outputThread = thread;
+            }
+        }
+        assertNotNull(outputThread);
+        outputThread.interrupt();
+        outputThread.join();
+
+        try {
+            writer.swap(new int[1]);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+
+        // Restarting the writer recovers
+        writer.stop();
+        writer.start();
+        writer.swap(new int[1]);
+        awaitFramesWritten(writer, 1);
+    }
+
+    @Test
+    public void setFrameRate_pacesFrames() throws IOException, InterruptedException {
+        List<Long> times = recordWrites(0);
+        Apa102Writer writer = createWriter(1);
+        writer.setFrameRate(50);
+        writer.start();
+        for (int i = 1; i <= 3; i++) {
+            writer.swap(new int[1]);
+            awaitFramesWritten(writer, i);
+        }
+        synchronized (times) {
+            for (int i = 1; i < times.size(); i++) {
+                // 20 ms period, with some slack for the timer resolution
+                assertTrue(times.get(i) - times.get(i - 1) >= 19000000L);
+            }
+        }
+        assertEquals(0, writer.getLateFrames());
+    }
+
+    @Test
+    public void getLateFrames() throws IOException, InterruptedException {
+        // Transfers take longer than the frame period
+        recordWrites(30);
+        Apa102Writer writer = createWriter(1);
+        writer.setFrameRate(100);
+        writer.start();
+        for (int i = 1; i <= 3; i++) {
+            writer.swap(new int[1]);
+            awaitFramesWritten(writer, i);
+        }
+        assertTrue(writer.getLateFrames() > 0);
+    }
+}
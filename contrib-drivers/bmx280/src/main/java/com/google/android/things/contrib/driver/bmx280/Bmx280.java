@@ -23,6 +23,7 @@ import com.google.android.things.pio.I2cDevice;
 import com.google.android.things.pio.PeripheralManagerService;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
@@ -46,6 +47,10 @@ public class Bmx280 implements AutoCloseable {
      * I2C address for the sensor.
      */
     public static final int I2C_ADDRESS = 0x77;
+    /**
+     * Alternate I2C address for the sensor, when its SDO pin is connected to ground.
+     */
+    public static final int I2C_ADDRESS_ALT = 0x76;
 
     // Sensor constants from the datasheet.
     // https://cdn-shop.adafruit.com/datasheets/BST-BMP280-DS001-11.pdf
@@ -73,6 +78,18 @@ public class Bmx280 implements AutoCloseable {
      * Maximum power consumption in micro-amperes when measuring pressure.
      */
     public static final float MAX_POWER_CONSUMPTION_PRESSURE_UA = 720f;
+    /**
+     * Minimum relative humidity in percent the BME280 can measure.
+     */
+    public static final float MIN_HUMIDITY_PERCENT = 0f;
+    /**
+     * Maximum relative humidity in percent the BME280 can measure.
+     */
+    public static final float MAX_HUMIDITY_PERCENT = 100f;
+    /**
+     * Maximum power consumption in micro-amperes when measuring humidity.
+     */
+    public static final float MAX_POWER_CONSUMPTION_HUMIDITY_UA = 340f;
     /**
      * Maximum frequency of the measurements.
      */
@@ -96,49 +113,249 @@ public class Bmx280 implements AutoCloseable {
      * Oversampling multiplier.
      */
     @Retention(RetentionPolicy.SOURCE)
-    @IntDef({OVERSAMPLING_SKIPPED, OVERSAMPLING_1X})
+    @IntDef({OVERSAMPLING_SKIPPED, OVERSAMPLING_1X, OVERSAMPLING_2X, OVERSAMPLING_4X,
+            OVERSAMPLING_8X, OVERSAMPLING_16X})
     public @interface Oversampling {}
     public static final int OVERSAMPLING_SKIPPED = 0;
     public static final int OVERSAMPLING_1X = 1;
+    public static final int OVERSAMPLING_2X = 2;
+    public static final int OVERSAMPLING_4X = 3;
+    public static final int OVERSAMPLING_8X = 4;
+    public static final int OVERSAMPLING_16X = 5;
+
+    /**
+     * IIR filter coefficient.
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({FILTER_OFF, FILTER_2, FILTER_4, FILTER_8, FILTER_16})
+    public @interface Filter {}
+    public static final int FILTER_OFF = 0;
+    public static final int FILTER_2 = 1;
+    public static final int FILTER_4 = 2;
+    public static final int FILTER_8 = 3;
+    public static final int FILTER_16 = 4;
+
+    /**
+     * Inactive duration between measurements in normal mode.
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({STANDBY_0_5_MS, STANDBY_62_5_MS, STANDBY_125_MS, STANDBY_250_MS, STANDBY_500_MS,
+            STANDBY_1000_MS, STANDBY_2000_MS, STANDBY_4000_MS})
+    public @interface Standby {}
+    public static final int STANDBY_0_5_MS = 0;
+    public static final int STANDBY_62_5_MS = 1;
+    public static final int STANDBY_125_MS = 2;
+    public static final int STANDBY_250_MS = 3;
+    public static final int STANDBY_500_MS = 4;
+    public static final int STANDBY_1000_MS = 5;
+    /**
+     * 2000 ms on the BMP280, 10 ms on the BME280.
+     */
+    public static final int STANDBY_2000_MS = 6;
+    /**
+     * 4000 ms on the BMP280, 20 ms on the BME280.
+     */
+    public static final int STANDBY_4000_MS = 7;
+
+    /**
+     * Compensation arithmetic.
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({COMPENSATION_FLOAT, COMPENSATION_FIXED_POINT})
+    public @interface Compensation {}
+    /**
+     * Floating-point compensation formulas from the datasheet.
+     */
+    public static final int COMPENSATION_FLOAT = 0;
+    /**
+     * 32/64-bit integer compensation formulas from the datasheet, faster on boards without
+     * a hardware FPU.
+     */
+    public static final int COMPENSATION_FIXED_POINT = 1;
+
+    /**
+     * Measurement settings of the sensor, applied at once with
+     * {@link #setConfiguration(Configuration)}.
+     */
+    public static class Configuration {
+        private int mTemperatureOversampling = OVERSAMPLING_1X;
+        private int mPressureOversampling = OVERSAMPLING_1X;
+        private int mHumidityOversampling = OVERSAMPLING_1X;
+        private int mFilter = FILTER_OFF;
+        private int mStandby = STANDBY_0_5_MS;
+
+        /**
+         * Set oversampling multiplier for the temperature measurement.
+         */
+        public Configuration setTemperatureOversampling(@Oversampling int oversampling) {
+            mTemperatureOversampling = checkOversampling(oversampling);
+            return this;
+        }
+
+        /**
+         * Set oversampling multiplier for the pressure measurement.
+         */
+        public Configuration setPressureOversampling(@Oversampling int oversampling) {
+            mPressureOversampling = checkOversampling(oversampling);
+            return this;
+        }
+
+        /**
+         * Set oversampling multiplier for the humidity measurement. Ignored by the BMP280.
+         */
+        public Configuration setHumidityOversampling(@Oversampling int oversampling) {
+            mHumidityOversampling = checkOversampling(oversampling);
+            return this;
+        }
+
+        /**
+         * Set the IIR filter coefficient.
+         */
+        public Configuration setFilter(@Filter int filter) {
+            mFilter = checkFilter(filter);
+            return this;
+        }
+
+        /**
+         * Set the inactive duration between measurements in normal mode.
+         */
+        public Configuration setStandbyTime(@Standby int standby) {
+            mStandby = checkStandby(standby);
+            return this;
+        }
+
+        @Oversampling
+        public int getTemperatureOversampling() {
+            return mTemperatureOversampling;
+        }
+
+        @Oversampling
+        public int getPressureOversampling() {
+            return mPressureOversampling;
+        }
+
+        @Oversampling
+        public int getHumidityOversampling() {
+            return mHumidityOversampling;
+        }
+
+        @Filter
+        public int getFilter() {
+            return mFilter;
+        }
+
+        @Standby
+        public int getStandbyTime() {
+            return mStandby;
+        }
+    }
+
+    /**
+     * Persistent storage for the factory calibration data of a sensor, so that it
+     * does not have to be read again over I2C when the driver is restarted.
+     */
+    public interface CalibrationCache {
+        /**
+         * Return the calibration data previously saved for the given sensor,
+         * or null if there is none.
+         * @param bus I2C bus the sensor is connected to.
+         * @param address I2C address of the sensor.
+         * @param chipId Chip ID of the sensor.
+         */
+        byte[] load(String bus, int address, int chipId);
+
+        /**
+         * Save the calibration data of the given sensor.
+         * @param bus I2C bus the sensor is connected to.
+         * @param address I2C address of the sensor.
+         * @param chipId Chip ID of the sensor.
+         * @param calibration Raw calibration data.
+         */
+        void save(String bus, int address, int chipId, byte[] calibration);
+    }
 
     // Registers
-    private static final int BMP280_REG_TEMP_CALIB_1 = 0x88;
-    private static final int BMP280_REG_TEMP_CALIB_2 = 0x8A;
-    private static final int BMP280_REG_TEMP_CALIB_3 = 0x8C;
-
-    private static final int BMP280_REG_PRESS_CALIB_1 = 0x8E;
-    private static final int BMP280_REG_PRESS_CALIB_2 = 0x90;
-    private static final int BMP280_REG_PRESS_CALIB_3 = 0x92;
-    private static final int BMP280_REG_PRESS_CALIB_4 = 0x94;
-    private static final int BMP280_REG_PRESS_CALIB_5 = 0x96;
-    private static final int BMP280_REG_PRESS_CALIB_6 = 0x98;
-    private static final int BMP280_REG_PRESS_CALIB_7 = 0x9A;
-    private static final int BMP280_REG_PRESS_CALIB_8 = 0x9C;
-    private static final int BMP280_REG_PRESS_CALIB_9 = 0x9E;
+    // Temperature (3 words) and pressure (9 words) calibration data, little endian
+    private static final int BMP280_REG_CALIB = 0x88;
+    private static final int BMP280_CALIB_LENGTH = 24;
+    // BME280 humidity calibration data, split in two blocks
+    private static final int BME280_REG_HUM_CALIB_1 = 0xA1;
+    private static final int BME280_REG_HUM_CALIB_2 = 0xE1;
+    private static final int BME280_HUM_CALIB_2_LENGTH = 7;
+    private static final int BME280_CALIB_LENGTH = BMP280_CALIB_LENGTH + 1
+            + BME280_HUM_CALIB_2_LENGTH;
 
     private static final int BMP280_REG_ID = 0xD0;
+    private static final int BME280_REG_CTRL_HUM = 0xF2;
+    private static final int BMP280_REG_STATUS = 0xF3;
     private static final int BMP280_REG_CTRL = 0xF4;
+    private static final int BMP280_REG_CONFIG = 0xF5;
 
     private static final int BMP280_REG_PRESS = 0xF7;
     private static final int BMP280_REG_TEMP = 0xFA;
 
+    // Pressure and temperature data registers (0xF7..0xFC), read in a single burst
+    private static final int BMP280_DATA_LENGTH = 6;
+    private static final int BMP280_DATA_PRESS_OFFSET = 0;
+    private static final int BMP280_DATA_TEMP_OFFSET = 3;
+    // BME280 data registers, with humidity (0xFD..0xFE) following temperature
+    private static final int BME280_DATA_LENGTH = 8;
+    private static final int BME280_DATA_HUM_OFFSET = 6;
+
     private static final int BMP280_POWER_MODE_MASK = 0b00000011;
     private static final int BMP280_POWER_MODE_SLEEP = 0b00000000;
+    private static final int BMP280_POWER_MODE_FORCED = 0b00000001;
     private static final int BMP280_POWER_MODE_NORMAL = 0b00000011;
+    private static final int BMP280_STATUS_MEASURING = 0b00001000;
     private static final int BMP280_OVERSAMPLING_PRESSURE_MASK = 0b00011100;
     private static final int BMP280_OVERSAMPLING_PRESSURE_BITSHIFT = 2;
     private static final int BMP280_OVERSAMPLING_TEMPERATURE_MASK = 0b11100000;
     private static final int BMP280_OVERSAMPLING_TEMPERATURE_BITSHIFT = 5;
+    private static final int BME280_OVERSAMPLING_HUMIDITY_MASK = 0b00000111;
+    private static final int BMP280_FILTER_MASK = 0b00011100;
+    private static final int BMP280_FILTER_BITSHIFT = 2;
+    private static final int BMP280_STANDBY_MASK = 0b11100000;
+    private static final int BMP280_STANDBY_BITSHIFT = 5;
+
+    // Maximum measurement time, from the datasheet, in microseconds
+    private static final int MEASUREMENT_TIME_BASE = 1250;
+    private static final int MEASUREMENT_TIME_PER_SAMPLE = 2300;
+    private static final int MEASUREMENT_TIME_SETUP = 575;
+    // Polling of the status register when the measurement takes longer than expected
+    private static final int STATUS_POLL_INTERVAL = 1; // ms
+    private static final int STATUS_POLL_ATTEMPTS = 10;
+    // Standby times, in microseconds. The two longest ones differ between sensors.
+    private static final int[] BMP280_STANDBY_TIMES = {500, 62500, 125000, 250000, 500000,
+            1000000, 2000000, 4000000};
+    private static final int[] BME280_STANDBY_TIMES = {500, 62500, 125000, 250000, 500000,
+            1000000, 10000, 20000};
 
     private I2cDevice mDevice;
     private final int[] mTempCalibrationData = new int[3];
     private final int[] mPressureCalibrationData = new int[9];
-    private final byte[] mBuffer = new byte[3]; // for reading sensor values
+    private final int[] mHumidityCalibrationData = new int[6];
+    private final byte[] mBuffer = new byte[BME280_DATA_LENGTH]; // for reading sensor values
     private boolean mEnabled = false;
     private int mChipId;
+    private int mAddress;
     private int mMode;
     private int mPressureOversampling;
     private int mTemperatureOversampling;
+    private int mHumidityOversampling;
+    private int mFilter;
+    private int mStandby;
+    private int mCompensation = COMPENSATION_FLOAT;
+    // Last values written to the control registers
+    private int mRegCtrl;
+    private int mRegConfig;
+    private int mRegCtrlHum;
+    private boolean mStaging;
+    // Register writes of the current transaction
+    private final int[] mPendingRegisters = new int[4];
+    private final int[] mPendingValues = new int[4];
+    private final byte[] mWriteBuffer = new byte[7];
+    // Fixed-point temperature and fine temperature, guarded by mBuffer
+    private final int[] mFixedTemperature = new int[2];
 
     /**
      * Create a new BMP/BME280 sensor driver connected on the given bus.
@@ -146,10 +363,43 @@ public class Bmx280 implements AutoCloseable {
      * @throws IOException
      */
     public Bmx280(String bus) throws IOException {
+        this(bus, I2C_ADDRESS, null);
+    }
+
+    /**
+     * Create a new BMP/BME280 sensor driver connected on the given bus and address.
+     * @param bus I2C bus the sensor is connected to.
+     * @param address I2C address of the sensor, {@link #I2C_ADDRESS} or
+     *                {@link #I2C_ADDRESS_ALT}.
+     * @throws IOException
+     */
+    public Bmx280(String bus, int address) throws IOException {
+        this(bus, address, null);
+    }
+
+    /**
+     * Create a new BMP/BME280 sensor driver connected on the given bus.
+     * @param bus I2C bus the sensor is connected to.
+     * @param cache optional {@link CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     */
+    public Bmx280(String bus, CalibrationCache cache) throws IOException {
+        this(bus, I2C_ADDRESS, cache);
+    }
+
+    /**
+     * Create a new BMP/BME280 sensor driver connected on the given bus and address.
+     * @param bus I2C bus the sensor is connected to.
+     * @param address I2C address of the sensor, {@link #I2C_ADDRESS} or
+     *                {@link #I2C_ADDRESS_ALT}.
+     * @param cache optional {@link CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     */
+    public Bmx280(String bus, int address, CalibrationCache cache) throws IOException {
         PeripheralManagerService pioService = new PeripheralManagerService();
-        I2cDevice device = pioService.openI2cDevice(bus, I2C_ADDRESS);
+        I2cDevice device = pioService.openI2cDevice(bus, address);
         try {
-            connect(device);
+            connect(device, bus, address, cache);
         } catch (IOException|RuntimeException e) {
             try {
                 close();
@@ -165,32 +415,153 @@ public class Bmx280 implements AutoCloseable {
      * @throws IOException
      */
     /*package*/  Bmx280(I2cDevice device) throws IOException {
-        connect(device);
+        connect(device, null, I2C_ADDRESS, null);
     }
 
-    private void connect(I2cDevice device) throws IOException {
+    /**
+     * Create a new BMP/BME280 sensor driver connected to the given I2c device.
+     * @param device I2C device of the sensor.
+     * @param cache optional {@link CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     */
+    /*package*/  Bmx280(I2cDevice device, CalibrationCache cache) throws IOException {
+        connect(device, null, I2C_ADDRESS, cache);
+    }
+
+    /**
+     * Create a new BMP/BME280 sensor driver connected to the given I2c device.
+     * @param device I2C device of the sensor.
+     * @param address I2C address of the sensor.
+     * @param cache optional {@link CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     */
+    /*package*/  Bmx280(I2cDevice device, int address, CalibrationCache cache)
+            throws IOException {
+        connect(device, null, address, cache);
+    }
+
+    private void connect(I2cDevice device, String bus, int address, CalibrationCache cache)
+            throws IOException {
         mDevice = device;
+        mAddress = address;
+
+        mChipId = mDevice.readRegByte(BMP280_REG_ID) & 0xff;
+
+        int length = mChipId == CHIP_ID_BME280 ? BME280_CALIB_LENGTH : BMP280_CALIB_LENGTH;
+        byte[] calibration = cache != null ? cache.load(bus, address, mChipId) : null;
+        if (calibration == null || calibration.length != length) {
+            calibration = readCalibration(length);
+            if (cache != null) {
+                cache.save(bus, address, mChipId, calibration);
+            }
+        }
+        decodeCalibration(calibration, mTempCalibrationData, mPressureCalibrationData,
+                mHumidityCalibrationData);
 
-        mChipId = mDevice.readRegByte(BMP280_REG_ID);
+        readRegisters();
+    }
 
-        // Read temperature calibration data (3 words). First value is unsigned.
-        mTempCalibrationData[0] = mDevice.readRegWord(BMP280_REG_TEMP_CALIB_1) & 0xffff;
-        mTempCalibrationData[1] = (short) mDevice.readRegWord(BMP280_REG_TEMP_CALIB_2);
-        mTempCalibrationData[2] = (short) mDevice.readRegWord(BMP280_REG_TEMP_CALIB_3);
-        // Read pressure calibration data (9 words). First value is unsigned.
-        mPressureCalibrationData[0] = mDevice.readRegWord(BMP280_REG_PRESS_CALIB_1) & 0xffff;
-        mPressureCalibrationData[1] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_2);
-        mPressureCalibrationData[2] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_3);
-        mPressureCalibrationData[3] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_4);
-        mPressureCalibrationData[4] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_5);
-        mPressureCalibrationData[5] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_6);
-        mPressureCalibrationData[6] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_7);
-        mPressureCalibrationData[7] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_8);
-        mPressureCalibrationData[8] = (short) mDevice.readRegWord(BMP280_REG_PRESS_CALIB_9);
+    /**
+     * Reads the raw calibration data from the sensor, in as few transactions as possible.
+     */
+    private byte[] readCalibration(int length) throws IOException {
+        byte[] calibration = new byte[length];
+        mDevice.readRegBuffer(BMP280_REG_CALIB, calibration, BMP280_CALIB_LENGTH);
+        if (length == BME280_CALIB_LENGTH) {
+            calibration[BMP280_CALIB_LENGTH] = mDevice.readRegByte(BME280_REG_HUM_CALIB_1);
+            byte[] humidity = new byte[BME280_HUM_CALIB_2_LENGTH];
+            mDevice.readRegBuffer(BME280_REG_HUM_CALIB_2, humidity, humidity.length);
+            System.arraycopy(humidity, 0, calibration, BMP280_CALIB_LENGTH + 1, humidity.length);
+        }
+        return calibration;
     }
 
     /**
-     * Set the power mode of the sensor.
+     * Decodes the raw calibration data read from the sensor. The humidity calibration
+     * data is only decoded if present (BME280).
+     */
+    @VisibleForTesting
+    static void decodeCalibration(byte[] calibration, int[] temperature, int[] pressure,
+            int[] humidity) {
+        // Temperature calibration data (3 words). First value is unsigned.
+        temperature[0] = readWord(calibration, 0) & 0xffff;
+        temperature[1] = (short) readWord(calibration, 2);
+        temperature[2] = (short) readWord(calibration, 4);
+        // Pressure calibration data (9 words). First value is unsigned.
+        pressure[0] = readWord(calibration, 6) & 0xffff;
+        for (int i = 1; i < 9; i++) {
+            pressure[i] = (short) readWord(calibration, 6 + 2 * i);
+        }
+
+        if (calibration.length < BME280_CALIB_LENGTH) {
+            return;
+        }
+        // Humidity calibration data, from 0xA1 and 0xE1..0xE7
+        int h = BMP280_CALIB_LENGTH;
+        humidity[0] = calibration[h] & 0xff;
+        humidity[1] = (short) readWord(calibration, h + 1);
+        humidity[2] = calibration[h + 3] & 0xff;
+        humidity[3] = (calibration[h + 4] << 4) | (calibration[h + 5] & 0x0f);
+        humidity[4] = (calibration[h + 6] << 4) | ((calibration[h + 5] & 0xff) >> 4);
+        humidity[5] = calibration[h + 7];
+    }
+
+    /**
+     * Reads a little endian word from the given buffer.
+     */
+    private static int readWord(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+    /**
+     * Stage the following configuration changes instead of writing them to the sensor one at a
+     * time. {@link #setMode(int)}, the oversampling setters, {@link #setFilter(int)},
+     * {@link #setStandbyTime(int)} and {@link #setConfiguration(Configuration)} only update the
+     * driver state until {@link #commitConfiguration()} or {@link #cancelConfiguration()} is
+     * called.
+     */
+    public void beginConfiguration() {
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+        if (mStaging) {
+            throw new IllegalStateException("configuration already staged");
+        }
+        mStaging = true;
+    }
+
+    /**
+     * Write the configuration changes staged since {@link #beginConfiguration()} to the sensor,
+     * in a single I2C transaction. Nothing is written if the configuration did not change.
+     * @throws IOException
+     */
+    public void commitConfiguration() throws IOException {
+        if (!mStaging) {
+            throw new IllegalStateException("no staged configuration");
+        }
+        mStaging = false;
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+        writeRegisters();
+    }
+
+    /**
+     * Discard the configuration changes staged since {@link #beginConfiguration()}, without
+     * writing anything to the sensor. The driver state returns to the last configuration
+     * written.
+     */
+    public void cancelConfiguration() {
+        if (!mStaging) {
+            throw new IllegalStateException("no staged configuration");
+        }
+        mStaging = false;
+        loadRegisters(mRegCtrl, mRegConfig, mRegCtrlHum);
+    }
+
+    /**
+     * Set the power mode of the sensor. {@link #MODE_FORCED} triggers a single measurement,
+     * after which the sensor returns to sleep mode by itself.
      * @param mode power mode.
      * @throws IOException
      */
@@ -199,14 +570,22 @@ public class Bmx280 implements AutoCloseable {
             throw new IllegalStateException("I2C device not open");
         }
 
-        int regCtrl = mDevice.readRegByte(BMP280_REG_CTRL) & 0xff;
-        if (mode == MODE_SLEEP) {
-            regCtrl &= ~BMP280_POWER_MODE_MASK;
-        } else {
-            regCtrl |= BMP280_POWER_MODE_NORMAL;
-        }
-        mDevice.writeRegByte(BMP280_REG_CTRL, (byte)(regCtrl));
+        getPowerModeBits(mode);
         mMode = mode;
+        writeRegisters();
+    }
+
+    private static int getPowerModeBits(@Mode int mode) {
+        switch (mode) {
+            case MODE_SLEEP:
+                return BMP280_POWER_MODE_SLEEP;
+            case MODE_FORCED:
+                return BMP280_POWER_MODE_FORCED;
+            case MODE_NORMAL:
+                return BMP280_POWER_MODE_NORMAL;
+            default:
+                throw new IllegalArgumentException("Invalid mode: " + mode);
+        }
     }
 
     /**
@@ -219,14 +598,8 @@ public class Bmx280 implements AutoCloseable {
             throw new IllegalStateException("I2C device not open");
         }
 
-        int regCtrl = mDevice.readRegByte(BMP280_REG_CTRL) & 0xff;
-        if (oversampling == OVERSAMPLING_SKIPPED) {
-            regCtrl &= ~BMP280_OVERSAMPLING_TEMPERATURE_MASK;
-        } else {
-            regCtrl |= 1 << BMP280_OVERSAMPLING_TEMPERATURE_BITSHIFT;
-        }
-        mDevice.writeRegByte(BMP280_REG_CTRL, (byte)(regCtrl));
-        mTemperatureOversampling = oversampling;
+        mTemperatureOversampling = checkOversampling(oversampling);
+        writeRegisters();
     }
 
     /**
@@ -239,14 +612,227 @@ public class Bmx280 implements AutoCloseable {
             throw new IllegalStateException("I2C device not open");
         }
 
-        int regCtrl = mDevice.readRegByte(BMP280_REG_CTRL) & 0xff;
-        if (oversampling == OVERSAMPLING_SKIPPED) {
-            regCtrl &= ~BMP280_OVERSAMPLING_PRESSURE_MASK;
+        mPressureOversampling = checkOversampling(oversampling);
+        writeRegisters();
+    }
+
+    /**
+     * Set oversampling multiplier for the humidity measurement. Only supported by the BME280.
+     * @param oversampling oversampling multiplier.
+     * @throws IOException
+     */
+    public void setHumidityOversampling(@Oversampling int oversampling) throws IOException {
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+        if (!hasHumiditySensor()) {
+            throw new IllegalStateException("humidity is not supported by this sensor");
+        }
+
+        mHumidityOversampling = checkOversampling(oversampling);
+        writeRegisters();
+    }
+
+    /**
+     * Set the IIR filter coefficient. The filter reduces short-term fluctuations of the
+     * pressure and temperature readings, at the cost of a slower response.
+     * @param filter filter coefficient.
+     * @throws IOException
+     */
+    public void setFilter(@Filter int filter) throws IOException {
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+
+        mFilter = checkFilter(filter);
+        writeRegisters();
+    }
+
+    /**
+     * Set the inactive duration between measurements in normal mode.
+     * @param standby standby time.
+     * @throws IOException
+     */
+    public void setStandbyTime(@Standby int standby) throws IOException {
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+
+        mStandby = checkStandby(standby);
+        writeRegisters();
+    }
+
+    /**
+     * Apply all measurement settings in a single I2C transaction.
+     * @param configuration measurement settings.
+     * @throws IOException
+     */
+    public void setConfiguration(Configuration configuration) throws IOException {
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+
+        mTemperatureOversampling = configuration.mTemperatureOversampling;
+        mPressureOversampling = configuration.mPressureOversampling;
+        if (hasHumiditySensor()) {
+            mHumidityOversampling = configuration.mHumidityOversampling;
+        }
+        mFilter = configuration.mFilter;
+        mStandby = configuration.mStandby;
+        writeRegisters();
+    }
+
+    /**
+     * Return the current measurement settings.
+     */
+    public Configuration getConfiguration() {
+        return new Configuration()
+                .setTemperatureOversampling(mTemperatureOversampling)
+                .setPressureOversampling(mPressureOversampling)
+                .setHumidityOversampling(mHumidityOversampling)
+                .setFilter(mFilter)
+                .setStandbyTime(mStandby);
+    }
+
+    /**
+     * Initializes the driver state and the shadow registers from the control registers.
+     */
+    private void readRegisters() throws IOException {
+        // ctrl_hum, status, ctrl_meas and config are contiguous
+        byte[] registers = new byte[4];
+        mDevice.readRegBuffer(BME280_REG_CTRL_HUM, registers, registers.length);
+        loadRegisters(registers[2] & 0xff,
+                registers[3] & (BMP280_STANDBY_MASK | BMP280_FILTER_MASK),
+                registers[0] & BME280_OVERSAMPLING_HUMIDITY_MASK);
+    }
+
+    /**
+     * Sets the driver state and the shadow registers to the given control register values.
+     */
+    private void loadRegisters(int regCtrl, int regConfig, int regCtrlHum) {
+        // Oversampling and filter values above the highest setting are equivalent to it
+        mTemperatureOversampling = Math.min(OVERSAMPLING_16X,
+                (regCtrl & BMP280_OVERSAMPLING_TEMPERATURE_MASK)
+                        >> BMP280_OVERSAMPLING_TEMPERATURE_BITSHIFT);
+        mPressureOversampling = Math.min(OVERSAMPLING_16X,
+                (regCtrl & BMP280_OVERSAMPLING_PRESSURE_MASK)
+                        >> BMP280_OVERSAMPLING_PRESSURE_BITSHIFT);
+        // A forced conversion in progress ends in sleep mode
+        if ((regCtrl & BMP280_POWER_MODE_MASK) == BMP280_POWER_MODE_NORMAL) {
+            mMode = MODE_NORMAL;
         } else {
-            regCtrl |= 1 << BMP280_OVERSAMPLING_PRESSURE_BITSHIFT;
+            mMode = MODE_SLEEP;
+            regCtrl &= ~BMP280_POWER_MODE_MASK;
+        }
+        mFilter = Math.min(FILTER_16, (regConfig & BMP280_FILTER_MASK) >> BMP280_FILTER_BITSHIFT);
+        mStandby = (regConfig & BMP280_STANDBY_MASK) >> BMP280_STANDBY_BITSHIFT;
+        mRegCtrl = regCtrl;
+        mRegConfig = regConfig;
+        if (hasHumiditySensor()) {
+            mRegCtrlHum = regCtrlHum;
+            mHumidityOversampling = Math.min(OVERSAMPLING_16X, mRegCtrlHum);
+        }
+    }
+
+    /**
+     * Writes the control registers that differ from the driver state, unless changes are being
+     * staged. All registers are written in a single transaction.
+     */
+    private void writeRegisters() throws IOException {
+        if (mStaging) {
+            return;
+        }
+
+        int regCtrl = mTemperatureOversampling << BMP280_OVERSAMPLING_TEMPERATURE_BITSHIFT
+                | mPressureOversampling << BMP280_OVERSAMPLING_PRESSURE_BITSHIFT
+                | getPowerModeBits(mMode);
+        int regConfig = mStandby << BMP280_STANDBY_BITSHIFT | mFilter << BMP280_FILTER_BITSHIFT;
+        int regCtrlHum = mHumidityOversampling;
+
+        boolean writeConfig = regConfig != mRegConfig;
+        boolean writeCtrlHum = hasHumiditySensor() && regCtrlHum != mRegCtrlHum;
+        // Changes to ctrl_hum only become effective after a write to ctrl_meas, and each write
+        // in forced mode triggers a conversion.
+        boolean writeCtrl = regCtrl != mRegCtrl || writeCtrlHum || mMode == MODE_FORCED;
+
+        int count = 0;
+        if (writeConfig && (mRegCtrl & BMP280_POWER_MODE_MASK) != BMP280_POWER_MODE_SLEEP) {
+            // Writes to the config register may be ignored in normal mode, so the sensor is
+            // put to sleep before it is updated.
+            count = addRegister(count, BMP280_REG_CTRL, regCtrl & ~BMP280_POWER_MODE_MASK);
+            writeCtrl = (regCtrl & BMP280_POWER_MODE_MASK) != BMP280_POWER_MODE_SLEEP
+                    || writeCtrlHum;
+        }
+        if (writeCtrlHum) {
+            count = addRegister(count, BME280_REG_CTRL_HUM, regCtrlHum);
+        }
+        if (writeConfig) {
+            count = addRegister(count, BMP280_REG_CONFIG, regConfig);
+        }
+        if (writeCtrl) {
+            count = addRegister(count, BMP280_REG_CTRL, regCtrl);
+        }
+
+        try {
+            if (count == 1) {
+                mDevice.writeRegByte(mPendingRegisters[0], (byte) mPendingValues[0]);
+            } else if (count > 1) {
+                // Register writes are sent as (address, value) pairs in one transaction
+                byte[] data = mWriteBuffer;
+                data[0] = (byte) mPendingValues[0];
+                for (int i = 1; i < count; i++) {
+                    data[2 * i - 1] = (byte) mPendingRegisters[i];
+                    data[2 * i] = (byte) mPendingValues[i];
+                }
+                mDevice.writeRegBuffer(mPendingRegisters[0], data, 2 * count - 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (mMode == MODE_FORCED) {
+                // No conversion was triggered, keep the mode of the last successful write so
+                // that the next setter does not start one.
+                mMode = (mRegCtrl & BMP280_POWER_MODE_MASK) == BMP280_POWER_MODE_NORMAL
+                        ? MODE_NORMAL : MODE_SLEEP;
+            }
+            throw e;
+        }
+
+        if (mMode == MODE_FORCED) {
+            // The sensor goes back to sleep by itself once the conversion is done
+            mMode = MODE_SLEEP;
+            regCtrl &= ~BMP280_POWER_MODE_MASK;
+        }
+        mRegCtrl = regCtrl;
+        mRegConfig = regConfig;
+        if (hasHumiditySensor()) {
+            mRegCtrlHum = regCtrlHum;
         }
-        mDevice.writeRegByte(BMP280_REG_CTRL, (byte)(regCtrl));
-        mPressureOversampling = oversampling;
+    }
+
+    private int addRegister(int count, int register, int value) {
+        mPendingRegisters[count] = register;
+        mPendingValues[count] = value;
+        return count + 1;
+    }
+
+    private static int checkOversampling(int oversampling) {
+        if (oversampling < OVERSAMPLING_SKIPPED || oversampling > OVERSAMPLING_16X) {
+            throw new IllegalArgumentException("Invalid oversampling: " + oversampling);
+        }
+        return oversampling;
+    }
+
+    private static int checkFilter(int filter) {
+        if (filter < FILTER_OFF || filter > FILTER_16) {
+            throw new IllegalArgumentException("Invalid filter coefficient: " + filter);
+        }
+        return filter;
+    }
+
+    private static int checkStandby(int standby) {
+        if (standby < STANDBY_0_5_MS || standby > STANDBY_4000_MS) {
+            throw new IllegalArgumentException("Invalid standby time: " + standby);
+        }
+        return standby;
     }
 
     /**
@@ -270,6 +856,41 @@ public class Bmx280 implements AutoCloseable {
         return mChipId;
     }
 
+    /**
+     * Returns the I2C address of the sensor.
+     */
+    public int getAddress() {
+        return mAddress;
+    }
+
+    /**
+     * Select the arithmetic used to compensate the raw readings. Both give the same results
+     * within the sensor resolution.
+     * @param compensation {@link #COMPENSATION_FLOAT} (the default) or
+     *                     {@link #COMPENSATION_FIXED_POINT}.
+     */
+    public void setCompensation(@Compensation int compensation) {
+        if (compensation != COMPENSATION_FLOAT && compensation != COMPENSATION_FIXED_POINT) {
+            throw new IllegalArgumentException("Invalid compensation: " + compensation);
+        }
+        mCompensation = compensation;
+    }
+
+    /**
+     * Returns the arithmetic used to compensate the raw readings.
+     */
+    @Compensation
+    public int getCompensation() {
+        return mCompensation;
+    }
+
+    /**
+     * Returns true if the sensor measures humidity, i.e. it is a BME280.
+     */
+    public boolean hasHumiditySensor() {
+        return mChipId == CHIP_ID_BME280;
+    }
+
     /**
      * Read the current temperature.
      *
@@ -280,6 +901,12 @@ public class Bmx280 implements AutoCloseable {
             throw new IllegalStateException("temperature oversampling is skipped");
         }
         int rawTemp = readSample(BMP280_REG_TEMP);
+        if (mCompensation == COMPENSATION_FIXED_POINT) {
+            synchronized (mBuffer) {
+                compensateTemperatureFixed(rawTemp, mTempCalibrationData, mFixedTemperature);
+                return mFixedTemperature[0] / 100f;
+            }
+        }
         return compensateTemperature(rawTemp, mTempCalibrationData)[0];
     }
 
@@ -304,19 +931,328 @@ public class Bmx280 implements AutoCloseable {
      * @throws IOException
      */
     public float[] readTemperatureAndPressure() throws IOException, IllegalStateException {
+        checkTemperatureAndPressure();
+        return readData(false);
+    }
+
+    /**
+     * Read the current temperature and barometric pressure into the given array, without
+     * allocating.
+     *
+     * @param values array receiving the temperature in degrees Celsius at index 0, and the
+     *               barometric pressure in hPa units at index 1.
+     * @throws IOException
+     */
+    public void readTemperatureAndPressure(float[] values) throws IOException,
+            IllegalStateException {
+        if (values.length < 2) {
+            throw new IllegalArgumentException("values must have room for 2 elements");
+        }
+        checkTemperatureAndPressure();
+        readData(false, values, 0);
+    }
+
+    /**
+     * Record a series of temperature and barometric pressure samples taken at a fixed period,
+     * without allocating. In normal mode, the data registers are read once per period, which
+     * should not be shorter than {@link #getMeasurementPeriod()}. Otherwise, a forced
+     * measurement is performed for each sample.
+     *
+     * @param out array receiving the samples as consecutive pairs of temperature in degrees
+     *            Celsius and barometric pressure in hPa units.
+     * @param count number of samples to record.
+     * @param periodNanos time between the start of two samples, in nanoseconds.
+     * @throws IOException
+     */
+    public void readSamples(float[] out, int count, long periodNanos) throws IOException,
+            IllegalStateException {
+        if (count < 0 || out.length < 2 * count) {
+            throw new IllegalArgumentException("out must have room for " + count + " samples");
+        }
+        if (periodNanos < 0) {
+            throw new IllegalArgumentException("period cannot be negative");
+        }
+        checkTemperatureAndPressure();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long delay = start + i * periodNanos - System.nanoTime();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while recording samples");
+                }
+            }
+            if (mMode != MODE_NORMAL) {
+                performForcedMeasurement();
+            }
+            readData(false, out, 2 * i);
+        }
+    }
+
+    /**
+     * Read the current relative humidity. Only supported by the BME280.
+     *
+     * @return the relative humidity in percent
+     * @throws IOException
+     */
+    public float readHumidity() throws IOException, IllegalStateException {
+        checkHumidity();
+        return readData(true)[2];
+    }
+
+    /**
+     * Read the current temperature, barometric pressure and relative humidity in a single
+     * transaction. Only supported by the BME280.
+     *
+     * @return a 3-element array. The first element is temperature in degrees Celsius, the
+     * second is barometric pressure in hPa units, and the third is relative humidity in percent.
+     * @throws IOException
+     */
+    public float[] readTemperaturePressureAndHumidity() throws IOException, IllegalStateException {
+        checkHumidity();
+        checkTemperatureAndPressure();
+        return readData(true);
+    }
+
+    /**
+     * Read the current temperature, barometric pressure and relative humidity into the given
+     * array, without allocating. Only supported by the BME280.
+     *
+     * @param values array receiving the temperature in degrees Celsius at index 0, the
+     *               barometric pressure in hPa units at index 1, and the relative humidity in
+     *               percent at index 2.
+     * @throws IOException
+     */
+    public void readTemperaturePressureAndHumidity(float[] values) throws IOException,
+            IllegalStateException {
+        if (values.length < 3) {
+            throw new IllegalArgumentException("values must have room for 3 elements");
+        }
+        checkHumidity();
+        checkTemperatureAndPressure();
+        readData(true, values, 0);
+    }
+
+    /**
+     * Perform a single measurement in forced mode and read the resulting temperature and
+     * pressure. The conversion is triggered with the current oversampling settings, and the
+     * method blocks for the measurement time given by the datasheet for these settings. The
+     * sensor is left in sleep mode afterwards.
+     * @return a 2-element array. The first element is temperature in degrees Celsius, and the
+     * second is barometric pressure in hPa units.
+     * @throws IOException
+     */
+    public float[] measureTemperatureAndPressure() throws IOException, IllegalStateException {
+        checkTemperatureAndPressure();
+        performForcedMeasurement();
+        return readData(false);
+    }
+
+    /**
+     * Perform a single measurement in forced mode and read the resulting temperature, pressure
+     * and humidity. Only supported by the BME280.
+     * @return a 3-element array. The first element is temperature in degrees Celsius, the
+     * second is barometric pressure in hPa units, and the third is relative humidity in percent.
+     * @throws IOException
+     * @see #measureTemperatureAndPressure()
+     */
+    public float[] measureTemperaturePressureAndHumidity()
+            throws IOException, IllegalStateException {
+        checkHumidity();
+        checkTemperatureAndPressure();
+        performForcedMeasurement();
+        return readData(true);
+    }
+
+    /**
+     * Checks that the sensor is open and measures humidity, as well as the temperature its
+     * compensation needs.
+     */
+    private void checkHumidity() {
+        if (!hasHumiditySensor()) {
+            throw new IllegalStateException("humidity is not supported by this sensor");
+        }
+        if (mHumidityOversampling == OVERSAMPLING_SKIPPED) {
+            throw new IllegalStateException("humidity oversampling is skipped");
+        }
+        if (mTemperatureOversampling == OVERSAMPLING_SKIPPED) {
+            throw new IllegalStateException("temperature oversampling is skipped");
+        }
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+    }
+
+    /**
+     * Triggers a conversion in forced mode and waits until it is complete.
+     * @throws IOException
+     */
+    private void performForcedMeasurement() throws IOException {
+        triggerForcedMeasurement();
+        try {
+            int time = getMeasurementTime();
+            Thread.sleep(time / 1000, (time % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for measurement");
+        }
+        awaitMeasurement();
+    }
+
+    /**
+     * Checks that the sensor is open and measures both temperature and pressure.
+     */
+    /*package*/ void checkTemperatureAndPressure() throws IllegalStateException {
         if (mTemperatureOversampling == OVERSAMPLING_SKIPPED) {
             throw new IllegalStateException("temperature oversampling is skipped");
         }
         if (mPressureOversampling == OVERSAMPLING_SKIPPED) {
             throw new IllegalStateException("pressure oversampling is skipped");
         }
-        // The pressure compensation formula requires the fine temperature reading, so we always
-        // read temperature first.
-        int rawTemp = readSample(BMP280_REG_TEMP);
-        float[] temperatures = compensateTemperature(rawTemp, mTempCalibrationData);
-        int rawPressure = readSample(BMP280_REG_PRESS);
-        float pressure = compensatePressure(rawPressure, temperatures[1], mPressureCalibrationData);
-        return new float[]{temperatures[0], pressure};
+        if (mDevice == null) {
+            throw new IllegalStateException("I2C device not open");
+        }
+    }
+
+    /**
+     * Triggers a conversion in forced mode, without waiting for it.
+     * @throws IOException
+     */
+    /*package*/ void triggerForcedMeasurement() throws IOException {
+        if (mStaging) {
+            throw new IllegalStateException("configuration is being staged");
+        }
+        mMode = MODE_FORCED;
+        writeRegisters();
+    }
+
+    /**
+     * Polls the status register until the current conversion is complete. Called once the
+     * measurement time elapsed, so the conversion is normally already complete.
+     * @throws IOException
+     */
+    /*package*/ void awaitMeasurement() throws IOException {
+        try {
+            int attempts = 0;
+            while ((mDevice.readRegByte(BMP280_REG_STATUS) & BMP280_STATUS_MEASURING) != 0) {
+                if (++attempts > STATUS_POLL_ATTEMPTS) {
+                    throw new IOException("Measurement did not complete");
+                }
+                Thread.sleep(STATUS_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for measurement");
+        }
+    }
+
+    /**
+     * Return the maximum duration of a measurement with the current oversampling settings,
+     * in microseconds.
+     */
+    public int getMeasurementTime() {
+        return computeMeasurementTime(mTemperatureOversampling, mPressureOversampling,
+                hasHumiditySensor() ? mHumidityOversampling : OVERSAMPLING_SKIPPED);
+    }
+
+    /**
+     * Return the time between the start of two measurements in normal mode, i.e. the
+     * measurement time plus the standby time, in microseconds.
+     */
+    public int getMeasurementPeriod() {
+        int[] standbyTimes = hasHumiditySensor() ? BME280_STANDBY_TIMES : BMP280_STANDBY_TIMES;
+        return getMeasurementTime() + standbyTimes[mStandby];
+    }
+
+    @VisibleForTesting
+    static int computeMeasurementTime(@Oversampling int temperatureOversampling,
+            @Oversampling int pressureOversampling, @Oversampling int humidityOversampling) {
+        int time = MEASUREMENT_TIME_BASE;
+        if (temperatureOversampling != OVERSAMPLING_SKIPPED) {
+            time += MEASUREMENT_TIME_PER_SAMPLE * (1 << (temperatureOversampling - 1));
+        }
+        if (pressureOversampling != OVERSAMPLING_SKIPPED) {
+            time += MEASUREMENT_TIME_PER_SAMPLE * (1 << (pressureOversampling - 1))
+                    + MEASUREMENT_TIME_SETUP;
+        }
+        if (humidityOversampling != OVERSAMPLING_SKIPPED) {
+            time += MEASUREMENT_TIME_PER_SAMPLE * (1 << (humidityOversampling - 1))
+                    + MEASUREMENT_TIME_SETUP;
+        }
+        return time;
+    }
+
+    /**
+     * Reads and compensates the data registers. Temperature oversampling must not be skipped.
+     * @param humidity whether to read the humidity registers of the BME280 as well.
+     * @return temperature, pressure (NaN when skipped), and humidity if requested.
+     * @throws IOException
+     */
+    /*package*/ float[] readData(boolean humidity) throws IOException {
+        float[] values = new float[humidity ? 3 : 2];
+        readData(humidity, values, 0);
+        return values;
+    }
+
+    /**
+     * Reads and compensates the data registers into the given array, without allocating.
+     * Temperature oversampling must not be skipped.
+     * @param humidity whether to read the humidity registers of the BME280 as well.
+     * @param values receives temperature, pressure (NaN when skipped), and humidity if
+     *               requested, starting at the given offset.
+     * @throws IOException
+     */
+    /*package*/ void readData(boolean humidity, float[] values, int offset) throws IOException {
+        synchronized (mBuffer) {
+            // Read all data registers in one transaction, so that all values belong to the
+            // same conversion.
+            mDevice.readRegBuffer(BMP280_REG_PRESS, mBuffer,
+                    humidity ? BME280_DATA_LENGTH : BMP280_DATA_LENGTH);
+            int rawPressure = decodeSample(mBuffer, BMP280_DATA_PRESS_OFFSET);
+            int rawTemp = decodeSample(mBuffer, BMP280_DATA_TEMP_OFFSET);
+            int rawHumidity = 0;
+            if (humidity) {
+                rawHumidity = (mBuffer[BME280_DATA_HUM_OFFSET] & 0xff) << 8
+                        | (mBuffer[BME280_DATA_HUM_OFFSET + 1] & 0xff);
+            }
+            compensate(rawTemp, rawPressure, rawHumidity, humidity, values, offset);
+        }
+    }
+
+    /**
+     * Compensates raw readings with the selected arithmetic, without allocating. Must be called
+     * with mBuffer held.
+     * @param values receives temperature, pressure (NaN when skipped), and humidity if requested,
+     *               starting at the given offset.
+     */
+    private void compensate(int rawTemp, int rawPressure, int rawHumidity, boolean humidity,
+            float[] values, int offset) {
+        boolean pressure = mPressureOversampling != OVERSAMPLING_SKIPPED;
+        // The pressure and humidity compensation formulas require the fine temperature reading,
+        // so we always compensate temperature first.
+        if (mCompensation == COMPENSATION_FIXED_POINT) {
+            compensateTemperatureFixed(rawTemp, mTempCalibrationData, mFixedTemperature);
+            int fineTemperature = mFixedTemperature[1];
+            values[offset] = mFixedTemperature[0] / 100f;
+            // Pressure is in Pa as Q24.8, humidity in percent as Q22.10
+            values[offset + 1] = pressure ? (float) (compensatePressureFixed(rawPressure,
+                    fineTemperature, mPressureCalibrationData) / 25600.0) : Float.NaN;
+            if (humidity) {
+                values[offset + 2] = compensateHumidityFixed(rawHumidity, fineTemperature,
+                        mHumidityCalibrationData) / 1024f;
+            }
+        } else {
+            float fineTemperature = compensateFineTemperature(rawTemp, mTempCalibrationData);
+            values[offset] = fineTemperature / 5120.0f;
+            values[offset + 1] = pressure ? compensatePressure(rawPressure, fineTemperature,
+                    mPressureCalibrationData) : Float.NaN;
+            if (humidity) {
+                values[offset + 2] = compensateHumidity(rawHumidity, fineTemperature,
+                        mHumidityCalibrationData);
+            }
+        }
     }
 
     /**
@@ -330,19 +1266,35 @@ public class Bmx280 implements AutoCloseable {
 
         synchronized (mBuffer) {
             mDevice.readRegBuffer(address, mBuffer, 3);
-            // msb[7:0] lsb[7:0] xlsb[7:4]
-            int msb = mBuffer[0] & 0xff;
-            int lsb = mBuffer[1] & 0xff;
-            int xlsb = mBuffer[2] & 0xf0;
-            // Convert to 20bit integer
-            return (msb << 16 | lsb << 8 | xlsb) >> 4;
+            return decodeSample(mBuffer, 0);
         }
     }
 
+    /**
+     * Decodes a 20 bit sample from 3 bytes of the given buffer.
+     */
+    private static int decodeSample(byte[] buffer, int offset) {
+        // msb[7:0] lsb[7:0] xlsb[7:4]
+        int msb = buffer[offset] & 0xff;
+        int lsb = buffer[offset + 1] & 0xff;
+        int xlsb = buffer[offset + 2] & 0xf0;
+        // Convert to 20bit integer
+        return (msb << 16 | lsb << 8 | xlsb) >> 4;
+    }
+
     // Compensation formula from the BMP280 datasheet.
     // https://cdn-shop.adafruit.com/datasheets/BST-BMP280-DS001-11.pdf
     @VisibleForTesting
     static float[] compensateTemperature(int rawTemp, int[] calibrationData) {
+        float fineTemp = compensateFineTemperature(rawTemp, calibrationData);
+        return new float[]{fineTemp / 5120.0f, fineTemp};
+    }
+
+    /**
+     * Returns the fine temperature used by the other compensation formulas. The temperature in
+     * degrees Celsius is the fine temperature divided by 5120.
+     */
+    private static float compensateFineTemperature(int rawTemp, int[] calibrationData) {
         int dig_T1 = calibrationData[0];
         int dig_T2 = calibrationData[1];
         int dig_T3 = calibrationData[2];
@@ -351,8 +1303,7 @@ public class Bmx280 implements AutoCloseable {
         float var1 = (adc_T / 16384f - ((float) dig_T1) / 1024f) * ((float) dig_T2);
         float var2 = ((adc_T / 131072f - ((float) dig_T1) / 8192f) * (adc_T / 131072f
                 - ((float) dig_T1) / 8192f)) * ((float) dig_T3);
-        float fineTemp = var1 + var2;
-        return new float[]{fineTemp / 5120.0f, fineTemp};
+        return var1 + var2;
     }
 
     // Compensation formula from the BMP280 datasheet.
@@ -387,4 +1338,105 @@ public class Bmx280 implements AutoCloseable {
         // p is in Pa, convert to hPa
         return p / 100.0f;
     }
+
+    // Compensation formula from the BME280 datasheet.
+    // https://ae-bst.resource.bosch.com/media/_tech/media/datasheets/BST-BME280_DS001-11.pdf
+    @VisibleForTesting
+    static float compensateHumidity(int rawHumidity, float fineTemperature, int[] calibration) {
+        int dig_H1 = calibration[0];
+        int dig_H2 = calibration[1];
+        int dig_H3 = calibration[2];
+        int dig_H4 = calibration[3];
+        int dig_H5 = calibration[4];
+        int dig_H6 = calibration[5];
+
+        float var_H = fineTemperature - 76800.0f;
+        var_H = (((float) rawHumidity) - (((float) dig_H4) * 64.0f + ((float) dig_H5) / 16384.0f
+                * var_H)) * (((float) dig_H2) / 65536.0f * (1.0f + ((float) dig_H6) / 67108864.0f
+                * var_H * (1.0f + ((float) dig_H3) / 67108864.0f * var_H)));
+        var_H = var_H * (1.0f - ((float) dig_H1) * var_H / 524288.0f);
+        if (var_H > MAX_HUMIDITY_PERCENT) {
+            return MAX_HUMIDITY_PERCENT;
+        } else if (var_H < MIN_HUMIDITY_PERCENT) {
+            return MIN_HUMIDITY_PERCENT;
+        }
+        return var_H;
+    }
+
+    /**
+     * Fixed-point variant of {@link #compensateTemperature(int, int[])}, using the
+     * 32-bit integer formula of the BMP280 datasheet.
+     * @param out receives the temperature in 0.01 degrees Celsius, and the fine temperature.
+     */
+    @VisibleForTesting
+    static void compensateTemperatureFixed(int rawTemp, int[] calibration, int[] out) {
+        int dig_T1 = calibration[0];
+        int dig_T2 = calibration[1];
+        int dig_T3 = calibration[2];
+
+        int var1 = (((rawTemp >> 3) - (dig_T1 << 1)) * dig_T2) >> 11;
+        int var2 = (((((rawTemp >> 4) - dig_T1) * ((rawTemp >> 4) - dig_T1)) >> 12) * dig_T3) >> 14;
+        int fineTemp = var1 + var2;
+        out[0] = (fineTemp * 5 + 128) >> 8;
+        out[1] = fineTemp;
+    }
+
+    /**
+     * Fixed-point variant of {@link #compensatePressure(int, float, int[])}, using the
+     * 64-bit integer formula of the BMP280 datasheet.
+     * @return the pressure in Pa as unsigned Q24.8, i.e. 256 times the value in Pa.
+     */
+    @VisibleForTesting
+    static int compensatePressureFixed(int rawPressure, int fineTemperature, int[] calibration) {
+        long dig_P1 = calibration[0];
+        long dig_P2 = calibration[1];
+        long dig_P3 = calibration[2];
+        long dig_P4 = calibration[3];
+        long dig_P5 = calibration[4];
+        long dig_P6 = calibration[5];
+        long dig_P7 = calibration[6];
+        long dig_P8 = calibration[7];
+        long dig_P9 = calibration[8];
+
+        long var1 = ((long) fineTemperature) - 128000;
+        long var2 = var1 * var1 * dig_P6;
+        var2 = var2 + ((var1 * dig_P5) << 17);
+        var2 = var2 + (dig_P4 << 35);
+        var1 = ((var1 * var1 * dig_P3) >> 8) + ((var1 * dig_P2) << 12);
+        var1 = (((1L << 47) + var1) * dig_P1) >> 33;
+        if (var1 == 0) {
+            return 0; // avoid exception caused by division by zero
+        }
+        long p = 1048576 - rawPressure;
+        p = (((p << 31) - var2) * 3125) / var1;
+        var1 = (dig_P9 * (p >> 13) * (p >> 13)) >> 25;
+        var2 = (dig_P8 * p) >> 19;
+        p = ((p + var1 + var2) >> 8) + (dig_P7 << 4);
+        return (int) p;
+    }
+
+    /**
+     * Fixed-point variant of {@link #compensateHumidity(int, float, int[])}, using the
+     * 32-bit integer formula of the BME280 datasheet.
+     * @return the relative humidity in percent as unsigned Q22.10, i.e. 1024 times the value
+     * in percent.
+     */
+    @VisibleForTesting
+    static int compensateHumidityFixed(int rawHumidity, int fineTemperature, int[] calibration) {
+        int dig_H1 = calibration[0];
+        int dig_H2 = calibration[1];
+        int dig_H3 = calibration[2];
+        int dig_H4 = calibration[3];
+        int dig_H5 = calibration[4];
+        int dig_H6 = calibration[5];
+
+        int v_x1 = fineTemperature - 76800;
+        v_x1 = ((((rawHumidity << 14) - (dig_H4 << 20) - (dig_H5 * v_x1)) + 16384) >> 15)
+                * (((((((v_x1 * dig_H6) >> 10) * (((v_x1 * dig_H3) >> 11) + 32768)) >> 10)
+                + 2097152) * dig_H2 + 8192) >> 14);
+        v_x1 = v_x1 - (((((v_x1 >> 15) * (v_x1 >> 15)) >> 7) * dig_H1) >> 4);
+        v_x1 = v_x1 < 0 ? 0 : v_x1;
+        v_x1 = v_x1 > 419430400 ? 419430400 : v_x1;
+        return v_x1 >> 12;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+/**
+ * Converts pressure readings to altitude with the international barometric formula,
+ * relative to a configurable sea-level pressure.
+ *
+ * The power function of the formula is evaluated with a lookup table and linear interpolation
+ * over the pressure ratios the sensor can report, which keeps the error below 0.2 meters
+ * without a call to {@link Math#pow(double, double)} per reading.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Bmx280Altitude {
+
+    /**
+     * Standard sea-level pressure, in hPa.
+     */
+    public static final float STANDARD_SEA_LEVEL_PRESSURE_HPA = 1013.25f;
+
+    private static final double ALTITUDE_SCALE = 44330.0;
+    private static final double EXPONENT = 1 / 5.255;
+
+    // Table of ratio^EXPONENT for pressure ratios from TABLE_MIN_RATIO to TABLE_MAX_RATIO
+    private static final float TABLE_MIN_RATIO = .25f;
+    private static final float TABLE_MAX_RATIO = 1.25f;
+    private static final int TABLE_STEPS = 256;
+    private static final float TABLE_SCALE = TABLE_STEPS / (TABLE_MAX_RATIO - TABLE_MIN_RATIO);
+    private static final float[] TABLE = new float[TABLE_STEPS + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_STEPS; i++) {
+            TABLE[i] = (float) Math.pow(TABLE_MIN_RATIO + i / TABLE_SCALE, EXPONENT);
+        }
+    }
+
+    private float mSeaLevelPressure;
+    private float mInverseSeaLevelPressure;
+
+    /**
+     * Create a new altitude converter using the standard sea-level pressure.
+     */
+    public Bmx280Altitude() {
+        this(STANDARD_SEA_LEVEL_PRESSURE_HPA);
+    }
+
+    /**
+     * Create a new altitude converter.
+     * @param seaLevelPressure sea-level pressure, in hPa.
+     */
+    public Bmx280Altitude(float seaLevelPressure) {
+        setSeaLevelPressure(seaLevelPressure);
+    }
+
+    /**
+     * Set the sea-level pressure used as the altitude reference, for example the QNH reported
+     * by a nearby weather station.
+     * @param seaLevelPressure sea-level pressure, in hPa.
+     */
+    public void setSeaLevelPressure(float seaLevelPressure) {
+        if (!(seaLevelPressure > 0) || Float.isInfinite(seaLevelPressure)) {
+            throw new IllegalArgumentException("invalid sea-level pressure: " + seaLevelPressure);
+        }
+        mSeaLevelPressure = seaLevelPressure;
+        mInverseSeaLevelPressure = 1 / seaLevelPressure;
+    }
+
+    /**
+     * Set the sea-level pressure so that the given pressure maps to a known altitude.
+     * @param pressure pressure measured at the known altitude, in hPa.
+     * @param altitude known altitude, in meters.
+     */
+    public void calibrate(float pressure, float altitude) {
+        setSeaLevelPressure((float) (pressure
+                / Math.pow(1 - altitude / ALTITUDE_SCALE, 1 / EXPONENT)));
+    }
+
+    /**
+     * Return the sea-level pressure used as the altitude reference, in hPa.
+     */
+    public float getSeaLevelPressure() {
+        return mSeaLevelPressure;
+    }
+
+    /**
+     * Return the altitude for the given pressure, in meters.
+     * @param pressure pressure, in hPa.
+     */
+    public float getAltitude(float pressure) {
+        float position = (pressure * mInverseSeaLevelPressure - TABLE_MIN_RATIO) * TABLE_SCALE;
+        if (position >= 0 && position < TABLE_STEPS) {
+            int index = (int) position;
+            float fraction = position - index;
+            float power = TABLE[index] + (TABLE[index + 1] - TABLE[index]) * fraction;
+            return (float) (ALTITUDE_SCALE * (1 - power));
+        }
+        // Outside of the sensor range, e.g. a sea-level pressure set for another planet
+        return computeAltitude(pressure, mSeaLevelPressure);
+    }
+
+    /**
+     * Return the altitude for the given pressure with the exact formula, in meters.
+     * @param pressure pressure, in hPa.
+     * @param seaLevelPressure sea-level pressure, in hPa.
+     */
+    public static float computeAltitude(float pressure, float seaLevelPressure) {
+        return (float) (ALTITUDE_SCALE
+                * (1 - Math.pow(pressure / seaLevelPressure, EXPONENT)));
+    }
+}
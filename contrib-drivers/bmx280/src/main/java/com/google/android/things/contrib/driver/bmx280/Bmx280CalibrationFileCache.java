@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link Bmx280.CalibrationCache} storing the calibration data of each sensor
+ * in a file of the given directory, such as {@code Context.getFilesDir()}.
+ *
+ * Entries are keyed by bus, address and chip ID. If a sensor is replaced by
+ * another one of the same type at the same address, call {@link #clear()} so
+ * that the new calibration data is read from the sensor.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Bmx280CalibrationFileCache implements Bmx280.CalibrationCache {
+    private static final String TAG = "Bmx280CalibrationCache";
+
+    private static final String FILE_PREFIX = "bmx280_calibration_";
+
+    private final File mDirectory;
+
+    /**
+     * Create a new calibration cache.
+     * @param directory Directory where calibration files are stored.
+     */
+    public Bmx280CalibrationFileCache(File directory) {
+        mDirectory = directory;
+    }
+
+    @Override
+    public byte[] load(String bus, int address, int chipId) {
+        File file = getFile(bus, address, chipId);
+        if (!file.isFile()) {
+            return null;
+        }
+        byte[] calibration = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < calibration.length) {
+                int count = in.read(calibration, offset, calibration.length - offset);
+                if (count < 0) {
+                    return null;
+                }
+                offset += count;
+            }
+            return calibration;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read calibration data", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void save(String bus, int address, int chipId, byte[] calibration) {
+        File file = getFile(bus, address, chipId);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(calibration);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to save calibration data", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Delete all the calibration data stored in the cache.
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(FILE_PREFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private File getFile(String bus, int address, int chipId) {
+        String name = FILE_PREFIX + (bus == null ? "default" : bus.replaceAll("[^A-Za-z0-9]", "_"))
+                + "_" + Integer.toHexString(address) + "_" + Integer.toHexString(chipId);
+        return new File(mDirectory, name);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Polls several BMP/BME280 sensors, typically sharing an I2C bus, in a single pass.
+ *
+ * Each pass triggers a forced conversion on every sensor one after the other, waits for the
+ * longest measurement time, then reads the sensors back in the same order. The conversions run
+ * concurrently, and each sensor is read about the same time after it was triggered, so the
+ * samples of a pass are aligned to within a few bus transactions.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Bmx280Poller {
+    private static final String TAG = "Bmx280Poller";
+
+    /**
+     * Interface definition for a callback to be invoked when
+     * a polling pass completes.
+     */
+    public interface OnSamplesListener {
+        /**
+         * Called with the samples of all the sensors for a pass.
+         *
+         * @param poller the poller that read the samples
+         * @param timestamp time of the pass, in {@link SystemClock#elapsedRealtimeNanos()}
+         *                  nanoseconds
+         * @param samples temperature in degrees Celsius and pressure in hPa of each sensor, in
+         *                the order the sensors were given. Only valid during the call.
+         */
+        void onSamples(Bmx280Poller poller, long timestamp, float[] samples);
+    }
+
+    private final Bmx280[] mSensors;
+    private final float[] mSamples;
+
+    private Handler mHandler;
+    private OnSamplesListener mListener;
+    private long mPeriod;
+    private long mNextPass;
+    private long mTimestamp;
+    // Incremented by start() and stop(), so that callbacks of a previous run do not schedule
+    // passes, e.g. when the listener restarts the poller
+    private int mGeneration;
+
+    /**
+     * Create a new poller for the given sensors. The sensors must measure temperature and
+     * pressure, i.e. their oversampling must not be skipped.
+     *
+     * @param sensors sensors to poll, for example on {@link Bmx280#I2C_ADDRESS} and
+     *                {@link Bmx280#I2C_ADDRESS_ALT} of the same bus.
+     */
+    public Bmx280Poller(Bmx280... sensors) {
+        if (sensors == null || sensors.length == 0) {
+            throw new IllegalArgumentException("at least one sensor is required");
+        }
+        mSensors = sensors.clone();
+        mSamples = new float[2 * sensors.length];
+    }
+
+    /**
+     * Set the listener receiving the samples of the scheduled passes.
+     */
+    public void setOnSamplesListener(OnSamplesListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Start polling the sensors at a fixed period. Passes never overlap: if a pass takes
+     * longer than the period, the next one starts as soon as it completes.
+     *
+     * @param periodMillis time between the start of two passes, in milliseconds.
+     * @param handler optional {@link Handler} for polling and callback events.
+     */
+    public void start(long periodMillis, Handler handler) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        stop();
+        mPeriod = periodMillis;
+        mHandler = new Handler(handler == null ? Looper.myLooper() : handler.getLooper());
+        mNextPass = SystemClock.uptimeMillis();
+        mHandler.post(mTriggerCallback);
+    }
+
+    /**
+     * Stop polling the sensors.
+     */
+    public void stop() {
+        mGeneration++;
+        if (mHandler != null) {
+            mHandler.removeCallbacks(mTriggerCallback);
+            mHandler.removeCallbacks(mReadCallback);
+            mHandler = null;
+        }
+    }
+
+    /**
+     * Perform a single pass, blocking until all the sensors are read.
+     *
+     * @param samples array receiving the temperature in degrees Celsius and pressure in hPa of
+     *                each sensor, in the order the sensors were given.
+     * @return the time of the pass, in {@link SystemClock#elapsedRealtimeNanos()} nanoseconds.
+     * @throws IOException
+     */
+    public long measure(float[] samples) throws IOException {
+        if (samples.length < mSamples.length) {
+            throw new IllegalArgumentException("samples must have room for "
+                    + mSamples.length + " elements");
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        int time = triggerConversions();
+        long timestamp = (start + SystemClock.elapsedRealtimeNanos()) / 2;
+        try {
+            Thread.sleep(time / 1000, (time % 1000) * 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for measurement");
+        }
+        readConversions(samples);
+        return timestamp;
+    }
+
+    /**
+     * Triggers a forced conversion on every sensor. All the sensors are checked before any
+     * conversion is triggered.
+     * @return the longest measurement time, in microseconds.
+     * @throws IOException
+     */
+    /*package*/ int triggerConversions() throws IOException {
+        for (Bmx280 sensor : mSensors) {
+            sensor.checkTemperatureAndPressure();
+        }
+        int time = 0;
+        for (Bmx280 sensor : mSensors) {
+            sensor.triggerForcedMeasurement();
+            time = Math.max(time, sensor.getMeasurementTime());
+        }
+        return time;
+    }
+
+    /**
+     * Reads the conversion results of every sensor, in the order they were triggered.
+     * @throws IOException
+     */
+    /*package*/ void readConversions(float[] samples) throws IOException {
+        for (int i = 0; i < mSensors.length; i++) {
+            mSensors[i].awaitMeasurement();
+            mSensors[i].readData(false, samples, 2 * i);
+        }
+    }
+
+    /**
+     * Callback invoked to start a pass.
+     */
+    private Runnable mTriggerCallback = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                int time = triggerConversions();
+                mTimestamp = (start + SystemClock.elapsedRealtimeNanos()) / 2;
+                mHandler.postDelayed(mReadCallback, (time + 999) / 1000);
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "Unable to trigger conversions", e);
+                scheduleNextPass(mGeneration);
+            }
+        }
+    };
+
+    /**
+     * Callback invoked to complete a pass once the conversions are done.
+     */
+    private Runnable mReadCallback = new Runnable() {
+        @Override
+        public void run() {
+            int generation = mGeneration;
+            try {
+                readConversions(mSamples);
+                if (mListener != null) {
+                    mListener.onSamples(Bmx280Poller.this, mTimestamp, mSamples);
+                }
+            } catch (IOException | IllegalStateException e) {
+                Log.w(TAG, "Unable to read conversions", e);
+            }
+            scheduleNextPass(generation);
+        }
+    };
+
+    private void scheduleNextPass(int generation) {
+        if (generation != mGeneration) {
+            // Stopped or restarted by the listener
+            return;
+        }
+        mNextPass = Math.max(mNextPass + mPeriod, SystemClock.uptimeMillis());
+        mHandler.postAtTime(mTriggerCallback, mNextPass);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+/**
+ * Tracks the barometric pressure tendency, the pressure change over the last three hours used
+ * in weather reports.
+ *
+ * Samples are averaged into ten-minute buckets kept in a fixed ring buffer, so the history
+ * takes a few dozen bytes whatever the sampling rate, and adding a sample never allocates.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Bmx280PressureTendency {
+
+    /**
+     * Period over which the tendency is computed, in milliseconds.
+     */
+    public static final long TENDENCY_PERIOD_MILLIS = 3 * 60 * 60 * 1000L;
+
+    private static final long BUCKET_NANOS = 10 * 60 * 1000000000L;
+    private static final int BUCKET_COUNT =
+            (int) (TENDENCY_PERIOD_MILLIS * 1000000L / BUCKET_NANOS);
+    // Shortest history extrapolated to the whole period, in buckets
+    private static final int MIN_HISTORY = BUCKET_COUNT / 3;
+
+    // Average of each bucket, NaN for the buckets without samples. The newest bucket is the one
+    // currently filled, the oldest one started a full period before it.
+    private final float[] mBuckets = new float[BUCKET_COUNT + 1];
+    private int mNewest;
+    private int mCount;
+    private long mBucketStart;
+    private double mSum;
+    private int mSamples;
+
+    /**
+     * Add a pressure sample.
+     * @param timestamp time of the sample, in nanoseconds of a monotonic clock such as
+     *                  {@link android.os.SystemClock#elapsedRealtimeNanos()}.
+     * @param pressure pressure, in hPa.
+     */
+    public synchronized void addSample(long timestamp, float pressure) {
+        if (Float.isNaN(pressure)) {
+            return;
+        }
+        if (mCount == 0 || timestamp < mBucketStart) {
+            clear();
+            mBucketStart = timestamp;
+            mCount = 1;
+        } else if (timestamp - mBucketStart >= BUCKET_NANOS) {
+            long elapsed = (timestamp - mBucketStart) / BUCKET_NANOS;
+            if (elapsed > BUCKET_COUNT) {
+                // Nothing left of the history
+                clear();
+                mBucketStart = timestamp;
+                mCount = 1;
+            } else {
+                for (int i = 0; i < elapsed; i++) {
+                    mNewest = (mNewest + 1) % mBuckets.length;
+                    mBuckets[mNewest] = Float.NaN;
+                }
+                mCount = (int) Math.min(mCount + elapsed, mBuckets.length);
+                mBucketStart += elapsed * BUCKET_NANOS;
+                mSum = 0;
+                mSamples = 0;
+            }
+        }
+        mSum += pressure;
+        mSamples++;
+        mBuckets[mNewest] = (float) (mSum / mSamples);
+    }
+
+    /**
+     * Return the pressure change over the last three hours, in hPa. With less than three hours
+     * of history, the change since the oldest sample is scaled to three hours.
+     * @return the tendency, or {@link Float#NaN} until one hour of history is available.
+     */
+    public synchronized float getTendency() {
+        for (int age = mCount - 1; age >= MIN_HISTORY; age--) {
+            float oldest = mBuckets[(mNewest - age + mBuckets.length) % mBuckets.length];
+            if (!Float.isNaN(oldest)) {
+                return (mBuckets[mNewest] - oldest) * BUCKET_COUNT / age;
+            }
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Discard the history.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < mBuckets.length; i++) {
+            mBuckets[i] = Float.NaN;
+        }
+        mNewest = 0;
+        mCount = 0;
+        mSum = 0;
+        mSamples = 0;
+    }
+}
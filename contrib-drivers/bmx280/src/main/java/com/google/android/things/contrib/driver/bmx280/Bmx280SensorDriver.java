@@ -17,6 +17,7 @@
 package com.google.android.things.contrib.driver.bmx280;
 
 import android.hardware.Sensor;
+import android.os.SystemClock;
 
 import com.google.android.things.userdriver.UserDriverManager;
 import com.google.android.things.userdriver.UserSensor;
@@ -29,6 +30,22 @@ import java.util.UUID;
 public class Bmx280SensorDriver implements AutoCloseable {
     private static final String TAG = "Bmx280SensorDriver";
 
+    /**
+     * Sensor type of the altitude sensor, in meters.
+     * @see #registerAltitudeSensor()
+     */
+    public static final int TYPE_ALTITUDE = Sensor.TYPE_DEVICE_PRIVATE_BASE;
+    public static final String STRING_TYPE_ALTITUDE =
+            "com.google.android.things.contrib.driver.bmx280.altitude";
+
+    /**
+     * Sensor type of the pressure tendency sensor, in hPa per three hours.
+     * @see #registerPressureTendencySensor()
+     */
+    public static final int TYPE_PRESSURE_TENDENCY = Sensor.TYPE_DEVICE_PRIVATE_BASE + 1;
+    public static final String STRING_TYPE_PRESSURE_TENDENCY =
+            "com.google.android.things.contrib.driver.bmx280.pressure_tendency";
+
     // DRIVER parameters
     // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
     private static final String DRIVER_VENDOR = "Bosch";
@@ -40,20 +57,69 @@ public class Bmx280SensorDriver implements AutoCloseable {
 
     private TemperatureUserDriver mTemperatureUserDriver;
     private PressureUserDriver mPressureUserDriver;
+    private HumidityUserDriver mHumidityUserDriver;
+    private AltitudeUserDriver mAltitudeUserDriver;
+    private PressureTendencyUserDriver mPressureTendencyUserDriver;
+
+    // Derived channels
+    private final Bmx280Altitude mAltitude = new Bmx280Altitude();
+    private final Bmx280PressureTendency mPressureTendency = new Bmx280PressureTendency();
+
+    // Last sample read from the sensor, shared by all user sensors
+    private static final int SAMPLE_TEMPERATURE = 0;
+    private static final int SAMPLE_PRESSURE = 1;
+    private static final int SAMPLE_HUMIDITY = 2;
+    private final float[] mSample = new float[3];
+    private long mSampleTimestamp;
+    private boolean mHasSample;
 
     /**
      * Create a new framework sensor driver connected on the given bus.
-     * The driver emits {@link android.hardware.Sensor} with pressure and temperature data when
-     * registered.
+     * The driver emits {@link android.hardware.Sensor} with pressure, temperature and, for the
+     * BME280, humidity data when registered.
      * @param bus I2C bus the sensor is connected to.
      * @throws IOException
      * @see #registerPressureSensor()
      * @see #registerTemperatureSensor()
+     * @see #registerHumiditySensor()
      */
     public Bmx280SensorDriver(String bus) throws IOException {
         mDevice = new Bmx280(bus);
     }
 
+    /**
+     * Create a new framework sensor driver connected on the given bus.
+     * The driver emits {@link android.hardware.Sensor} with pressure, temperature and, for the
+     * BME280, humidity data when registered.
+     * @param bus I2C bus the sensor is connected to.
+     * @param cache optional {@link Bmx280.CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     * @see #registerPressureSensor()
+     * @see #registerTemperatureSensor()
+     * @see #registerHumiditySensor()
+     */
+    public Bmx280SensorDriver(String bus, Bmx280.CalibrationCache cache) throws IOException {
+        mDevice = new Bmx280(bus, cache);
+    }
+
+    /**
+     * Create a new framework sensor driver connected on the given bus and address.
+     * The driver emits {@link android.hardware.Sensor} with pressure, temperature and, for the
+     * BME280, humidity data when registered.
+     * @param bus I2C bus the sensor is connected to.
+     * @param address I2C address of the sensor, {@link Bmx280#I2C_ADDRESS} or
+     *                {@link Bmx280#I2C_ADDRESS_ALT}.
+     * @param cache optional {@link Bmx280.CalibrationCache} for the sensor calibration data.
+     * @throws IOException
+     * @see #registerPressureSensor()
+     * @see #registerTemperatureSensor()
+     * @see #registerHumiditySensor()
+     */
+    public Bmx280SensorDriver(String bus, int address, Bmx280.CalibrationCache cache)
+            throws IOException {
+        mDevice = new Bmx280(bus, address, cache);
+    }
+
     /**
      * Close the driver and the underlying device.
      * @throws IOException
@@ -62,6 +128,9 @@ public class Bmx280SensorDriver implements AutoCloseable {
     public void close() throws IOException {
         unregisterTemperatureSensor();
         unregisterPressureSensor();
+        unregisterHumiditySensor();
+        unregisterAltitudeSensor();
+        unregisterPressureTendencySensor();
         if (mDevice != null) {
             try {
                 mDevice.close();
@@ -101,6 +170,71 @@ public class Bmx280SensorDriver implements AutoCloseable {
         }
     }
 
+    /**
+     * Register a {@link UserSensor} that pipes humidity readings into the Android SensorManager.
+     * Only supported by the BME280.
+     * @see #unregisterHumiditySensor()
+     */
+    public void registerHumiditySensor() {
+        if (mDevice == null) {
+            throw new IllegalStateException("cannot register closed driver");
+        }
+        if (!mDevice.hasHumiditySensor()) {
+            throw new IllegalStateException("humidity is not supported by this sensor");
+        }
+
+        if (mHumidityUserDriver == null) {
+            mHumidityUserDriver = new HumidityUserDriver();
+            UserDriverManager.getManager().registerSensor(mHumidityUserDriver.getUserSensor());
+        }
+    }
+
+    /**
+     * Register a {@link UserSensor} that pipes the altitude computed from pressure readings into
+     * the Android SensorManager, with the {@link #TYPE_ALTITUDE} custom type.
+     * @see #setSeaLevelPressure(float)
+     * @see #unregisterAltitudeSensor()
+     */
+    public void registerAltitudeSensor() {
+        if (mDevice == null) {
+            throw new IllegalStateException("cannot register closed driver");
+        }
+
+        if (mAltitudeUserDriver == null) {
+            mAltitudeUserDriver = new AltitudeUserDriver();
+            UserDriverManager.getManager().registerSensor(mAltitudeUserDriver.getUserSensor());
+        }
+    }
+
+    /**
+     * Register a {@link UserSensor} that pipes the pressure change over the last three hours into
+     * the Android SensorManager, with the {@link #TYPE_PRESSURE_TENDENCY} custom type. The history
+     * is recorded while any pressure-based sensor is enabled, and the sensor reports
+     * {@link Float#NaN} until one hour of history is available.
+     * @see Bmx280PressureTendency
+     * @see #unregisterPressureTendencySensor()
+     */
+    public void registerPressureTendencySensor() {
+        if (mDevice == null) {
+            throw new IllegalStateException("cannot register closed driver");
+        }
+
+        if (mPressureTendencyUserDriver == null) {
+            mPressureTendencyUserDriver = new PressureTendencyUserDriver();
+            UserDriverManager.getManager().registerSensor(
+                    mPressureTendencyUserDriver.getUserSensor());
+        }
+    }
+
+    /**
+     * Set the sea-level pressure used as the reference of the altitude sensor.
+     * @param seaLevelPressure sea-level pressure, in hPa.
+     * @see Bmx280Altitude#STANDARD_SEA_LEVEL_PRESSURE_HPA
+     */
+    public synchronized void setSeaLevelPressure(float seaLevelPressure) {
+        mAltitude.setSeaLevelPressure(seaLevelPressure);
+    }
+
     /**
      * Unregister the temperature {@link UserSensor}.
      */
@@ -121,15 +255,114 @@ public class Bmx280SensorDriver implements AutoCloseable {
         }
     }
 
-    private void maybeSleep() throws IOException {
-        if ((mTemperatureUserDriver == null || !mTemperatureUserDriver.isEnabled()) &&
-            (mPressureUserDriver == null || !mPressureUserDriver.isEnabled())) {
-            mDevice.setMode(Bmx280.MODE_SLEEP);
-        } else {
-            mDevice.setMode(Bmx280.MODE_NORMAL);
+    /**
+     * Unregister the humidity {@link UserSensor}.
+     */
+    public void unregisterHumiditySensor() {
+        if (mHumidityUserDriver != null) {
+            UserDriverManager.getManager().unregisterSensor(mHumidityUserDriver.getUserSensor());
+            mHumidityUserDriver = null;
+        }
+    }
+
+    /**
+     * Unregister the altitude {@link UserSensor}.
+     */
+    public void unregisterAltitudeSensor() {
+        if (mAltitudeUserDriver != null) {
+            UserDriverManager.getManager().unregisterSensor(mAltitudeUserDriver.getUserSensor());
+            mAltitudeUserDriver = null;
+        }
+    }
+
+    /**
+     * Unregister the pressure tendency {@link UserSensor}. The recorded history is discarded.
+     */
+    public void unregisterPressureTendencySensor() {
+        if (mPressureTendencyUserDriver != null) {
+            UserDriverManager.getManager().unregisterSensor(
+                    mPressureTendencyUserDriver.getUserSensor());
+            mPressureTendencyUserDriver = null;
+            mPressureTendency.clear();
+        }
+    }
+
+    /**
+     * Updates the sensor configuration after a user sensor was enabled or disabled. Pressure and
+     * humidity compensation need the temperature, so it is measured whenever any sensor is
+     * enabled.
+     */
+    private void updateConfiguration() throws IOException {
+        boolean temperature = mTemperatureUserDriver != null && mTemperatureUserDriver.isEnabled();
+        boolean pressure = mPressureUserDriver != null && mPressureUserDriver.isEnabled()
+                || mAltitudeUserDriver != null && mAltitudeUserDriver.isEnabled()
+                || mPressureTendencyUserDriver != null && mPressureTendencyUserDriver.isEnabled();
+        boolean humidity = mHumidityUserDriver != null && mHumidityUserDriver.isEnabled();
+        boolean any = temperature || pressure || humidity;
+        // Oversampling and mode end up in the same register, written once on commit
+        mDevice.beginConfiguration();
+        boolean staged = false;
+        try {
+            mDevice.setTemperatureOversampling(
+                    any ? Bmx280.OVERSAMPLING_1X : Bmx280.OVERSAMPLING_SKIPPED);
+            mDevice.setPressureOversampling(
+                    pressure ? Bmx280.OVERSAMPLING_1X : Bmx280.OVERSAMPLING_SKIPPED);
+            if (mDevice.hasHumiditySensor()) {
+                mDevice.setHumidityOversampling(
+                        humidity ? Bmx280.OVERSAMPLING_1X : Bmx280.OVERSAMPLING_SKIPPED);
+            }
+            mDevice.setMode(any ? Bmx280.MODE_NORMAL : Bmx280.MODE_SLEEP);
+            staged = true;
+        } finally {
+            if (!staged) {
+                // Leave the sensor as it was rather than writing a partial configuration
+                mDevice.cancelConfiguration();
+            }
+        }
+        mDevice.commitConfiguration();
+        synchronized (this) {
+            mHasSample = false;
         }
     }
 
+    /**
+     * Returns a value of the last sample, reading a new one from the sensor if the sensor may
+     * have completed a measurement since then. All the enabled values are read in a single
+     * transaction, so the user sensors polled for the same measurement share it.
+     */
+    private synchronized float getSample(int index) throws IOException {
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (!mHasSample || Float.isNaN(mSample[index])
+                || now - mSampleTimestamp >= mDevice.getMeasurementPeriod() * 1000L) {
+            boolean humidity = mHumidityUserDriver != null && mHumidityUserDriver.isEnabled();
+            mDevice.readData(humidity, mSample, 0);
+            if (!humidity) {
+                mSample[SAMPLE_HUMIDITY] = Float.NaN;
+            }
+            mSampleTimestamp = now;
+            mHasSample = true;
+            if (mPressureTendencyUserDriver != null) {
+                mPressureTendency.addSample(now, mSample[SAMPLE_PRESSURE]);
+            }
+        }
+        return mSample[index];
+    }
+
+    /**
+     * Returns the altitude for the pressure of the last sample.
+     */
+    private synchronized float getAltitude() throws IOException {
+        return mAltitude.getAltitude(getSample(SAMPLE_PRESSURE));
+    }
+
+    /**
+     * Returns the pressure tendency, after recording the pressure of the last sample.
+     */
+    private synchronized float getPressureTendency() throws IOException {
+        getSample(SAMPLE_PRESSURE);
+        return mPressureTendency.getTendency();
+    }
+
     private class PressureUserDriver extends UserSensorDriver {
         // DRIVER parameters
         // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
@@ -164,15 +397,13 @@ public class Bmx280SensorDriver implements AutoCloseable {
 
         @Override
         public UserSensorReading read() throws IOException {
-            return new UserSensorReading(new float[]{mDevice.readPressure()});
+            return new UserSensorReading(new float[]{getSample(SAMPLE_PRESSURE)});
         }
 
         @Override
         public void setEnabled(boolean enabled) throws IOException {
             mEnabled = enabled;
-            mDevice.setPressureOversampling(
-                    enabled ? Bmx280.OVERSAMPLING_1X : Bmx280.OVERSAMPLING_SKIPPED);
-            maybeSleep();
+            updateConfiguration();
         }
 
         private boolean isEnabled() {
@@ -214,15 +445,161 @@ public class Bmx280SensorDriver implements AutoCloseable {
 
         @Override
         public UserSensorReading read() throws IOException {
-            return new UserSensorReading(new float[]{mDevice.readTemperature()});
+            return new UserSensorReading(new float[]{getSample(SAMPLE_TEMPERATURE)});
         }
 
         @Override
         public void setEnabled(boolean enabled) throws IOException {
             mEnabled = enabled;
-            mDevice.setTemperatureOversampling(
-                    enabled ? Bmx280.OVERSAMPLING_1X : Bmx280.OVERSAMPLING_SKIPPED);
-            maybeSleep();
+            updateConfiguration();
+        }
+
+        private boolean isEnabled() {
+            return mEnabled;
+        }
+    }
+
+    private class HumidityUserDriver extends UserSensorDriver {
+        // DRIVER parameters
+        // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
+        private static final float DRIVER_MAX_RANGE = Bmx280.MAX_HUMIDITY_PERCENT;
+        private static final float DRIVER_RESOLUTION = .008f;
+        private static final float DRIVER_POWER = Bmx280.MAX_POWER_CONSUMPTION_HUMIDITY_UA / 1000.f;
+        private static final int DRIVER_VERSION = 1;
+        private static final String DRIVER_REQUIRED_PERMISSION = "";
+
+        private boolean mEnabled;
+        private UserSensor mUserSensor;
+
+        private UserSensor getUserSensor() {
+            if (mUserSensor == null) {
+                mUserSensor = UserSensor.builder()
+                        .setType(Sensor.TYPE_RELATIVE_HUMIDITY)
+                        .setName(DRIVER_NAME)
+                        .setVendor(DRIVER_VENDOR)
+                        .setVersion(DRIVER_VERSION)
+                        .setMaxRange(DRIVER_MAX_RANGE)
+                        .setResolution(DRIVER_RESOLUTION)
+                        .setPower(DRIVER_POWER)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setUuid(UUID.randomUUID())
+                        .setDriver(this)
+                        .build();
+            }
+            return mUserSensor;
+        }
+
+        @Override
+        public UserSensorReading read() throws IOException {
+            return new UserSensorReading(new float[]{getSample(SAMPLE_HUMIDITY)});
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            mEnabled = enabled;
+            updateConfiguration();
+        }
+
+        private boolean isEnabled() {
+            return mEnabled;
+        }
+    }
+
+    private class AltitudeUserDriver extends UserSensorDriver {
+        // DRIVER parameters
+        // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
+        // Altitude of the lowest pressure the sensor can measure, in the standard atmosphere
+        private static final float DRIVER_MAX_RANGE = 9200f;
+        private static final float DRIVER_RESOLUTION = .22f;
+        private static final float DRIVER_POWER = Bmx280.MAX_POWER_CONSUMPTION_PRESSURE_UA / 1000.f;
+        private static final int DRIVER_VERSION = 1;
+        private static final String DRIVER_REQUIRED_PERMISSION = "";
+
+        private boolean mEnabled;
+        private UserSensor mUserSensor;
+
+        private UserSensor getUserSensor() {
+            if (mUserSensor == null) {
+                mUserSensor = UserSensor.builder()
+                        .setCustomType(TYPE_ALTITUDE, STRING_TYPE_ALTITUDE,
+                                Sensor.REPORTING_MODE_CONTINUOUS)
+                        .setName(DRIVER_NAME)
+                        .setVendor(DRIVER_VENDOR)
+                        .setVersion(DRIVER_VERSION)
+                        .setMaxRange(DRIVER_MAX_RANGE)
+                        .setResolution(DRIVER_RESOLUTION)
+                        .setPower(DRIVER_POWER)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setUuid(UUID.randomUUID())
+                        .setDriver(this)
+                        .build();
+            }
+            return mUserSensor;
+        }
+
+        @Override
+        public UserSensorReading read() throws IOException {
+            return new UserSensorReading(new float[]{getAltitude()});
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            mEnabled = enabled;
+            updateConfiguration();
+        }
+
+        private boolean isEnabled() {
+            return mEnabled;
+        }
+    }
+
+    private class PressureTendencyUserDriver extends UserSensorDriver {
+        // DRIVER parameters
+        // documented at https://source.android.com/devices/sensors/hal-interface.html#sensor_t
+        // Far beyond the strongest tendencies observed in storms
+        private static final float DRIVER_MAX_RANGE = 100f;
+        private static final float DRIVER_RESOLUTION = .0262f;
+        private static final float DRIVER_POWER = Bmx280.MAX_POWER_CONSUMPTION_PRESSURE_UA / 1000.f;
+        private static final int DRIVER_VERSION = 1;
+        private static final String DRIVER_REQUIRED_PERMISSION = "";
+
+        private boolean mEnabled;
+        private UserSensor mUserSensor;
+
+        private UserSensor getUserSensor() {
+            if (mUserSensor == null) {
+                mUserSensor = UserSensor.builder()
+                        .setCustomType(TYPE_PRESSURE_TENDENCY, STRING_TYPE_PRESSURE_TENDENCY,
+                                Sensor.REPORTING_MODE_CONTINUOUS)
+                        .setName(DRIVER_NAME)
+                        .setVendor(DRIVER_VENDOR)
+                        .setVersion(DRIVER_VERSION)
+                        .setMaxRange(DRIVER_MAX_RANGE)
+                        .setResolution(DRIVER_RESOLUTION)
+                        .setPower(DRIVER_POWER)
+                        .setMinDelay(DRIVER_MIN_DELAY_US)
+                        .setRequiredPermission(DRIVER_REQUIRED_PERMISSION)
+                        .setMaxDelay(DRIVER_MAX_DELAY_US)
+                        .setUuid(UUID.randomUUID())
+                        .setDriver(this)
+                        .build();
+            }
+            return mUserSensor;
+        }
+
+        @Override
+        public UserSensorReading read() throws IOException {
+            return new UserSensorReading(new float[]{getPressureTendency()});
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) throws IOException {
+            mEnabled = enabled;
+            updateConfiguration();
         }
 
         private boolean isEnabled() {
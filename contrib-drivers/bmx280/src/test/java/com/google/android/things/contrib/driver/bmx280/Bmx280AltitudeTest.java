@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class Bmx280AltitudeTest {
+
+    // Maximum error of the lookup table, in meters
+    private static final float TOLERANCE = .2f;
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    @Test
+    public void getAltitude_matchesFormula() {
+        Bmx280Altitude altitude = new Bmx280Altitude();
+        for (float pressure = Bmx280.MIN_PRESSURE_HPA; pressure <= Bmx280.MAX_PRESSURE_HPA;
+                pressure += .37f) {
+            Assert.assertEquals(Bmx280Altitude.computeAltitude(pressure,
+                    Bmx280Altitude.STANDARD_SEA_LEVEL_PRESSURE_HPA),
+                    altitude.getAltitude(pressure), TOLERANCE);
+        }
+    }
+
+    @Test
+    public void getAltitude_seaLevel() {
+        Bmx280Altitude altitude = new Bmx280Altitude(1020f);
+        Assert.assertEquals(0f, altitude.getAltitude(1020f), TOLERANCE);
+        altitude.setSeaLevelPressure(1000f);
+        Assert.assertEquals(0f, altitude.getAltitude(1000f), TOLERANCE);
+        Assert.assertEquals(1000f, altitude.getSeaLevelPressure(), 0f);
+    }
+
+    @Test
+    public void getAltitude_outsideTable() {
+        Bmx280Altitude altitude = new Bmx280Altitude(5000f);
+        Assert.assertEquals(Bmx280Altitude.computeAltitude(500f, 5000f),
+                altitude.getAltitude(500f), TOLERANCE);
+    }
+
+    @Test
+    public void calibrate() {
+        Bmx280Altitude altitude = new Bmx280Altitude();
+        altitude.calibrate(950f, 500f);
+        Assert.assertEquals(500f, altitude.getAltitude(950f), TOLERANCE);
+    }
+
+    @Test
+    public void setSeaLevelPressure_throwsIfInvalid() {
+        Bmx280Altitude altitude = new Bmx280Altitude();
+        mExpectedException.expect(IllegalArgumentException.class);
+        altitude.setSeaLevelPressure(0f);
+    }
+}
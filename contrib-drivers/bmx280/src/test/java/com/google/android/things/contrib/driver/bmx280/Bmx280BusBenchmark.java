@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Bus traffic and latency of the driver against {@link Bmx280Simulator}. Latencies include the
+ * simulated conversion times, which are the typical ones of the datasheet.
+ */
+public class Bmx280BusBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void forcedMeasurement() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.commitConfiguration();
+        simulator.resetCounters();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bmx280.measureTemperaturePressureAndHumidity();
+        }
+        long time = System.nanoTime() - start;
+
+        report("forced measurement", simulator, time);
+    }
+
+    @Test
+    public void normalMode() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setStandbyTime(Bmx280.STANDBY_0_5_MS);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.commitConfiguration();
+        simulator.resetCounters();
+
+        float[] values = new float[3];
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bmx280.readTemperaturePressureAndHumidity(values);
+        }
+        long time = System.nanoTime() - start;
+
+        report("normal mode", simulator, time);
+    }
+
+    private static void report(String name, Bmx280Simulator simulator, long time) {
+        System.out.println(String.format("Bmx280 %s: %.1f us/sample, %.1f transactions/sample, "
+                + "%.1f bytes/sample", name, time / 1000.0 / ITERATIONS,
+                (double) simulator.getTransactions() / ITERATIONS,
+                (double) simulator.getBytesTransferred() / ITERATIONS));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import org.junit.Test;
+
+/**
+ * Microbenchmark of the floating-point and fixed-point compensation formulas. On a host JVM both
+ * paths are fast, the difference matters on boards without a hardware FPU.
+ */
+public class Bmx280CompensationBenchmark {
+
+    private static final int[] TEMP_CALIBRATION = {27504, 26435, -1000};
+    private static final int[] PRESSURE_CALIBRATION = {36477, -10685, 3024, 2855, 140, -7, 15500,
+            -14600, 6000};
+
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 200000;
+
+    @Test
+    public void compensate() {
+        runFloat(WARMUP_ITERATIONS);
+        runFixed(WARMUP_ITERATIONS);
+
+        long start = System.nanoTime();
+        double floatSum = runFloat(ITERATIONS);
+        long floatTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double fixedSum = runFixed(ITERATIONS);
+        long fixedTime = System.nanoTime() - start;
+
+        // The mean pressures keep the results alive
+        System.out.println(String.format("Bmx280 compensation: float %.1f ns/sample, "
+                + "fixed-point %.1f ns/sample (mean %.2f / %.2f hPa)",
+                (double) floatTime / ITERATIONS, (double) fixedTime / ITERATIONS,
+                floatSum / ITERATIONS, fixedSum / ITERATIONS));
+    }
+
+    private static double runFloat(int iterations) {
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            float[] temperature = Bmx280.compensateTemperature(rawTemperature(i),
+                    TEMP_CALIBRATION);
+            sum += Bmx280.compensatePressure(rawPressure(i), temperature[1],
+                    PRESSURE_CALIBRATION);
+        }
+        return sum;
+    }
+
+    private static double runFixed(int iterations) {
+        int[] temperature = new int[2];
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            Bmx280.compensateTemperatureFixed(rawTemperature(i), TEMP_CALIBRATION, temperature);
+            sum += Bmx280.compensatePressureFixed(rawPressure(i), temperature[1],
+                    PRESSURE_CALIBRATION) / 25600.0;
+        }
+        return sum;
+    }
+
+    private static int rawTemperature(int i) {
+        return 519888 + (i & 0x3ff);
+    }
+
+    private static int rawPressure(int i) {
+        return 415148 + (i & 0xfff);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import com.google.android.things.pio.I2cDevice;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+
+public class Bmx280PollerTest {
+
+    // Datasheet calibration and sample, see Bmx280Test
+    private static final byte[] CALIBRATION = {
+            112, 107, 67, 103, 24, -4, 125, -114, 67, -42, -48, 11, 39, 11, -116, 0, -7, -1,
+            -116, 60, -8, -58, 112, 23};
+    private static final byte[] SAMPLE = {0x65, 0x5A, (byte) 0xC0, 0x7E, (byte) 0xED, 0x00};
+    private static final float EXPECTED_TEMPERATURE = 25.08f;
+    private static final float EXPECTED_PRESSURE = 1006.5327f;
+    private static final float TOLERANCE = .001f;
+
+    @Mock
+    I2cDevice mI2c;
+
+    @Mock
+    I2cDevice mI2cAlt;
+
+    @Rule
+    public MockitoRule mMokitoRule = MockitoJUnit.rule();
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    private static Answer<Void> fillBuffer(final byte[] data) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                byte[] buffer = (byte[]) invocation.getArguments()[1];
+                int length = (Integer) invocation.getArguments()[2];
+                System.arraycopy(data, 0, buffer, 0, length);
+                return null;
+            }
+        };
+    }
+
+    private static Bmx280 createSensor(I2cDevice device, int address) throws IOException {
+        Mockito.when(device.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Mockito.doAnswer(fillBuffer(CALIBRATION))
+                .when(device).readRegBuffer(eq(0x88), any(byte[].class), eq(24));
+        Mockito.doAnswer(fillBuffer(SAMPLE))
+                .when(device).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Bmx280 bmx280 = new Bmx280(device, address, null);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_2X);
+        return bmx280;
+    }
+
+    @Test
+    public void address() throws IOException {
+        Assert.assertEquals(Bmx280.I2C_ADDRESS_ALT,
+                createSensor(mI2cAlt, Bmx280.I2C_ADDRESS_ALT).getAddress());
+    }
+
+    @Test
+    public void measure() throws IOException {
+        Bmx280 sensor = createSensor(mI2c, Bmx280.I2C_ADDRESS);
+        Bmx280 sensorAlt = createSensor(mI2cAlt, Bmx280.I2C_ADDRESS_ALT);
+        Bmx280Poller poller = new Bmx280Poller(sensor, sensorAlt);
+
+        Assert.assertEquals(Math.max(sensor.getMeasurementTime(),
+                sensorAlt.getMeasurementTime()), poller.triggerConversions());
+        float[] samples = new float[4];
+        poller.readConversions(samples);
+
+        // Both conversions are triggered before any sensor is read
+        InOrder inOrder = Mockito.inOrder(mI2c, mI2cAlt);
+        inOrder.verify(mI2c).writeRegByte(0xF4, (byte) 0b00101001);
+        inOrder.verify(mI2cAlt).writeRegByte(0xF4, (byte) 0b00101001);
+        inOrder.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        inOrder.verify(mI2cAlt).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(EXPECTED_TEMPERATURE, samples[2 * i],
+                    EXPECTED_TEMPERATURE * TOLERANCE);
+            Assert.assertEquals(EXPECTED_PRESSURE, samples[2 * i + 1],
+                    EXPECTED_PRESSURE * TOLERANCE);
+        }
+    }
+
+    @Test
+    public void triggerConversions_throwsIfPressureSkipped() throws IOException {
+        Bmx280 sensor = createSensor(mI2c, Bmx280.I2C_ADDRESS);
+        sensor.setPressureOversampling(Bmx280.OVERSAMPLING_SKIPPED);
+        Bmx280Poller poller = new Bmx280Poller(sensor);
+        mExpectedException.expect(IllegalStateException.class);
+        poller.triggerConversions();
+    }
+
+    @Test
+    public void triggerConversions_checksAllSensorsFirst() throws IOException {
+        Bmx280 sensor = createSensor(mI2c, Bmx280.I2C_ADDRESS);
+        Bmx280 sensorAlt = createSensor(mI2cAlt, Bmx280.I2C_ADDRESS_ALT);
+        sensorAlt.setPressureOversampling(Bmx280.OVERSAMPLING_SKIPPED);
+        Bmx280Poller poller = new Bmx280Poller(sensor, sensorAlt);
+        Mockito.reset(mI2c);
+        try {
+            poller.triggerConversions();
+            Assert.fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+        // No conversion was triggered on the first sensor
+        Mockito.verifyZeroInteractions(mI2c);
+    }
+
+    @Test
+    public void create_throwsIfNoSensor() {
+        mExpectedException.expect(IllegalArgumentException.class);
+        new Bmx280Poller();
+    }
+}
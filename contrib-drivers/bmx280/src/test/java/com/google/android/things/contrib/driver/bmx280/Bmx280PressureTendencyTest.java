@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class Bmx280PressureTendencyTest {
+
+    private static final long NANOS_PER_MINUTE = 60 * 1000000000L;
+    private static final float TOLERANCE = .001f;
+
+    /**
+     * Adds a sample per minute, with the pressure rising by the given rate.
+     */
+    private static void addSamples(Bmx280PressureTendency tendency, int firstMinute, int minutes,
+            float perHour) {
+        for (int i = firstMinute; i < firstMinute + minutes; i++) {
+            tendency.addSample(i * NANOS_PER_MINUTE, 1000f + perHour * i / 60);
+        }
+    }
+
+    @Test
+    public void getTendency_fullPeriod() {
+        Bmx280PressureTendency tendency = new Bmx280PressureTendency();
+        addSamples(tendency, 0, 4 * 60, 1f);
+        Assert.assertEquals(3f, tendency.getTendency(), TOLERANCE);
+    }
+
+    @Test
+    public void getTendency_extrapolated() {
+        Bmx280PressureTendency tendency = new Bmx280PressureTendency();
+        addSamples(tendency, 0, 90, -.5f);
+        Assert.assertEquals(-1.5f, tendency.getTendency(), TOLERANCE);
+    }
+
+    @Test
+    public void getTendency_nanWithoutHistory() {
+        Bmx280PressureTendency tendency = new Bmx280PressureTendency();
+        Assert.assertTrue(Float.isNaN(tendency.getTendency()));
+        addSamples(tendency, 0, 30, 1f);
+        Assert.assertTrue(Float.isNaN(tendency.getTendency()));
+    }
+
+    @Test
+    public void getTendency_gap() {
+        Bmx280PressureTendency tendency = new Bmx280PressureTendency();
+        addSamples(tendency, 0, 30, 2f);
+        // No samples for two hours, the oldest buckets are still in the period
+        addSamples(tendency, 150, 30, 2f);
+        Assert.assertEquals(6f, tendency.getTendency(), TOLERANCE);
+        // History discarded after a gap longer than the period
+        addSamples(tendency, 600, 10, 2f);
+        Assert.assertTrue(Float.isNaN(tendency.getTendency()));
+    }
+
+    @Test
+    public void clear() {
+        Bmx280PressureTendency tendency = new Bmx280PressureTendency();
+        addSamples(tendency, 0, 4 * 60, 1f);
+        tendency.clear();
+        Assert.assertTrue(Float.isNaN(tendency.getTendency()));
+    }
+}
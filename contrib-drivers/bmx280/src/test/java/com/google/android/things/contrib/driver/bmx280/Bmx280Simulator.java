@@ -0,0 +1,396 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import com.google.android.things.pio.I2cDevice;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyInt;
+
+/**
+ * Register-level model of a BMP280 or BME280 behind an {@link I2cDevice}, for host tests and
+ * benchmarks of the driver.
+ *
+ * The model covers the parts of the datasheets the driver relies on: the calibration block,
+ * the chip ID, (register, value) pair writes, ctrl_hum only taking effect with the next write
+ * to ctrl_meas, config writes being ignored in normal mode, conversion timing in forced and
+ * normal mode with the status register, and data registers latched per conversion so that burst
+ * reads are consistent. Conversions report fixed raw values set with {@link #setRawValues}.
+ *
+ * Every I2C transaction is counted, so tests can catch regressions in the bus traffic of the
+ * driver.
+ */
+public class Bmx280Simulator {
+
+    // Datasheet calibration, see Bmx280Test
+    private static final int[] TEMP_CALIBRATION = {27504, 26435, -1000};
+    private static final int[] PRESSURE_CALIBRATION = {36477, -10685, 3024, 2855, 140, -7, 15500,
+            -14600, 6000};
+    private static final int[] HUMIDITY_CALIBRATION = {75, 362, 0, 313, 50, 30};
+
+    private static final int REG_CALIB = 0x88;
+    private static final int REG_HUM_CALIB_1 = 0xA1;
+    private static final int REG_ID = 0xD0;
+    private static final int REG_RESET = 0xE0;
+    private static final int REG_HUM_CALIB_2 = 0xE1;
+    private static final int REG_CTRL_HUM = 0xF2;
+    private static final int REG_STATUS = 0xF3;
+    private static final int REG_CTRL = 0xF4;
+    private static final int REG_CONFIG = 0xF5;
+    private static final int REG_PRESS = 0xF7;
+    private static final int REG_TEMP = 0xFA;
+    private static final int REG_HUM = 0xFD;
+
+    private static final int RESET_VALUE = 0xB6;
+    private static final int MODE_MASK = 0b11;
+    private static final int MODE_SLEEP = 0b00;
+    private static final int MODE_NORMAL = 0b11;
+    private static final int STATUS_MEASURING = 0b1000;
+    // Value of the data registers when a measurement is skipped
+    private static final int SKIPPED_VALUE = 0x80000;
+    private static final int SKIPPED_HUMIDITY = 0x8000;
+
+    private static final long NANOS_PER_MICRO = 1000L;
+    // Typical measurement time, in microseconds
+    private static final int TIME_BASE = 1000;
+    private static final int TIME_PER_SAMPLE = 2000;
+    private static final int TIME_SETUP = 500;
+    private static final int[] STANDBY_TIMES = {500, 62500, 125000, 250000, 500000, 1000000,
+            2000000, 4000000};
+    private static final int[] BME280_STANDBY_TIMES = {500, 62500, 125000, 250000, 500000,
+            1000000, 10000, 20000};
+
+    private final int mChipId;
+    private final byte[] mRegisters = new byte[256];
+    private final I2cDevice mDevice;
+
+    private int mRawTemperature = 519888;
+    private int mRawPressure = 415148;
+    private int mRawHumidity = 30000;
+
+    // Value of ctrl_hum written, effective after the next ctrl_meas write
+    private int mCtrlHumPending;
+    private int mCtrlHum;
+    // Start and end of the current or last conversion, in nanoseconds
+    private long mConversionStart;
+    private long mConversionEnd;
+    private boolean mConverting;
+
+    private int mReadTransactions;
+    private int mWriteTransactions;
+    private int mBytesTransferred;
+    private int mConversions;
+
+    /**
+     * Create a new simulated sensor.
+     * @param chipId {@link Bmx280#CHIP_ID_BMP280} or {@link Bmx280#CHIP_ID_BME280}.
+     */
+    public Bmx280Simulator(int chipId) {
+        mChipId = chipId;
+        reset();
+        mDevice = Mockito.mock(I2cDevice.class);
+        try {
+            Mockito.doAnswer(new Answer<Byte>() {
+                @Override
+                public Byte answer(InvocationOnMock invocation) throws Throwable {
+                    int register = (Integer) invocation.getArguments()[0];
+                    return readRegByte(register);
+                }
+            }).when(mDevice).readRegByte(anyInt());
+            Mockito.doAnswer(new Answer<Short>() {
+                @Override
+                public Short answer(InvocationOnMock invocation) throws Throwable {
+                    int register = (Integer) invocation.getArguments()[0];
+                    return readRegWord(register);
+                }
+            }).when(mDevice).readRegWord(anyInt());
+            Mockito.doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    Object[] args = invocation.getArguments();
+                    readRegBuffer((Integer) args[0], (byte[]) args[1], (Integer) args[2]);
+                    return null;
+                }
+            }).when(mDevice).readRegBuffer(anyInt(), any(byte[].class), anyInt());
+            Mockito.doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    Object[] args = invocation.getArguments();
+                    writeRegByte((Integer) args[0], (Byte) args[1]);
+                    return null;
+                }
+            }).when(mDevice).writeRegByte(anyInt(), anyByte());
+            Mockito.doAnswer(new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    Object[] args = invocation.getArguments();
+                    writeRegBuffer((Integer) args[0], (byte[]) args[1], (Integer) args[2]);
+                    return null;
+                }
+            }).when(mDevice).writeRegBuffer(anyInt(), any(byte[].class), anyInt());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Return the {@link I2cDevice} backed by the simulator, to pass to the driver.
+     */
+    public I2cDevice getDevice() {
+        return mDevice;
+    }
+
+    /**
+     * Set the raw values reported by the conversions completed from now on.
+     */
+    public synchronized void setRawValues(int temperature, int pressure, int humidity) {
+        mRawTemperature = temperature;
+        mRawPressure = pressure;
+        mRawHumidity = humidity;
+    }
+
+    /**
+     * Return the number of read transactions since the last call to {@link #resetCounters()}.
+     */
+    public synchronized int getReadTransactions() {
+        return mReadTransactions;
+    }
+
+    /**
+     * Return the number of write transactions since the last call to {@link #resetCounters()}.
+     */
+    public synchronized int getWriteTransactions() {
+        return mWriteTransactions;
+    }
+
+    /**
+     * Return the number of transactions since the last call to {@link #resetCounters()}.
+     */
+    public synchronized int getTransactions() {
+        return mReadTransactions + mWriteTransactions;
+    }
+
+    /**
+     * Return the number of bytes read or written since the last call to
+     * {@link #resetCounters()}, register addresses included.
+     */
+    public synchronized int getBytesTransferred() {
+        return mBytesTransferred;
+    }
+
+    /**
+     * Return the number of conversions started since the last call to {@link #resetCounters()}.
+     */
+    public synchronized int getConversions() {
+        return mConversions;
+    }
+
+    /**
+     * Reset the transaction and conversion counters.
+     */
+    public synchronized void resetCounters() {
+        mReadTransactions = 0;
+        mWriteTransactions = 0;
+        mBytesTransferred = 0;
+        mConversions = 0;
+    }
+
+    /**
+     * Return the current value of a register, without counting a transaction.
+     */
+    public synchronized int peekRegister(int register) {
+        update(System.nanoTime());
+        return mRegisters[register] & 0xff;
+    }
+
+    private synchronized byte readRegByte(int register) {
+        mReadTransactions++;
+        mBytesTransferred += 2;
+        update(System.nanoTime());
+        return mRegisters[register & 0xff];
+    }
+
+    private synchronized short readRegWord(int register) {
+        mReadTransactions++;
+        mBytesTransferred += 3;
+        update(System.nanoTime());
+        return (short) ((mRegisters[register & 0xff] & 0xff)
+                | (mRegisters[(register + 1) & 0xff] << 8));
+    }
+
+    private synchronized void readRegBuffer(int register, byte[] buffer, int length) {
+        mReadTransactions++;
+        mBytesTransferred += 1 + length;
+        update(System.nanoTime());
+        // The register address auto-increments during a read
+        for (int i = 0; i < length; i++) {
+            buffer[i] = mRegisters[(register + i) & 0xff];
+        }
+    }
+
+    private synchronized void writeRegByte(int register, byte value) {
+        mWriteTransactions++;
+        mBytesTransferred += 2;
+        write(register, value & 0xff, System.nanoTime());
+    }
+
+    private synchronized void writeRegBuffer(int register, byte[] data, int length) {
+        mWriteTransactions++;
+        mBytesTransferred += 1 + length;
+        if (length % 2 == 0) {
+            throw new AssertionError("writes must be (register, value) pairs");
+        }
+        // The address does not auto-increment during a write, the data holds the value of the
+        // first register followed by (register, value) pairs
+        long now = System.nanoTime();
+        write(register, data[0] & 0xff, now);
+        for (int i = 1; i < length; i += 2) {
+            write(data[i] & 0xff, data[i + 1] & 0xff, now);
+        }
+    }
+
+    private void write(int register, int value, long now) {
+        update(now);
+        switch (register) {
+            case REG_RESET:
+                if (value == RESET_VALUE) {
+                    reset();
+                }
+                break;
+            case REG_CTRL_HUM:
+                if (mChipId == Bmx280.CHIP_ID_BME280) {
+                    mCtrlHumPending = value & 0b111;
+                    mRegisters[REG_CTRL_HUM] = (byte) mCtrlHumPending;
+                }
+                break;
+            case REG_CONFIG:
+                if ((mRegisters[REG_CTRL] & MODE_MASK) != MODE_NORMAL) {
+                    mRegisters[REG_CONFIG] = (byte) (value & 0b11111101);
+                }
+                break;
+            case REG_CTRL:
+                mRegisters[REG_CTRL] = (byte) value;
+                mCtrlHum = mCtrlHumPending;
+                int mode = value & MODE_MASK;
+                if (mode == MODE_SLEEP) {
+                    mConverting = false;
+                } else if (!mConverting) {
+                    startConversion(now);
+                }
+                break;
+            default:
+                // Other registers are read-only
+                break;
+        }
+    }
+
+    /**
+     * Advance the conversions up to the given time.
+     */
+    private void update(long now) {
+        while (mConverting && now >= mConversionEnd) {
+            completeConversion();
+            int mode = mRegisters[REG_CTRL] & MODE_MASK;
+            if (mode == MODE_NORMAL) {
+                int standby = (mRegisters[REG_CONFIG] & 0xff) >> 5;
+                int[] times = mChipId == Bmx280.CHIP_ID_BME280
+                        ? BME280_STANDBY_TIMES : STANDBY_TIMES;
+                startConversion(mConversionEnd + times[standby] * NANOS_PER_MICRO);
+            } else {
+                // Forced mode returns to sleep
+                mRegisters[REG_CTRL] = (byte) (mRegisters[REG_CTRL] & ~MODE_MASK);
+                mConverting = false;
+            }
+        }
+        boolean measuring = mConverting && now >= mConversionStart;
+        mRegisters[REG_STATUS] = (byte) (measuring ? STATUS_MEASURING : 0);
+    }
+
+    private void startConversion(long start) {
+        int ctrl = mRegisters[REG_CTRL] & 0xff;
+        int time = TIME_BASE + getSamples(ctrl >> 5) * TIME_PER_SAMPLE;
+        int pressureSamples = getSamples((ctrl >> 2) & 0b111);
+        if (pressureSamples > 0) {
+            time += pressureSamples * TIME_PER_SAMPLE + TIME_SETUP;
+        }
+        int humiditySamples = getSamples(mCtrlHum);
+        if (humiditySamples > 0) {
+            time += humiditySamples * TIME_PER_SAMPLE + TIME_SETUP;
+        }
+        mConversionStart = start;
+        mConversionEnd = start + time * NANOS_PER_MICRO;
+        mConverting = true;
+        mConversions++;
+    }
+
+    private void completeConversion() {
+        int ctrl = mRegisters[REG_CTRL] & 0xff;
+        writeSample(REG_TEMP, (ctrl >> 5) != 0 ? mRawTemperature : SKIPPED_VALUE);
+        writeSample(REG_PRESS, ((ctrl >> 2) & 0b111) != 0 ? mRawPressure : SKIPPED_VALUE);
+        if (mChipId == Bmx280.CHIP_ID_BME280) {
+            int humidity = mCtrlHum != 0 ? mRawHumidity : SKIPPED_HUMIDITY;
+            mRegisters[REG_HUM] = (byte) (humidity >> 8);
+            mRegisters[REG_HUM + 1] = (byte) humidity;
+        }
+    }
+
+    private void writeSample(int register, int value) {
+        mRegisters[register] = (byte) (value >> 12);
+        mRegisters[register + 1] = (byte) (value >> 4);
+        mRegisters[register + 2] = (byte) ((value & 0x0f) << 4);
+    }
+
+    private static int getSamples(int oversampling) {
+        return oversampling == 0 ? 0 : Math.min(16, 1 << (oversampling - 1));
+    }
+
+    private void reset() {
+        Arrays.fill(mRegisters, (byte) 0);
+        mRegisters[REG_ID] = (byte) mChipId;
+        for (int i = 0; i < 12; i++) {
+            int value = i < 3 ? TEMP_CALIBRATION[i] : PRESSURE_CALIBRATION[i - 3];
+            mRegisters[REG_CALIB + 2 * i] = (byte) value;
+            mRegisters[REG_CALIB + 2 * i + 1] = (byte) (value >> 8);
+        }
+        if (mChipId == Bmx280.CHIP_ID_BME280) {
+            int[] h = HUMIDITY_CALIBRATION;
+            mRegisters[REG_HUM_CALIB_1] = (byte) h[0];
+            mRegisters[REG_HUM_CALIB_2] = (byte) h[1];
+            mRegisters[REG_HUM_CALIB_2 + 1] = (byte) (h[1] >> 8);
+            mRegisters[REG_HUM_CALIB_2 + 2] = (byte) h[2];
+            mRegisters[REG_HUM_CALIB_2 + 3] = (byte) (h[3] >> 4);
+            mRegisters[REG_HUM_CALIB_2 + 4] = (byte) ((h[3] & 0x0f) | ((h[4] & 0x0f) << 4));
+            mRegisters[REG_HUM_CALIB_2 + 5] = (byte) (h[4] >> 4);
+            mRegisters[REG_HUM_CALIB_2 + 6] = (byte) h[5];
+        }
+        // Data registers read as skipped until the first conversion
+        writeSample(REG_PRESS, SKIPPED_VALUE);
+        writeSample(REG_TEMP, SKIPPED_VALUE);
+        mRegisters[REG_HUM] = (byte) (SKIPPED_HUMIDITY >> 8);
+        mCtrlHumPending = 0;
+        mCtrlHum = 0;
+        mConverting = false;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.bmx280;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Checks the bus traffic of the driver against {@link Bmx280Simulator}. The expected transaction
+ * counts are the minimum for each operation, update them only for intended changes.
+ */
+public class Bmx280SimulatorTest {
+
+    private static final int REG_CTRL_HUM = 0xF2;
+    private static final int REG_CTRL = 0xF4;
+    private static final int REG_CONFIG = 0xF5;
+
+    private static final float EXPECTED_TEMPERATURE = 25.08f;
+    private static final float EXPECTED_PRESSURE = 1006.5327f;
+    private static final float EXPECTED_HUMIDITY = 55.0007f;
+    private static final float TOLERANCE = .001f;
+
+    @Test
+    public void connect_bmp280() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        new Bmx280(simulator.getDevice(), null);
+        // Chip ID, calibration block and control registers
+        Assert.assertEquals(3, simulator.getReadTransactions());
+        Assert.assertEquals(0, simulator.getWriteTransactions());
+    }
+
+    @Test
+    public void connect_bme280() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        new Bmx280(simulator.getDevice(), null);
+        // Chip ID, both humidity calibration blocks too
+        Assert.assertEquals(5, simulator.getReadTransactions());
+        Assert.assertEquals(0, simulator.getWriteTransactions());
+    }
+
+    @Test
+    public void commitConfiguration_singleTransaction() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        simulator.resetCounters();
+
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_2X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_16X);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setFilter(Bmx280.FILTER_4);
+        bmx280.setStandbyTime(Bmx280.STANDBY_62_5_MS);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.commitConfiguration();
+
+        Assert.assertEquals(1, simulator.getTransactions());
+        Assert.assertEquals(0b01010111, simulator.peekRegister(REG_CTRL));
+        Assert.assertEquals(0b00101000, simulator.peekRegister(REG_CONFIG));
+        Assert.assertEquals(0b001, simulator.peekRegister(REG_CTRL_HUM));
+    }
+
+    @Test
+    public void setFilter_appliedInNormalMode() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        simulator.resetCounters();
+
+        // The sensor ignores config writes in normal mode
+        bmx280.setFilter(Bmx280.FILTER_16);
+        Assert.assertEquals(1, simulator.getTransactions());
+        Assert.assertEquals(Bmx280.FILTER_16 << 2, simulator.peekRegister(REG_CONFIG));
+        Assert.assertEquals(0b11, simulator.peekRegister(REG_CTRL) & 0b11);
+    }
+
+    @Test
+    public void readTemperatureAndPressure_normalMode() throws IOException, InterruptedException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.commitConfiguration();
+        Thread.sleep(bmx280.getMeasurementTime() / 1000 + 1);
+        simulator.resetCounters();
+
+        float[] values = new float[2];
+        bmx280.readTemperatureAndPressure(values);
+        Assert.assertEquals(1, simulator.getTransactions());
+        Assert.assertEquals(7, simulator.getBytesTransferred());
+        Assert.assertEquals(EXPECTED_TEMPERATURE, values[0], EXPECTED_TEMPERATURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_PRESSURE, values[1], EXPECTED_PRESSURE * TOLERANCE);
+    }
+
+    @Test
+    public void measureTemperatureAndPressure() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_4X);
+        simulator.resetCounters();
+
+        float[] values = bmx280.measureTemperatureAndPressure();
+        // Trigger, status and data
+        Assert.assertEquals(1, simulator.getWriteTransactions());
+        Assert.assertEquals(2, simulator.getReadTransactions());
+        Assert.assertEquals(1, simulator.getConversions());
+        Assert.assertEquals(0, simulator.peekRegister(REG_CTRL) & 0b11);
+        Assert.assertEquals(EXPECTED_TEMPERATURE, values[0], EXPECTED_TEMPERATURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_PRESSURE, values[1], EXPECTED_PRESSURE * TOLERANCE);
+    }
+
+    @Test
+    public void measureTemperaturePressureAndHumidity() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.commitConfiguration();
+        simulator.resetCounters();
+
+        float[] values = bmx280.measureTemperaturePressureAndHumidity();
+        Assert.assertEquals(3, simulator.getTransactions());
+        Assert.assertEquals(EXPECTED_TEMPERATURE, values[0], EXPECTED_TEMPERATURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_PRESSURE, values[1], EXPECTED_PRESSURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_HUMIDITY, values[2], EXPECTED_HUMIDITY * TOLERANCE);
+    }
+
+    /**
+     * Configuration of Bmx280SensorDriver with only the humidity sensor enabled.
+     */
+    @Test
+    public void readHumidity_humidityOnly() throws IOException, InterruptedException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_SKIPPED);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.commitConfiguration();
+        Thread.sleep(bmx280.getMeasurementTime() / 1000 + 1);
+
+        Assert.assertEquals(EXPECTED_HUMIDITY, bmx280.readHumidity(),
+                EXPECTED_HUMIDITY * TOLERANCE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readHumidity_throwsIfTemperatureSkipped() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(simulator.getDevice(), null);
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_SKIPPED);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.commitConfiguration();
+
+        bmx280.readHumidity();
+    }
+
+    @Test
+    public void poller_transactionsPerPass() throws IOException {
+        Bmx280Simulator simulator = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        Bmx280Simulator simulatorAlt = new Bmx280Simulator(Bmx280.CHIP_ID_BMP280);
+        Bmx280 sensor = new Bmx280(simulator.getDevice(), Bmx280.I2C_ADDRESS, null);
+        Bmx280 sensorAlt = new Bmx280(simulatorAlt.getDevice(), Bmx280.I2C_ADDRESS_ALT, null);
+        for (Bmx280 bmx280 : new Bmx280[]{sensor, sensorAlt}) {
+            bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+            bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        }
+        simulator.resetCounters();
+        simulatorAlt.resetCounters();
+
+        float[] samples = new float[4];
+        new Bmx280Poller(sensor, sensorAlt).measure(samples);
+        Assert.assertEquals(3, simulator.getTransactions());
+        Assert.assertEquals(3, simulatorAlt.getTransactions());
+        Assert.assertEquals(EXPECTED_PRESSURE, samples[3], EXPECTED_PRESSURE * TOLERANCE);
+    }
+}
@@ -23,16 +23,22 @@ import junit.framework.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.byteThat;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
 public class Bmx280Test {
@@ -49,6 +55,17 @@ public class Bmx280Test {
     private static final float EXPECTED_TEMPERATURE = 25.08f;
     private static final float EXPECTED_FINE_TEMPERATURE = 128422.0f;
     private static final float EXPECTED_PRESSURE = 1006.5327f;
+    // The BME280 datasheet has no humidity example, the expected value is computed with the
+    // double precision formula of the datasheet.
+    private static final int[] HUMIDITY_CALIBRATION = {75, 362, 0, 313, 50, 30};
+    private static final int RAW_HUMIDITY = 30000;
+    private static final float EXPECTED_HUMIDITY = 55.0007f;
+    // Fixed-point results of the integer formulas of the datasheets. The datasheet lists
+    // 25767236 for the pressure, which the 64-bit reference code does not reproduce exactly.
+    private static final int EXPECTED_FIXED_TEMPERATURE = 2508;
+    private static final int EXPECTED_FIXED_FINE_TEMPERATURE = 128422;
+    private static final int EXPECTED_FIXED_PRESSURE = 25767233;
+    private static final int EXPECTED_FIXED_HUMIDITY = 56317;
     // Note: the datasheet points out that the calculated values can differ slightly because of
     // rounding. We'll check that the results are within a tolerance of 0.1%
     private static final float TOLERANCE = .001f;
@@ -56,6 +73,9 @@ public class Bmx280Test {
     @Mock
     I2cDevice mI2c;
 
+    @Mock
+    Bmx280.CalibrationCache mCalibrationCache;
+
     @Rule
     public MockitoRule mMokitoRule = MockitoJUnit.rule();
 
@@ -78,6 +98,282 @@ public class Bmx280Test {
         Assert.assertEquals(pressure, EXPECTED_PRESSURE, EXPECTED_PRESSURE * TOLERANCE);
     }
 
+    @Test
+    public void testCompensateHumidity() {
+        final float[] tempResults = Bmx280.compensateTemperature(RAW_TEMPERATURE, TEMP_CALIBRATION);
+        final float humidity = Bmx280.compensateHumidity(RAW_HUMIDITY, tempResults[1],
+                HUMIDITY_CALIBRATION);
+        Assert.assertEquals(EXPECTED_HUMIDITY, humidity, EXPECTED_HUMIDITY * TOLERANCE);
+    }
+
+    @Test
+    public void testCompensateHumidity_clamped() {
+        Assert.assertEquals(0f, Bmx280.compensateHumidity(0, EXPECTED_FINE_TEMPERATURE,
+                HUMIDITY_CALIBRATION), 0f);
+        Assert.assertEquals(100f, Bmx280.compensateHumidity(0xFFFF, EXPECTED_FINE_TEMPERATURE,
+                HUMIDITY_CALIBRATION), 0f);
+    }
+
+    @Test
+    public void testCompensateTemperatureFixed() {
+        int[] results = new int[2];
+        Bmx280.compensateTemperatureFixed(RAW_TEMPERATURE, TEMP_CALIBRATION, results);
+        Assert.assertEquals(EXPECTED_FIXED_TEMPERATURE, results[0]);
+        Assert.assertEquals(EXPECTED_FIXED_FINE_TEMPERATURE, results[1]);
+    }
+
+    @Test
+    public void testCompensatePressureFixed() {
+        Assert.assertEquals(EXPECTED_FIXED_PRESSURE, Bmx280.compensatePressureFixed(RAW_PRESSURE,
+                EXPECTED_FIXED_FINE_TEMPERATURE, PRESSURE_CALIBRATION));
+    }
+
+    @Test
+    public void testCompensateHumidityFixed() {
+        Assert.assertEquals(EXPECTED_FIXED_HUMIDITY, Bmx280.compensateHumidityFixed(RAW_HUMIDITY,
+                EXPECTED_FIXED_FINE_TEMPERATURE, HUMIDITY_CALIBRATION));
+    }
+
+    @Test
+    public void testCompensateFixed_matchesFloat() {
+        int[] fixedTemperature = new int[2];
+        // Raw values covering the measurement range of the sensor
+        for (int rawTemp = 400000; rawTemp <= 650000; rawTemp += 5000) {
+            float[] temperature = Bmx280.compensateTemperature(rawTemp, TEMP_CALIBRATION);
+            Bmx280.compensateTemperatureFixed(rawTemp, TEMP_CALIBRATION, fixedTemperature);
+            Assert.assertEquals(temperature[0], fixedTemperature[0] / 100f, .01f);
+
+            for (int rawPressure = 200000; rawPressure <= 600000; rawPressure += 20000) {
+                float pressure = Bmx280.compensatePressure(rawPressure, temperature[1],
+                        PRESSURE_CALIBRATION);
+                int fixedPressure = Bmx280.compensatePressureFixed(rawPressure,
+                        fixedTemperature[1], PRESSURE_CALIBRATION);
+                Assert.assertEquals(pressure, fixedPressure / 25600f, .01f);
+            }
+            for (int rawHumidity = 20000; rawHumidity <= 40000; rawHumidity += 1000) {
+                float humidity = Bmx280.compensateHumidity(rawHumidity, temperature[1],
+                        HUMIDITY_CALIBRATION);
+                int fixedHumidity = Bmx280.compensateHumidityFixed(rawHumidity,
+                        fixedTemperature[1], HUMIDITY_CALIBRATION);
+                Assert.assertEquals(humidity, fixedHumidity / 1024f, .01f);
+            }
+        }
+    }
+
+    /**
+     * Encodes calibration words the way they are laid out in the sensor registers.
+     */
+    private static byte[] encodeCalibration(int[] temperature, int[] pressure) {
+        byte[] calibration = new byte[24];
+        for (int i = 0; i < 12; i++) {
+            int value = i < 3 ? temperature[i] : pressure[i - 3];
+            calibration[2 * i] = (byte) value;
+            calibration[2 * i + 1] = (byte) (value >> 8);
+        }
+        return calibration;
+    }
+
+    /**
+     * Answers readRegBuffer() calls by copying the given bytes into the buffer.
+     */
+    private static Answer<Void> fillBuffer(final byte[] data) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                byte[] buffer = (byte[]) invocation.getArguments()[1];
+                int length = (Integer) invocation.getArguments()[2];
+                System.arraycopy(data, 0, buffer, 0, length);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Verifies a transaction writing (register, value) pairs, starting at the given register.
+     */
+    private void verifyRegisterWrites(int register, int... data) throws IOException {
+        ArgumentCaptor<byte[]> buffer = ArgumentCaptor.forClass(byte[].class);
+        Mockito.verify(mI2c).writeRegBuffer(eq(register), buffer.capture(), eq(data.length));
+        for (int i = 0; i < data.length; i++) {
+            Assert.assertEquals("byte " + i, (byte) data[i], buffer.getValue()[i]);
+        }
+    }
+
+    @Test
+    public void decodeCalibration() {
+        int[] temperature = new int[3];
+        int[] pressure = new int[9];
+        int[] humidity = new int[6];
+        Bmx280.decodeCalibration(encodeCalibration(TEMP_CALIBRATION, PRESSURE_CALIBRATION),
+                temperature, pressure, humidity);
+        Assert.assertTrue(java.util.Arrays.equals(TEMP_CALIBRATION, temperature));
+        Assert.assertTrue(java.util.Arrays.equals(PRESSURE_CALIBRATION, pressure));
+    }
+
+    @Test
+    public void decodeCalibration_humidity() {
+        byte[] calibration = new byte[32];
+        System.arraycopy(encodeCalibration(TEMP_CALIBRATION, PRESSURE_CALIBRATION), 0,
+                calibration, 0, 24);
+        // 0xA1, then 0xE1..0xE7
+        byte[] humidityRegisters = {75, 0x6C, 0x01, 0x00, 0x13, 0x25, 0x03, 0x1E};
+        System.arraycopy(humidityRegisters, 0, calibration, 24, humidityRegisters.length);
+        int[] humidity = new int[6];
+        Bmx280.decodeCalibration(calibration, new int[3], new int[9], humidity);
+        Assert.assertTrue(java.util.Arrays.equals(new int[]{75, 364, 0, 309, 50, 30}, humidity));
+    }
+
+    @Test
+    public void connect_readsCalibrationInOneTransaction() throws IOException {
+        new Bmx280(mI2c);
+        Mockito.verify(mI2c).readRegBuffer(eq(0x88), any(byte[].class), eq(24));
+        Mockito.verify(mI2c, never()).readRegWord(anyInt());
+    }
+
+    @Test
+    public void connect_readsHumidityCalibration() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        new Bmx280(mI2c);
+        Mockito.verify(mI2c).readRegBuffer(eq(0x88), any(byte[].class), eq(24));
+        Mockito.verify(mI2c).readRegByte(0xA1);
+        Mockito.verify(mI2c).readRegBuffer(eq(0xE1), any(byte[].class), eq(7));
+    }
+
+    @Test
+    public void connect_savesCalibrationToCache() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        new Bmx280(mI2c, mCalibrationCache);
+        Mockito.verify(mI2c).readRegBuffer(eq(0x88), any(byte[].class), eq(24));
+        Mockito.verify(mCalibrationCache).save(Mockito.<String>any(), eq(Bmx280.I2C_ADDRESS),
+                eq(Bmx280.CHIP_ID_BMP280), any(byte[].class));
+    }
+
+    @Test
+    public void connect_loadsCalibrationFromCache() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Mockito.when(mCalibrationCache.load(Mockito.<String>any(), eq(Bmx280.I2C_ADDRESS),
+                eq(Bmx280.CHIP_ID_BMP280)))
+                .thenReturn(encodeCalibration(TEMP_CALIBRATION, PRESSURE_CALIBRATION));
+        Bmx280 bmx280 = new Bmx280(mI2c, mCalibrationCache);
+        Mockito.verify(mI2c, never()).readRegBuffer(eq(0x88), any(byte[].class), anyInt());
+
+        // Sample from the datasheet: pressure then temperature, 20 bits each
+        Mockito.doAnswer(fillBuffer(new byte[]{0x65, 0x5A, (byte) 0xC0, 0x7E, (byte) 0xED, 0x00}))
+                .when(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        float[] values = bmx280.readTemperatureAndPressure();
+        Assert.assertEquals(EXPECTED_TEMPERATURE, values[0], EXPECTED_TEMPERATURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_PRESSURE, values[1], EXPECTED_PRESSURE * TOLERANCE);
+    }
+
+    @Test
+    public void setCompensation_fixedPoint() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Mockito.when(mCalibrationCache.load(Mockito.<String>any(), eq(Bmx280.I2C_ADDRESS),
+                eq(Bmx280.CHIP_ID_BMP280)))
+                .thenReturn(encodeCalibration(TEMP_CALIBRATION, PRESSURE_CALIBRATION));
+        Bmx280 bmx280 = new Bmx280(mI2c, mCalibrationCache);
+        bmx280.setCompensation(Bmx280.COMPENSATION_FIXED_POINT);
+
+        Mockito.doAnswer(fillBuffer(new byte[]{0x65, 0x5A, (byte) 0xC0, 0x7E, (byte) 0xED, 0x00}))
+                .when(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        float[] values = bmx280.readTemperatureAndPressure();
+        Assert.assertEquals(EXPECTED_FIXED_TEMPERATURE / 100f, values[0], 0f);
+        Assert.assertEquals(EXPECTED_FIXED_PRESSURE / 25600.0, values[1], 1e-4);
+    }
+
+    @Test
+    public void connect_readsControlRegisters() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        // ctrl_hum, status, ctrl_meas, config
+        Mockito.doAnswer(fillBuffer(new byte[]{0b00000010, 0, 0b01001011, (byte) 0b10101000}))
+                .when(mI2c).readRegBuffer(eq(0xF2), any(byte[].class), eq(4));
+        Bmx280 bmx280 = new Bmx280(mI2c);
+
+        Bmx280.Configuration configuration = bmx280.getConfiguration();
+        Assert.assertEquals(Bmx280.OVERSAMPLING_2X, configuration.getTemperatureOversampling());
+        Assert.assertEquals(Bmx280.OVERSAMPLING_2X, configuration.getPressureOversampling());
+        Assert.assertEquals(Bmx280.OVERSAMPLING_2X, configuration.getHumidityOversampling());
+        Assert.assertEquals(Bmx280.FILTER_4, configuration.getFilter());
+        Assert.assertEquals(Bmx280.STANDBY_1000_MS, configuration.getStandbyTime());
+
+        // Already in normal mode
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.verify(mI2c, never()).writeRegByte(anyInt(), Mockito.anyByte());
+    }
+
+    /**
+     * Returns a sensor with the datasheet calibration, answering burst reads with the datasheet
+     * sample.
+     */
+    private Bmx280 createDatasheetSensor() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Mockito.when(mCalibrationCache.load(Mockito.<String>any(), eq(Bmx280.I2C_ADDRESS),
+                eq(Bmx280.CHIP_ID_BMP280)))
+                .thenReturn(encodeCalibration(TEMP_CALIBRATION, PRESSURE_CALIBRATION));
+        Mockito.doAnswer(fillBuffer(new byte[]{0x65, 0x5A, (byte) 0xC0, 0x7E, (byte) 0xED, 0x00}))
+                .when(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Bmx280 bmx280 = new Bmx280(mI2c, mCalibrationCache);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        return bmx280;
+    }
+
+    @Test
+    public void readTemperatureAndPressure_intoArray() throws IOException {
+        Bmx280 bmx280 = createDatasheetSensor();
+        float[] values = new float[2];
+        bmx280.readTemperatureAndPressure(values);
+        Assert.assertEquals(EXPECTED_TEMPERATURE, values[0], EXPECTED_TEMPERATURE * TOLERANCE);
+        Assert.assertEquals(EXPECTED_PRESSURE, values[1], EXPECTED_PRESSURE * TOLERANCE);
+    }
+
+    @Test
+    public void readTemperatureAndPressure_throwsIfArrayTooSmall() throws IOException {
+        Bmx280 bmx280 = createDatasheetSensor();
+        mExpectedException.expect(IllegalArgumentException.class);
+        bmx280.readTemperatureAndPressure(new float[1]);
+    }
+
+    @Test
+    public void readSamples_normalMode() throws IOException {
+        Bmx280 bmx280 = createDatasheetSensor();
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.reset(mI2c);
+        Mockito.doAnswer(fillBuffer(new byte[]{0x65, 0x5A, (byte) 0xC0, 0x7E, (byte) 0xED, 0x00}))
+                .when(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+
+        float[] samples = new float[8];
+        bmx280.readSamples(samples, 3, 1000000);
+        Mockito.verify(mI2c, times(3)).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Mockito.verifyNoMoreInteractions(mI2c);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(EXPECTED_TEMPERATURE, samples[2 * i],
+                    EXPECTED_TEMPERATURE * TOLERANCE);
+            Assert.assertEquals(EXPECTED_PRESSURE, samples[2 * i + 1],
+                    EXPECTED_PRESSURE * TOLERANCE);
+        }
+        Assert.assertEquals(0f, samples[6], 0f);
+    }
+
+    @Test
+    public void readSamples_forcedMode() throws IOException {
+        Bmx280 bmx280 = createDatasheetSensor();
+        bmx280.readSamples(new float[4], 2, 0);
+        Mockito.verify(mI2c, times(2)).writeRegByte(0xF4, (byte) 0b00100101);
+        Mockito.verify(mI2c, times(2)).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+    }
+
+    @Test
+    public void readSamples_throwsIfArrayTooSmall() throws IOException {
+        Bmx280 bmx280 = createDatasheetSensor();
+        mExpectedException.expect(IllegalArgumentException.class);
+        bmx280.readSamples(new float[5], 3, 0);
+    }
+
     @Test
     public void close() throws IOException {
         Bmx280 bmx280 = new Bmx280(mI2c);
@@ -161,6 +457,282 @@ public class Bmx280Test {
         bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
     }
 
+    @Test
+    public void setOversampling_replacesPreviousValue() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_16X);
+        Mockito.verify(mI2c).writeRegByte(0xF4, (byte) 0b10100000);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_2X);
+        Mockito.verify(mI2c).writeRegByte(0xF4, (byte) 0b01000000);
+
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_16X);
+        Mockito.verify(mI2c).writeRegByte(0xF4, (byte) 0b01010100);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        Mockito.verify(mI2c).writeRegByte(0xF4, (byte) 0b01000100);
+    }
+
+    @Test
+    public void setters_doNotReadRegisters() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setFilter(Bmx280.FILTER_2);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.verify(mI2c, never()).readRegByte(0xF4);
+        Mockito.verify(mI2c, never()).readRegByte(0xF5);
+    }
+
+    @Test
+    public void setters_skipUnchangedValues() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_SLEEP);
+        Mockito.verify(mI2c, times(1)).writeRegByte(anyInt(), Mockito.anyByte());
+    }
+
+    @Test
+    public void commitConfiguration_writesInOneTransaction() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.reset(mI2c);
+
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_4X);
+        bmx280.setFilter(Bmx280.FILTER_2);
+        bmx280.setStandbyTime(Bmx280.STANDBY_250_MS);
+        bmx280.setMode(Bmx280.MODE_SLEEP);
+        Mockito.verifyZeroInteractions(mI2c);
+
+        bmx280.commitConfiguration();
+        // Going to sleep anyway, ctrl_meas is written only once
+        verifyRegisterWrites(0xF4, 0b00101100, 0xF5, 0b01100100);
+        Mockito.verifyNoMoreInteractions(mI2c);
+    }
+
+    @Test
+    public void commitConfiguration_skipsUnchangedConfiguration() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        Mockito.reset(mI2c);
+
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_SKIPPED);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.commitConfiguration();
+        Mockito.verifyZeroInteractions(mI2c);
+    }
+
+    @Test
+    public void cancelConfiguration_discardsStagedChanges() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.reset(mI2c);
+
+        bmx280.beginConfiguration();
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_4X);
+        bmx280.setFilter(Bmx280.FILTER_2);
+        bmx280.setMode(Bmx280.MODE_SLEEP);
+        bmx280.cancelConfiguration();
+        Mockito.verifyZeroInteractions(mI2c);
+        Assert.assertEquals(Bmx280.OVERSAMPLING_1X,
+                bmx280.getConfiguration().getTemperatureOversampling());
+        Assert.assertEquals(Bmx280.FILTER_OFF, bmx280.getConfiguration().getFilter());
+
+        // The driver state matches the sensor again, so nothing is written
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.verifyZeroInteractions(mI2c);
+    }
+
+    @Test
+    public void commitConfiguration_throwsIfNotStaged() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.commitConfiguration();
+    }
+
+    @Test
+    public void setOversampling_throwsIfInvalid() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        mExpectedException.expect(IllegalArgumentException.class);
+        bmx280.setPressureOversampling(6);
+    }
+
+    @Test
+    public void setFilter() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setFilter(Bmx280.FILTER_16);
+        Mockito.verify(mI2c).writeRegByte(0xF5, (byte) 0b00010000);
+        bmx280.setFilter(Bmx280.FILTER_4);
+        Mockito.verify(mI2c).writeRegByte(0xF5, (byte) 0b00001000);
+    }
+
+    @Test
+    public void setStandbyTime() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setStandbyTime(Bmx280.STANDBY_1000_MS);
+        Mockito.verify(mI2c).writeRegByte(0xF5, (byte) 0b10100000);
+    }
+
+    @Test
+    public void setStandbyTime_sleepsWhileWritingInNormalMode() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        bmx280.setStandbyTime(Bmx280.STANDBY_125_MS);
+        verifyRegisterWrites(0xF4, 0b00100000, 0xF5, 0b01000000, 0xF4, 0b00100011);
+    }
+
+    @Test
+    public void setConfiguration_writesInOneTransaction() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setMode(Bmx280.MODE_NORMAL);
+        Mockito.reset(mI2c);
+
+        bmx280.setConfiguration(new Bmx280.Configuration()
+                .setTemperatureOversampling(Bmx280.OVERSAMPLING_2X)
+                .setPressureOversampling(Bmx280.OVERSAMPLING_16X)
+                .setFilter(Bmx280.FILTER_16)
+                .setStandbyTime(Bmx280.STANDBY_62_5_MS));
+        verifyRegisterWrites(0xF4, 0b01010100, 0xF5, 0b00110000, 0xF4, 0b01010111);
+        Mockito.verifyNoMoreInteractions(mI2c);
+
+        Bmx280.Configuration configuration = bmx280.getConfiguration();
+        Assert.assertEquals(Bmx280.OVERSAMPLING_2X, configuration.getTemperatureOversampling());
+        Assert.assertEquals(Bmx280.OVERSAMPLING_16X, configuration.getPressureOversampling());
+        Assert.assertEquals(Bmx280.FILTER_16, configuration.getFilter());
+        Assert.assertEquals(Bmx280.STANDBY_62_5_MS, configuration.getStandbyTime());
+    }
+
+    @Test
+    public void setConfiguration_throwsIfClosed() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.close();
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.setConfiguration(new Bmx280.Configuration());
+    }
+
+    @Test
+    public void setMode_forced() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setMode(Bmx280.MODE_FORCED);
+        // Each write in forced mode triggers a new conversion
+        bmx280.setMode(Bmx280.MODE_FORCED);
+        Mockito.verify(mI2c, times(2)).writeRegByte(0xF4, (byte) 0b00100001);
+    }
+
+    @Test
+    public void setMode_forcedRestoredOnFailure() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        Mockito.doThrow(new IOException()).when(mI2c).writeRegByte(0xF4, (byte) 0b00100001);
+        try {
+            bmx280.setMode(Bmx280.MODE_FORCED);
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+        }
+
+        // The next setter must not trigger a conversion
+        Mockito.reset(mI2c);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
+        Mockito.verify(mI2c).writeRegByte(0xF4, (byte) 0b00100100);
+    }
+
+    @Test
+    public void computeMeasurementTime() {
+        Assert.assertEquals(6425, Bmx280.computeMeasurementTime(
+                Bmx280.OVERSAMPLING_1X, Bmx280.OVERSAMPLING_1X, Bmx280.OVERSAMPLING_SKIPPED));
+        Assert.assertEquals(43225, Bmx280.computeMeasurementTime(
+                Bmx280.OVERSAMPLING_2X, Bmx280.OVERSAMPLING_16X, Bmx280.OVERSAMPLING_SKIPPED));
+        Assert.assertEquals(3550, Bmx280.computeMeasurementTime(
+                Bmx280.OVERSAMPLING_1X, Bmx280.OVERSAMPLING_SKIPPED, Bmx280.OVERSAMPLING_SKIPPED));
+        Assert.assertEquals(9300, Bmx280.computeMeasurementTime(
+                Bmx280.OVERSAMPLING_1X, Bmx280.OVERSAMPLING_1X, Bmx280.OVERSAMPLING_1X));
+    }
+
+    @Test
+    public void measureTemperatureAndPressure() throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_4X);
+        Mockito.reset(mI2c);
+        Mockito.when(mI2c.readRegByte(0xF3)).thenReturn((byte) 0b00001000, (byte) 0);
+
+        bmx280.measureTemperatureAndPressure();
+        InOrder inOrder = Mockito.inOrder(mI2c);
+        inOrder.verify(mI2c).writeRegByte(0xF4, (byte) 0b00101101);
+        inOrder.verify(mI2c, times(2)).readRegByte(0xF3);
+        inOrder.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Mockito.verifyNoMoreInteractions(mI2c);
+    }
+
+    @Test
+    public void measureTemperatureAndPressure_throwsIfPressureOversamplingSkipped()
+            throws IOException {
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.measureTemperatureAndPressure();
+    }
+
+    @Test
+    public void setHumidityOversampling() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_4X);
+        // ctrl_hum is followed by a write to ctrl_meas for the change to take effect
+        verifyRegisterWrites(0xF2, 0b00000011, 0xF4, 0);
+    }
+
+    @Test
+    public void setHumidityOversampling_throwsIfNotSupported() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.setHumidityOversampling(Bmx280.OVERSAMPLING_1X);
+    }
+
+    @Test
+    public void setConfiguration_writesHumidity() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setConfiguration(new Bmx280.Configuration()
+                .setHumidityOversampling(Bmx280.OVERSAMPLING_8X));
+        // The config register is unchanged
+        verifyRegisterWrites(0xF2, 0b00000100, 0xF4, 0b00100100);
+    }
+
+    @Test
+    public void readTemperaturePressureAndHumidity() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setConfiguration(new Bmx280.Configuration());
+        bmx280.readTemperaturePressureAndHumidity();
+        Mockito.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(8));
+        Mockito.verify(mI2c, never()).readRegBuffer(eq(0xFD), any(byte[].class), anyInt());
+    }
+
+    @Test
+    public void readHumidity_throwsIfNotSupported() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BMP280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.readHumidity();
+    }
+
+    @Test
+    public void readHumidity_throwsIfHumidityOversamplingSkipped() throws IOException {
+        Mockito.when(mI2c.readRegByte(0xD0)).thenReturn((byte) Bmx280.CHIP_ID_BME280);
+        Bmx280 bmx280 = new Bmx280(mI2c);
+        bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
+        mExpectedException.expect(IllegalStateException.class);
+        bmx280.readHumidity();
+    }
+
     @Test
     public void readTemperature() throws IOException {
         Bmx280 bmx280 = new Bmx280(mI2c);
@@ -194,8 +766,9 @@ public class Bmx280Test {
         bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
         bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
         bmx280.readTemperatureAndPressure();
-        Mockito.verify(mI2c).readRegBuffer(eq(0xFA), any(byte[].class), eq(3));
-        Mockito.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(3));
+        // Temperature and pressure are read in a single burst
+        Mockito.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Mockito.verify(mI2c, never()).readRegBuffer(eq(0xFA), any(byte[].class), anyInt());
     }
 
     @Test
@@ -236,8 +809,9 @@ public class Bmx280Test {
         bmx280.setTemperatureOversampling(Bmx280.OVERSAMPLING_1X);
         bmx280.setPressureOversampling(Bmx280.OVERSAMPLING_1X);
         bmx280.readTemperatureAndPressure();
-        Mockito.verify(mI2c).readRegBuffer(eq(0xFA), any(byte[].class), eq(3));
-        Mockito.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(3));
+        // Temperature and pressure are read in a single burst
+        Mockito.verify(mI2c).readRegBuffer(eq(0xF7), any(byte[].class), eq(6));
+        Mockito.verify(mI2c, never()).readRegBuffer(eq(0xFA), any(byte[].class), anyInt());
     }
 
     @Test
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * Earth geometry constants shared by the track filter and the geofence
+ * monitor. Distances use a local equirectangular projection, accurate
+ * over the short distances between consecutive fixes.
+ */
+/*package*/ final class GeoMath {
+
+    // Mean Earth radius, in meters
+    /*package*/ static final double EARTH_RADIUS = 6371008.8;
+    // Meters per degree of latitude, and of longitude at the equator
+    /*package*/ static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Return the number of meters per degree of longitude at the given latitude.
+     */
+    /*package*/ static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+import java.util.Arrays;
+
+/**
+ * Polygonal area monitored by a {@link GeofenceMonitor}.
+ *
+ * Vertices are given in degrees and edges are treated as straight lines
+ * in latitude/longitude space, which is accurate for fences spanning a
+ * few kilometers. Fences crossing the antimeridian are not supported.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Geofence {
+
+    private final String mId;
+    /*package*/ final double[] mLatitudes;
+    /*package*/ final double[] mLongitudes;
+
+    // Bounding box, in degrees
+    /*package*/ final double mMinLatitude;
+    /*package*/ final double mMaxLatitude;
+    /*package*/ final double mMinLongitude;
+    /*package*/ final double mMaxLongitude;
+
+    /**
+     * Create a new polygonal geofence.
+     *
+     * @param id Identifier reported with the fence events.
+     * @param latitudes Latitudes of the polygon vertices, in degrees.
+     * @param longitudes Longitudes of the polygon vertices, in degrees.
+     */
+    public Geofence(String id, double[] latitudes, double[] longitudes) {
+        if (latitudes == null || longitudes == null || latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Vertex arrays must have the same length");
+        }
+        if (latitudes.length < 3) {
+            throw new IllegalArgumentException("A geofence needs at least 3 vertices");
+        }
+        mId = id;
+        mLatitudes = Arrays.copyOf(latitudes, latitudes.length);
+        mLongitudes = Arrays.copyOf(longitudes, longitudes.length);
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < latitudes.length; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLng = Math.min(minLng, longitudes[i]);
+            maxLng = Math.max(maxLng, longitudes[i]);
+        }
+        mMinLatitude = minLat;
+        mMaxLatitude = maxLat;
+        mMinLongitude = minLng;
+        mMaxLongitude = maxLng;
+    }
+
+    /**
+     * Return the identifier of this geofence.
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Return true if the given point lies inside the polygon.
+     *
+     * @param latitude Latitude, in degrees
+     * @param longitude Longitude, in degrees
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < mMinLatitude || latitude > mMaxLatitude
+                || longitude < mMinLongitude || longitude > mMaxLongitude) {
+            return false;
+        }
+
+        // Ray casting along the latitude of the point
+        boolean inside = false;
+        int count = mLatitudes.length;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            double latI = mLatitudes[i];
+            double latJ = mLatitudes[j];
+            if ((latI > latitude) != (latJ > latitude)) {
+                double crossing = mLongitudes[i] + (latitude - latI)
+                        * (mLongitudes[j] - mLongitudes[i]) / (latJ - latI);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Return the squared distance from a point to the closest edge, in
+     * units defined by the given scale factors.
+     *
+     * @param latitudeScale Distance units per degree of latitude.
+     * @param longitudeScale Distance units per degree of longitude.
+     */
+    /*package*/ double edgeDistanceSquared(double latitude, double longitude,
+                                           double latitudeScale, double longitudeScale) {
+        double min = Double.MAX_VALUE;
+        int count = mLatitudes.length;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            // Segment endpoints relative to the point
+            double ax = (mLongitudes[j] - longitude) * longitudeScale;
+            double ay = (mLatitudes[j] - latitude) * latitudeScale;
+            double bx = (mLongitudes[i] - longitude) * longitudeScale;
+            double by = (mLatitudes[i] - latitude) * latitudeScale;
+
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = 0;
+            if (lengthSquared > 0) {
+                t = -(ax * dx + ay * dy) / lengthSquared;
+                t = Math.max(0, Math.min(1, t));
+            }
+            double x = ax + t * dx;
+            double y = ay + t * dy;
+            min = Math.min(min, x * x + y * y);
+        }
+        return min;
+    }
+}
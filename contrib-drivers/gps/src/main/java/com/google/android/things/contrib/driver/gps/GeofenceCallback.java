@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * Callback invoked when a {@link GeofenceMonitor} detects
+ * a transition across a geofence.
+ */
+public abstract class GeofenceCallback {
+    /**
+     * Callback reporting that the position entered a geofence.
+     *
+     * @param geofence The geofence that was entered.
+     * @param timestamp Timestamp of the fix, in milliseconds.
+     */
+    public abstract void onGeofenceEnter(Geofence geofence, long timestamp);
+
+    /**
+     * Callback reporting that the position left a geofence.
+     *
+     * @param geofence The geofence that was left.
+     * @param timestamp Timestamp of the fix, in milliseconds.
+     */
+    public abstract void onGeofenceExit(Geofence geofence, long timestamp);
+}
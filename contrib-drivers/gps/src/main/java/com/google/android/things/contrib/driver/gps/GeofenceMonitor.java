@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reports enter and exit events for a set of {@link Geofence}s from
+ * the position updates of a GPS module.
+ *
+ * Fence bounding boxes are indexed in a uniform latitude/longitude grid,
+ * so each fix only runs point-in-polygon tests for the fences near it.
+ * A transition is only reported once the position is further than the
+ * hysteresis distance from the fence boundary, which prevents a receiver
+ * parked on the edge of a fence from toggling on position noise.
+ * Processing a fix does not allocate; the index is rebuilt when fences
+ * are added or removed.
+ *
+ * Fences can be added and removed from any thread, but not from the
+ * {@link GeofenceCallback}, which is invoked on the thread delivering
+ * the position updates.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GeofenceMonitor extends GpsModuleCallback {
+
+    /**
+     * Default size of the grid cells, in degrees (about 1 km).
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    private final double mCellSize;
+    private final List<Geofence> mGeofences = new ArrayList<>();
+    private GeofenceCallback mCallback;
+    private float mHysteresis;
+
+    // Grid index: sorted cell keys, and for each cell the range of
+    // mCellFences holding the indices of the overlapping fences.
+    private boolean mIndexDirty = true;
+    private long[] mCellKeys = new long[0];
+    private int[] mCellStart = new int[1];
+    private int[] mCellFences = new int[0];
+
+    // Per-fence state, indexed like mGeofences
+    private boolean[] mInside = new boolean[0];
+    private int[] mVisited = new int[0];
+    private int mGeneration;
+    private int[] mInsideList = new int[0];
+    private int mInsideCount;
+    // Set while processing a position update, to reject changes from the callback
+    private boolean mUpdating;
+
+    /**
+     * Create a new GeofenceMonitor using the default grid cell size.
+     */
+    public GeofenceMonitor() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a new GeofenceMonitor.
+     *
+     * @param cellSize Size of the index grid cells, in degrees. Should be
+     *                 close to the typical size of the fences.
+     */
+    public GeofenceMonitor(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        mCellSize = cellSize;
+    }
+
+    /**
+     * Register a callback to be invoked on geofence transitions.
+     *
+     * @param callback The callback to invoke, or null to remove the current callback.
+     */
+    public void setGeofenceCallback(GeofenceCallback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Set the distance the position must move past a fence boundary before
+     * a transition is reported.
+     *
+     * @param meters hysteresis distance, in meters.
+     */
+    public synchronized void setHysteresis(float meters) {
+        if (meters < 0) {
+            throw new IllegalArgumentException("Hysteresis cannot be negative");
+        }
+        mHysteresis = meters;
+        mIndexDirty = true;
+    }
+
+    /**
+     * Return the hysteresis distance, in meters.
+     */
+    public float getHysteresis() {
+        return mHysteresis;
+    }
+
+    /**
+     * Start monitoring a geofence. The position is initially considered
+     * outside the fence.
+     */
+    public synchronized void addGeofence(Geofence geofence) {
+        if (geofence == null) {
+            throw new IllegalArgumentException("geofence cannot be null");
+        }
+        checkNotUpdating();
+        if (mGeofences.contains(geofence)) {
+            return;
+        }
+        mGeofences.add(geofence);
+        int count = mGeofences.size();
+        mInside = Arrays.copyOf(mInside, count);
+        mVisited = Arrays.copyOf(mVisited, count);
+        mInsideList = Arrays.copyOf(mInsideList, count);
+        mIndexDirty = true;
+    }
+
+    /**
+     * Stop monitoring a geofence. No exit event is reported.
+     */
+    public synchronized void removeGeofence(Geofence geofence) {
+        checkNotUpdating();
+        int index = mGeofences.indexOf(geofence);
+        if (index < 0) {
+            return;
+        }
+        int count = mGeofences.size();
+        mGeofences.remove(index);
+        System.arraycopy(mInside, index + 1, mInside, index, count - index - 1);
+        mInside = Arrays.copyOf(mInside, count - 1);
+        mVisited = new int[count - 1];
+        mInsideCount = 0;
+        mInsideList = new int[count - 1];
+        for (int i = 0; i < count - 1; i++) {
+            if (mInside[i]) {
+                mInsideList[mInsideCount++] = i;
+            }
+        }
+        mIndexDirty = true;
+    }
+
+    /**
+     * Return true if the last position was reported inside the given geofence.
+     */
+    public synchronized boolean isInside(Geofence geofence) {
+        int index = mGeofences.indexOf(geofence);
+        return index >= 0 && mInside[index];
+    }
+
+    @Override
+    public void onGpsSatelliteStatus(boolean active, int satellites) { }
+
+    @Override
+    public void onGpsTimeUpdate(long timestamp) { }
+
+    @Override
+    public synchronized void onGpsPositionUpdate(long timestamp,
+                                    double latitude, double longitude, double altitude) {
+        if (mIndexDirty) {
+            buildIndex();
+        }
+        mUpdating = true;
+        try {
+            processPosition(timestamp, latitude, longitude);
+        } finally {
+            mUpdating = false;
+        }
+    }
+
+    @Override
+    public void onGpsSpeedUpdate(float speed, float bearing) { }
+
+    private void processPosition(long timestamp, double latitude, double longitude) {
+
+        mGeneration++;
+        double longitudeScale = GeoMath.metersPerDegreeLongitude(latitude);
+
+        // Test the fences whose expanded bounding box overlaps the cell
+        int cell = Arrays.binarySearch(mCellKeys, getCellKey(latitude, longitude));
+        if (cell >= 0) {
+            for (int i = mCellStart[cell]; i < mCellStart[cell + 1]; i++) {
+                int index = mCellFences[i];
+                mVisited[index] = mGeneration;
+                update(index, timestamp, latitude, longitude, longitudeScale);
+            }
+        }
+
+        // Any fence we are inside but that is not near the position has been left
+        for (int i = mInsideCount - 1; i >= 0; i--) {
+            int index = mInsideList[i];
+            if (mVisited[index] != mGeneration) {
+                setInside(index, false, timestamp);
+            }
+        }
+    }
+
+    private void checkNotUpdating() {
+        if (mUpdating) {
+            throw new IllegalStateException("Geofences cannot change during a position update");
+        }
+    }
+
+    private void update(int index, long timestamp,
+                        double latitude, double longitude, double longitudeScale) {
+        Geofence geofence = mGeofences.get(index);
+        boolean inside = geofence.contains(latitude, longitude);
+        if (inside == mInside[index]) {
+            return;
+        }
+
+        if (mHysteresis > 0) {
+            double distanceSquared = geofence.edgeDistanceSquared(latitude, longitude,
+                    GeoMath.METERS_PER_DEGREE, longitudeScale);
+            if (distanceSquared < (double) mHysteresis * mHysteresis) {
+                // Too close to the boundary to decide
+                return;
+            }
+        }
+        setInside(index, inside, timestamp);
+    }
+
+    private void setInside(int index, boolean inside, long timestamp) {
+        mInside[index] = inside;
+        if (inside) {
+            mInsideList[mInsideCount++] = index;
+        } else {
+            for (int i = 0; i < mInsideCount; i++) {
+                if (mInsideList[i] == index) {
+                    mInsideList[i] = mInsideList[--mInsideCount];
+                    break;
+                }
+            }
+        }
+
+        if (mCallback != null) {
+            Geofence geofence = mGeofences.get(index);
+            if (inside) {
+                mCallback.onGeofenceEnter(geofence, timestamp);
+            } else {
+                mCallback.onGeofenceExit(geofence, timestamp);
+            }
+        }
+    }
+
+    private long getCellKey(double latitude, double longitude) {
+        return getCellKey((int) Math.floor(latitude / mCellSize),
+                (int) Math.floor(longitude / mCellSize));
+    }
+
+    private static long getCellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Rebuild the grid index over the fence bounding boxes, expanded by
+     * the hysteresis distance.
+     */
+    private void buildIndex() {
+        TreeMap<Long, List<Integer>> cells = new TreeMap<>();
+        double latitudeMargin = mHysteresis / GeoMath.METERS_PER_DEGREE;
+        int entries = 0;
+        for (int index = 0; index < mGeofences.size(); index++) {
+            Geofence geofence = mGeofences.get(index);
+            double maxAbsLatitude = Math.min(89,
+                    Math.max(Math.abs(geofence.mMinLatitude), Math.abs(geofence.mMaxLatitude)));
+            double longitudeMargin = latitudeMargin / Math.cos(Math.toRadians(maxAbsLatitude));
+
+            int minRow = (int) Math.floor((geofence.mMinLatitude - latitudeMargin) / mCellSize);
+            int maxRow = (int) Math.floor((geofence.mMaxLatitude + latitudeMargin) / mCellSize);
+            int minColumn = (int) Math.floor((geofence.mMinLongitude - longitudeMargin) / mCellSize);
+            int maxColumn = (int) Math.floor((geofence.mMaxLongitude + longitudeMargin) / mCellSize);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    long key = getCellKey(row, column);
+                    List<Integer> fences = cells.get(key);
+                    if (fences == null) {
+                        fences = new ArrayList<>();
+                        cells.put(key, fences);
+                    }
+                    fences.add(index);
+                    entries++;
+                }
+            }
+        }
+
+        // Flatten into sorted arrays for allocation-free lookups
+        mCellKeys = new long[cells.size()];
+        mCellStart = new int[cells.size() + 1];
+        mCellFences = new int[entries];
+        int cell = 0;
+        int position = 0;
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            mCellKeys[cell] = entry.getKey();
+            mCellStart[cell] = position;
+            for (Integer index : entry.getValue()) {
+                mCellFences[position++] = index;
+            }
+            cell++;
+        }
+        mCellStart[cell] = position;
+        mIndexDirty = false;
+    }
+}
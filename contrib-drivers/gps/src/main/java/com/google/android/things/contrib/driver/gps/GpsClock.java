@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import com.google.android.things.pio.Gpio;
+import com.google.android.things.pio.GpioCallback;
+import com.google.android.things.pio.PeripheralManagerService;
+
+import java.io.IOException;
+
+/**
+ * Clock disciplined by the time reported by a GPS module.
+ *
+ * Each time update from the module is paired with the monotonic
+ * {@link SystemClock#elapsedRealtimeNanos()} clock. The offset and drift
+ * between both clocks are estimated with a least-squares fit over the
+ * recent updates, which lets other drivers convert their monotonic sample
+ * timestamps to UTC with a few arithmetic operations.
+ *
+ * NMEA sentences report whole seconds and arrive some time after the
+ * second started, so updates alone are only accurate to about half a second,
+ * too coarse to estimate the drift: the monotonic clock is then assumed to
+ * run at the GPS rate, within 100 ppm.
+ * When the module pulse-per-second (PPS) output is connected to a GPIO, the
+ * rising edge marks the start of the second reported by the next sentence,
+ * which brings the accuracy down to the GPIO interrupt latency.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GpsClock extends GpsModuleCallback implements AutoCloseable {
+    private static final String TAG = "GpsClock";
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Uncertainty of a single sample, in milliseconds
+    private static final long NMEA_UNCERTAINTY = 500;
+    private static final long PPS_UNCERTAINTY = 1;
+    // Offset used to center NMEA samples within the reported second
+    private static final long NMEA_OFFSET = 500;
+    // Drift assumed between samples when bounding the error, in parts per million
+    private static final double MAX_DRIFT_PPM = 100;
+
+    private static final int WINDOW_SIZE = 64;
+
+    private Gpio mPpsGpio;
+    private volatile long mLastPulse;
+
+    // Recent samples, relative to the newest one
+    private final long[] mMonotonic = new long[WINDOW_SIZE];
+    private final long[] mUtc = new long[WINDOW_SIZE];
+    private int mSampleCount;
+    private int mNextSample;
+    private boolean mPpsSamples;
+
+    private volatile Mapping mMapping;
+
+    /**
+     * Monotonic to UTC conversion, replaced as a whole after every sample so
+     * that readers never need to lock.
+     */
+    private static final class Mapping {
+        final long mReferenceMonotonic;
+        final long mReferenceUtc;
+        final double mOffset;
+        final double mRate;
+        final long mError;
+        final double mDriftBound;
+
+        Mapping(long referenceMonotonic, long referenceUtc, double offset, double rate,
+                long error, double driftBound) {
+            mReferenceMonotonic = referenceMonotonic;
+            mReferenceUtc = referenceUtc;
+            mOffset = offset;
+            mRate = rate;
+            mError = error;
+            mDriftBound = driftBound;
+        }
+    }
+
+    /**
+     * Create a new GpsClock using only the time reported by the GPS module.
+     */
+    public GpsClock() {
+    }
+
+    /**
+     * Create a new GpsClock using the PPS output of the GPS module.
+     *
+     * @param ppsPin GPIO pin where the PPS output is attached.
+     */
+    public GpsClock(String ppsPin) throws IOException {
+        PeripheralManagerService pioService = new PeripheralManagerService();
+        Gpio gpio = pioService.openGpio(ppsPin);
+        try {
+            connect(gpio);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructor invoked from unit tests.
+     */
+    @VisibleForTesting
+    /*package*/ GpsClock(Gpio ppsGpio) throws IOException {
+        connect(ppsGpio);
+    }
+
+    private void connect(Gpio ppsGpio) throws IOException {
+        mPpsGpio = ppsGpio;
+        mPpsGpio.setDirection(Gpio.DIRECTION_IN);
+        mPpsGpio.setEdgeTriggerType(Gpio.EDGE_RISING);
+        mPpsGpio.registerGpioCallback(mPpsCallback);
+    }
+
+    /**
+     * Callback capturing the monotonic time of each PPS edge.
+     */
+    private GpioCallback mPpsCallback = new GpioCallback() {
+        @Override
+        public boolean onGpioEdge(Gpio gpio) {
+            mLastPulse = SystemClock.elapsedRealtimeNanos();
+            return true;
+        }
+
+        @Override
+        public void onGpioError(Gpio gpio, int error) {
+            Log.w(TAG, "PPS error: " + error);
+        }
+    };
+
+    /**
+     * Return true once the clock received a time update from the GPS module.
+     */
+    public boolean isSynchronized() {
+        return mMapping != null;
+    }
+
+    /**
+     * Convert a monotonic timestamp to UTC.
+     *
+     * @param elapsedRealtimeNanos Timestamp from {@link SystemClock#elapsedRealtimeNanos()}.
+     * @return UTC time, in milliseconds since the epoch.
+     * @throws IllegalStateException if the clock is not synchronized yet.
+     */
+    public long getUtcTime(long elapsedRealtimeNanos) {
+        Mapping mapping = getMapping();
+        double elapsed = (double) (elapsedRealtimeNanos - mapping.mReferenceMonotonic)
+                / NANOS_PER_MILLI;
+        return mapping.mReferenceUtc + Math.round(mapping.mOffset + mapping.mRate * elapsed);
+    }
+
+    /**
+     * Return the current UTC time, in milliseconds since the epoch.
+     *
+     * @throws IllegalStateException if the clock is not synchronized yet.
+     */
+    public long currentTimeMillis() {
+        return getUtcTime(SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * Return the maximum error of {@link #getUtcTime(long)} for the given timestamp,
+     * in milliseconds. The bound grows with the time since the last update.
+     *
+     * @param elapsedRealtimeNanos Timestamp from {@link SystemClock#elapsedRealtimeNanos()}.
+     * @throws IllegalStateException if the clock is not synchronized yet.
+     */
+    public long getErrorBound(long elapsedRealtimeNanos) {
+        Mapping mapping = getMapping();
+        long elapsed = Math.abs(elapsedRealtimeNanos - mapping.mReferenceMonotonic);
+        return mapping.mError
+                + (long) Math.ceil(elapsed * mapping.mDriftBound / 1e6 / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Return the estimated drift of the monotonic clock relative to GPS time,
+     * in parts per million. Positive values mean the monotonic clock runs slow.
+     * The drift is only estimated from PPS updates, and is 0 otherwise.
+     *
+     * @throws IllegalStateException if the clock is not synchronized yet.
+     */
+    public double getDrift() {
+        return (getMapping().mRate - 1) * 1e6;
+    }
+
+    private Mapping getMapping() {
+        Mapping mapping = mMapping;
+        if (mapping == null) {
+            throw new IllegalStateException("GPS clock not synchronized");
+        }
+        return mapping;
+    }
+
+    /**
+     * Close the PPS GPIO, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mPpsGpio != null) {
+            mPpsGpio.unregisterGpioCallback(mPpsCallback);
+            try {
+                mPpsGpio.close();
+            } finally {
+                mPpsGpio = null;
+            }
+        }
+    }
+
+    @Override
+    public void onGpsSatelliteStatus(boolean active, int satellites) { }
+
+    @Override
+    public void onGpsTimeUpdate(long timestamp) {
+        if (timestamp < 0) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtimeNanos();
+        long pulse = mLastPulse;
+        if (mPpsGpio != null && pulse != 0 && now - pulse < NANOS_PER_SECOND) {
+            // The sentence reports the second that started at the last pulse
+            addSample(pulse, timestamp, true);
+        } else {
+            addSample(now, timestamp + NMEA_OFFSET, false);
+        }
+    }
+
+    @Override
+    public void onGpsPositionUpdate(long timestamp,
+                                    double latitude, double longitude, double altitude) { }
+
+    @Override
+    public void onGpsSpeedUpdate(float speed, float bearing) { }
+
+    /**
+     * Add a pair of simultaneous monotonic and UTC timestamps, and update the mapping.
+     */
+    @VisibleForTesting
+    /*package*/ synchronized void addSample(long monotonic, long utc, boolean pps) {
+        long uncertainty = pps ? PPS_UNCERTAINTY : NMEA_UNCERTAINTY;
+        Mapping mapping = mMapping;
+        if (mapping != null) {
+            if (monotonic == mMonotonic[(mNextSample + WINDOW_SIZE - 1) % WINDOW_SIZE]) {
+                // Same pulse reported by several sentences
+                return;
+            }
+            long error = Math.abs(getUtcTime(monotonic) - utc);
+            if (pps != mPpsSamples || error > 2 * (getErrorBound(monotonic) + uncertainty)) {
+                // Sample source changed or the clock stepped, start over
+                mSampleCount = 0;
+            }
+        }
+        mPpsSamples = pps;
+
+        mMonotonic[mNextSample] = monotonic;
+        mUtc[mNextSample] = utc;
+        mNextSample = (mNextSample + 1) % WINDOW_SIZE;
+        if (mSampleCount < WINDOW_SIZE) {
+            mSampleCount++;
+        }
+
+        // Least-squares fit of UTC against monotonic time, relative to the newest sample
+        double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+        for (int i = 0; i < mSampleCount; i++) {
+            int index = (mNextSample + WINDOW_SIZE - 1 - i) % WINDOW_SIZE;
+            double x = (double) (mMonotonic[index] - monotonic) / NANOS_PER_MILLI;
+            double y = mUtc[index] - utc;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumXY += x * y;
+        }
+        double rate = 1;
+        if (pps && mSampleCount > 1) {
+            double denominator = mSampleCount * sumXX - sumX * sumX;
+            if (denominator != 0) {
+                // Only PPS samples are precise enough to fit the rate, still keep it within
+                // the assumed drift in case of outliers
+                double maxRate = MAX_DRIFT_PPM / 1e6;
+                rate = 1 + Math.max(-maxRate, Math.min(maxRate,
+                        (mSampleCount * sumXY - sumX * sumY) / denominator - 1));
+            }
+        }
+        double offset = (sumY - rate * sumX) / mSampleCount;
+
+        double maxResidual = 0;
+        for (int i = 0; i < mSampleCount; i++) {
+            int index = (mNextSample + WINDOW_SIZE - 1 - i) % WINDOW_SIZE;
+            double x = (double) (mMonotonic[index] - monotonic) / NANOS_PER_MILLI;
+            double y = mUtc[index] - utc;
+            maxResidual = Math.max(maxResidual, Math.abs(y - (offset + rate * x)));
+        }
+
+        // The actual drift is within MAX_DRIFT_PPM, wherever the fitted rate is in that range
+        mMapping = new Mapping(monotonic, utc, offset, rate,
+                uncertainty + (long) Math.ceil(maxResidual),
+                MAX_DRIFT_PPM + Math.abs(rate - 1) * 1e6);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * All data reported by a GPS module for a single epoch.
+ *
+ * Instances are pooled: a fix delivered to
+ * {@link GpsFixCallback#onGpsFix(GpsFix)} belongs to the receiver, which
+ * must call {@link #recycle()} once it no longer needs it. Fields are only
+ * meaningful when the matching {@code has*()} method returns true.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class GpsFix {
+
+    private static final int MAX_POOL_SIZE = 4;
+    private static final Object sPoolLock = new Object();
+    private static GpsFix sPool;
+    private static int sPoolSize;
+
+    /*package*/ static final int HAS_TIME = 1;
+    /*package*/ static final int HAS_POSITION = 1 << 1;
+    /*package*/ static final int HAS_ALTITUDE = 1 << 2;
+    /*package*/ static final int HAS_SPEED = 1 << 3;
+    /*package*/ static final int HAS_BEARING = 1 << 4;
+    /*package*/ static final int HAS_SATELLITES = 1 << 5;
+
+    /*package*/ int mFlags;
+    /*package*/ long mTimestamp;
+    /*package*/ double mLatitude;
+    /*package*/ double mLongitude;
+    /*package*/ double mAltitude;
+    /*package*/ float mSpeed;
+    /*package*/ float mBearing;
+    /*package*/ boolean mActive;
+    /*package*/ int mSatellites;
+
+    private GpsFix mNext;
+    private boolean mInPool;
+
+    private GpsFix() {
+    }
+
+    /**
+     * Return a cleared fix from the pool, or a new one if the pool is empty.
+     */
+    public static GpsFix obtain() {
+        synchronized (sPoolLock) {
+            if (sPool != null) {
+                GpsFix fix = sPool;
+                sPool = fix.mNext;
+                fix.mNext = null;
+                fix.mInPool = false;
+                sPoolSize--;
+                return fix;
+            }
+        }
+        return new GpsFix();
+    }
+
+    /**
+     * Return this fix to the pool. The fix must not be used afterwards.
+     */
+    public void recycle() {
+        if (mInPool) {
+            throw new IllegalStateException("GpsFix already recycled");
+        }
+        clear();
+        synchronized (sPoolLock) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mInPool = true;
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    /*package*/ void clear() {
+        mFlags = 0;
+        mTimestamp = 0;
+        mLatitude = 0;
+        mLongitude = 0;
+        mAltitude = 0;
+        mSpeed = 0;
+        mBearing = 0;
+        mActive = false;
+        mSatellites = 0;
+    }
+
+    /**
+     * Return true if this fix has a timestamp.
+     */
+    public boolean hasTime() {
+        return (mFlags & HAS_TIME) != 0;
+    }
+
+    /**
+     * Return the timestamp of the fix, in milliseconds.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Return true if this fix has a latitude and longitude.
+     */
+    public boolean hasPosition() {
+        return (mFlags & HAS_POSITION) != 0;
+    }
+
+    /**
+     * Return the latitude, in degrees.
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Return the longitude, in degrees.
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Return true if this fix has an altitude.
+     */
+    public boolean hasAltitude() {
+        return (mFlags & HAS_ALTITUDE) != 0;
+    }
+
+    /**
+     * Return the altitude, in meters, above WGS-84.
+     */
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    /**
+     * Return true if this fix has a speed.
+     */
+    public boolean hasSpeed() {
+        return (mFlags & HAS_SPEED) != 0;
+    }
+
+    /**
+     * Return the speed, in meters per second.
+     */
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    /**
+     * Return true if this fix has a heading.
+     */
+    public boolean hasBearing() {
+        return (mFlags & HAS_BEARING) != 0;
+    }
+
+    /**
+     * Return the heading, in degrees.
+     */
+    public float getBearing() {
+        return mBearing;
+    }
+
+    /**
+     * Return true if this fix has the satellite status.
+     */
+    public boolean hasSatellites() {
+        return (mFlags & HAS_SATELLITES) != 0;
+    }
+
+    /**
+     * Return true if the module has locked enough satellites to get a fix.
+     */
+    public boolean isActive() {
+        return mActive;
+    }
+
+    /**
+     * Return the number of satellites the module has locked.
+     */
+    public int getSatellites() {
+        return mSatellites;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * Callback invoked with the combined data emitted
+ * by a GPS module for each epoch.
+ */
+public abstract class GpsFixCallback {
+    /**
+     * Callback reporting all the data received for one epoch.
+     *
+     * A fix is delivered once the last sentence of its epoch is parsed. That
+     * sentence is learned from the order of the sentences of the previous
+     * epochs, so the first fix is only delivered when the module starts
+     * reporting the next epoch.
+     * The receiver owns the fix and must call {@link GpsFix#recycle()}
+     * when done with it.
+     *
+     * @param fix Data reported for the epoch.
+     */
+    public abstract void onGpsFix(GpsFix fix);
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * Streaming simplification stage for GPS position updates.
+ *
+ * Position fixes closer than a configurable distance to the last forwarded
+ * fix are dropped (radial distance filter), so a stationary or slow-moving
+ * receiver stops reporting near-identical positions. Speed updates following
+ * a dropped fix are dropped as well. The distance and bearing from the
+ * previous forwarded fix are computed once per forwarded fix and can be
+ * queried from the downstream callback.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GpsTrackFilter extends GpsModuleCallback {
+
+    private final GpsModuleCallback mCallback;
+
+    private double mMinDistanceSquared;
+    private long mMaxInterval;
+
+    private boolean mHasReference;
+    private long mReferenceTime;
+    private double mReferenceLatitude;
+    private double mReferenceLongitude;
+    // Meters per degree of longitude at the reference latitude
+    private double mReferenceLongitudeScale;
+    private boolean mDropped;
+
+    private float mDistance;
+    private float mBearing;
+    private double mTotalDistance;
+
+    /**
+     * Create a new GpsTrackFilter.
+     *
+     * @param callback Callback receiving the simplified updates. Cannot be null.
+     */
+    public GpsTrackFilter(GpsModuleCallback callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("callback cannot be null");
+        }
+        mCallback = callback;
+    }
+
+    /**
+     * Set the error bound of the filter. Fixes closer than this distance
+     * to the last forwarded fix are dropped. A value of 0 forwards all fixes.
+     *
+     * @param meters minimum distance between forwarded fixes, in meters.
+     */
+    public void setMinDistance(float meters) {
+        if (meters < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative");
+        }
+        mMinDistanceSquared = (double) meters * meters;
+    }
+
+    /**
+     * Return the minimum distance between forwarded fixes, in meters.
+     */
+    public float getMinDistance() {
+        return (float) Math.sqrt(mMinDistanceSquared);
+    }
+
+    /**
+     * Force a fix to be forwarded when no fix was forwarded for the given
+     * interval, regardless of the distance moved. A value of 0 disables
+     * the interval.
+     *
+     * @param interval maximum time between forwarded fixes, in milliseconds.
+     */
+    public void setMaxInterval(long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval cannot be negative");
+        }
+        mMaxInterval = interval;
+    }
+
+    /**
+     * Return the distance between the last two forwarded fixes, in meters.
+     */
+    public float getDistance() {
+        return mDistance;
+    }
+
+    /**
+     * Return the bearing from the previous forwarded fix to the last
+     * one, in degrees.
+     */
+    public float getBearing() {
+        return mBearing;
+    }
+
+    /**
+     * Return the total distance covered by the forwarded fixes, in meters.
+     */
+    public double getTotalDistance() {
+        return mTotalDistance;
+    }
+
+    /**
+     * Forget the last forwarded fix, so that the next fix is always forwarded.
+     */
+    public void reset() {
+        mHasReference = false;
+        mDropped = false;
+        mDistance = 0;
+        mBearing = 0;
+        mTotalDistance = 0;
+    }
+
+    @Override
+    public void onGpsSatelliteStatus(boolean active, int satellites) {
+        mCallback.onGpsSatelliteStatus(active, satellites);
+    }
+
+    @Override
+    public void onGpsTimeUpdate(long timestamp) {
+        mCallback.onGpsTimeUpdate(timestamp);
+    }
+
+    @Override
+    public void onGpsPositionUpdate(long timestamp,
+                                    double latitude, double longitude, double altitude) {
+        if (mHasReference) {
+            // Local equirectangular projection, accurate at the scale of the error bound
+            double dy = (latitude - mReferenceLatitude) * GeoMath.METERS_PER_DEGREE;
+            double dx = wrapLongitude(longitude - mReferenceLongitude) * mReferenceLongitudeScale;
+            double distanceSquared = dx * dx + dy * dy;
+
+            boolean expired = mMaxInterval > 0 && timestamp - mReferenceTime >= mMaxInterval;
+            if (distanceSquared < mMinDistanceSquared && !expired) {
+                mDropped = true;
+                return;
+            }
+
+            mDistance = (float) Math.sqrt(distanceSquared);
+            if (distanceSquared > 0) {
+                double bearing = Math.toDegrees(Math.atan2(dx, dy));
+                mBearing = (float) (bearing < 0 ? bearing + 360 : bearing);
+            }
+            mTotalDistance += mDistance;
+        }
+
+        setReference(timestamp, latitude, longitude);
+        mDropped = false;
+        mCallback.onGpsPositionUpdate(timestamp, latitude, longitude, altitude);
+    }
+
+    @Override
+    public void onGpsSpeedUpdate(float speed, float bearing) {
+        if (mDropped) {
+            return;
+        }
+        mCallback.onGpsSpeedUpdate(speed, bearing);
+    }
+
+    private void setReference(long timestamp, double latitude, double longitude) {
+        mHasReference = true;
+        mReferenceTime = timestamp;
+        mReferenceLongitude = longitude;
+        if (latitude != mReferenceLatitude || mReferenceLongitudeScale == 0) {
+            mReferenceLongitudeScale = GeoMath.metersPerDegreeLongitude(latitude);
+        }
+        mReferenceLatitude = latitude;
+    }
+
+    private static double wrapLongitude(double delta) {
+        if (delta > 180) {
+            return delta - 360;
+        } else if (delta < -180) {
+            return delta + 360;
+        }
+        return delta;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+/**
+ * Constants and helpers describing the on-disk GPS track format shared by
+ * {@link GpsTrackRecorder} and {@link GpsTrackReader}.
+ *
+ * A track file is a short header followed by fixed-size blocks. Every block
+ * starts with a keyframe holding the absolute values of a fix, followed by
+ * delta records encoded as zig-zag varints relative to the previous fix.
+ * Unused space at the end of a block is zero-filled. Since blocks have a fixed
+ * size, the keyframe of any block can be located without scanning the file.
+ */
+/*package*/ final class GpsTrackFormat {
+
+    // File header: magic ("GTRK") followed by the format version.
+    /*package*/ static final int MAGIC = 0x4754524B;
+    /*package*/ static final int VERSION = 1;
+    /*package*/ static final int HEADER_SIZE = 8;
+
+    /*package*/ static final int BLOCK_SIZE = 4096;
+
+    // Record tags. A zero tag marks the unused remainder of a block.
+    /*package*/ static final byte TAG_PADDING = 0;
+    /*package*/ static final byte TAG_KEYFRAME = 1;
+    /*package*/ static final byte TAG_DELTA = 2;
+
+    // tag + timestamp + latitude + longitude + altitude
+    /*package*/ static final int KEYFRAME_SIZE = 1 + 8 + 4 + 4 + 4;
+    // tag + worst case varints for a long and three ints
+    /*package*/ static final int MAX_DELTA_SIZE = 1 + 10 + 5 + 5 + 5;
+
+    // Coordinates are stored in units of 1e-7 degrees, altitude in centimeters.
+    /*package*/ static final double DEGREES_SCALE = 1e7;
+    /*package*/ static final double ALTITUDE_SCALE = 100.0;
+    /*package*/ static final int NO_ALTITUDE = Integer.MIN_VALUE;
+
+    private GpsTrackFormat() {
+    }
+
+    /*package*/ static long getBlockOffset(long block) {
+        return HEADER_SIZE + block * BLOCK_SIZE;
+    }
+
+    /*package*/ static int toFixedDegrees(double degrees) {
+        return (int) Math.round(degrees * DEGREES_SCALE);
+    }
+
+    /*package*/ static double fromFixedDegrees(int value) {
+        return value / DEGREES_SCALE;
+    }
+
+    /*package*/ static int toFixedAltitude(double altitude) {
+        if (altitude == -1) {
+            return NO_ALTITUDE;
+        }
+        return (int) Math.round(altitude * ALTITUDE_SCALE);
+    }
+
+    /*package*/ static double fromFixedAltitude(int value) {
+        if (value == NO_ALTITUDE) {
+            return -1;
+        }
+        return value / ALTITUDE_SCALE;
+    }
+
+    /**
+     * Write a zig-zag encoded varint into the buffer.
+     * @return the position following the encoded value.
+     */
+    /*package*/ static int writeVarLong(byte[] buffer, int position, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte) zigzag;
+        return position;
+    }
+
+    /*package*/ static int writeVarInt(byte[] buffer, int position, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte) zigzag;
+        return position;
+    }
+
+    /*package*/ static int writeLong(byte[] buffer, int position, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >> shift);
+        }
+        return position;
+    }
+
+    /*package*/ static int writeInt(byte[] buffer, int position, int value) {
+        buffer[position++] = (byte) (value >> 24);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+        return position;
+    }
+}
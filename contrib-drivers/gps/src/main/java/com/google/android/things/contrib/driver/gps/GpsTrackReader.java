@@ -0,0 +1,317 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams position fixes from a track file written by {@link GpsTrackRecorder}.
+ *
+ * The file is memory-mapped, and {@link #seek(long)} locates the block
+ * containing a given time with a binary search over the block keyframes,
+ * so reading a time range only touches the blocks it covers. Fixes are
+ * returned one at a time through the reader's getters without allocation:
+ * <pre>
+ * reader.seek(startTime);
+ * while (reader.next() &amp;&amp; reader.getTimestamp() &lt;= endTime) {
+ *     // use reader.getLatitude(), reader.getLongitude()...
+ * }
+ * </pre>
+ * The file contents are captured when the reader is created; fixes recorded
+ * afterwards are not visible until a new reader is opened. A record cut short,
+ * for example by a crash of the recorder, ends its block like padding.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GpsTrackReader implements AutoCloseable {
+
+    private RandomAccessFile mFile;
+    private MappedByteBuffer mBuffer;
+    private final long mBlockCount;
+
+    private long mBlockIndex;
+    private int mBlockStart;
+    private int mBlockLimit;
+    private int mPosition;
+    private boolean mPending;
+
+    private long mTimestamp;
+    private int mLatitude;
+    private int mLongitude;
+    private int mAltitude;
+
+    /**
+     * Open a track file for reading.
+     *
+     * @param file Track file written by {@link GpsTrackRecorder}.
+     */
+    public GpsTrackReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = mFile.getChannel();
+            long size = channel.size();
+            if (size < GpsTrackFormat.HEADER_SIZE) {
+                throw new IOException("Not a GPS track file");
+            }
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mBuffer.getInt(0) != GpsTrackFormat.MAGIC
+                    || mBuffer.getInt(4) != GpsTrackFormat.VERSION) {
+                throw new IOException("Not a GPS track file");
+            }
+            long data = size - GpsTrackFormat.HEADER_SIZE;
+            mBlockCount = (data + GpsTrackFormat.BLOCK_SIZE - 1) / GpsTrackFormat.BLOCK_SIZE;
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        rewind();
+    }
+
+    /**
+     * Position the reader before the first fix of the track.
+     */
+    public void rewind() {
+        loadBlock(0);
+    }
+
+    /**
+     * Position the reader so that the next call to {@link #next()} returns the
+     * first fix recorded at or after the given time. Assumes fixes were
+     * recorded in chronological order.
+     *
+     * @param timestamp Time to seek to, in milliseconds.
+     */
+    public void seek(long timestamp) {
+        checkOpen();
+
+        // Find the last block whose keyframe is not after the requested time
+        long low = 0;
+        long high = mBlockCount - 1;
+        long block = 0;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            if (getKeyframeTime(mid) <= timestamp) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        loadBlock(block);
+        while (next()) {
+            if (mTimestamp >= timestamp) {
+                mPending = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advance to the next fix in the track.
+     *
+     * @return true if a fix is available, false at the end of the track.
+     */
+    public boolean next() {
+        checkOpen();
+        if (mPending) {
+            mPending = false;
+            return true;
+        }
+
+        while (true) {
+            if (mPosition < mBlockLimit) {
+                byte tag = mBuffer.get(mPosition);
+                if (tag == GpsTrackFormat.TAG_KEYFRAME && readKeyframe()) {
+                    return true;
+                } else if (tag == GpsTrackFormat.TAG_DELTA && readDelta()) {
+                    return true;
+                }
+                // Padding or a partial record, the rest of the block is unused
+            }
+
+            if (mBlockIndex + 1 >= mBlockCount) {
+                mPosition = mBlockLimit;
+                return false;
+            }
+            loadBlock(mBlockIndex + 1);
+        }
+    }
+
+    /**
+     * Return the timestamp of the current fix, in milliseconds.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Return the latitude of the current fix, in degrees.
+     */
+    public double getLatitude() {
+        return GpsTrackFormat.fromFixedDegrees(mLatitude);
+    }
+
+    /**
+     * Return the longitude of the current fix, in degrees.
+     */
+    public double getLongitude() {
+        return GpsTrackFormat.fromFixedDegrees(mLongitude);
+    }
+
+    /**
+     * Return the altitude of the current fix, in meters.
+     * Will be -1 if altitude was not available.
+     */
+    public double getAltitude() {
+        return GpsTrackFormat.fromFixedAltitude(mAltitude);
+    }
+
+    /**
+     * Replay the fixes recorded within a time range to a callback.
+     *
+     * @param startTime Start of the range, inclusive, in milliseconds.
+     * @param endTime End of the range, inclusive, in milliseconds.
+     * @param callback Callback receiving a position update for each fix.
+     */
+    public void read(long startTime, long endTime, GpsModuleCallback callback) {
+        seek(startTime);
+        while (next() && mTimestamp <= endTime) {
+            callback.onGpsPositionUpdate(mTimestamp,
+                    getLatitude(), getLongitude(), getAltitude());
+        }
+    }
+
+    /**
+     * Return the offset in the file after the last complete record. Anything
+     * after it is a partial record or padding.
+     */
+    /*package*/ long getEndOffset() {
+        checkOpen();
+        if (mBlockCount == 0) {
+            return GpsTrackFormat.HEADER_SIZE;
+        }
+        loadBlock(mBlockCount - 1);
+        int end = mBlockStart;
+        while (next()) {
+            end = mPosition;
+        }
+        return end;
+    }
+
+    /**
+     * Release the mapping of the track file.
+     */
+    @Override
+    public void close() throws IOException {
+        mBuffer = null;
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } finally {
+                mFile = null;
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (mBuffer == null) {
+            throw new IllegalStateException("Track reader is closed");
+        }
+    }
+
+    private long getKeyframeTime(long block) {
+        int start = (int) GpsTrackFormat.getBlockOffset(block);
+        if (start + GpsTrackFormat.KEYFRAME_SIZE > mBuffer.limit()) {
+            // Partial keyframe at the end of the file, the block has no fix
+            return Long.MAX_VALUE;
+        }
+        return mBuffer.getLong(start + 1);
+    }
+
+    private void loadBlock(long block) {
+        mBlockIndex = block;
+        mBlockStart = (int) GpsTrackFormat.getBlockOffset(block);
+        mBlockLimit = Math.min(mBlockStart + GpsTrackFormat.BLOCK_SIZE, mBuffer.limit());
+        mPosition = mBlockStart;
+        mPending = false;
+    }
+
+    /**
+     * Read the keyframe at the current position.
+     *
+     * @return false if the keyframe does not fit in the block.
+     */
+    private boolean readKeyframe() {
+        if (mPosition + GpsTrackFormat.KEYFRAME_SIZE > mBlockLimit) {
+            return false;
+        }
+        int position = mPosition + 1;
+        mTimestamp = mBuffer.getLong(position);
+        mLatitude = mBuffer.getInt(position + 8);
+        mLongitude = mBuffer.getInt(position + 12);
+        mAltitude = mBuffer.getInt(position + 16);
+        mPosition += GpsTrackFormat.KEYFRAME_SIZE;
+        return true;
+    }
+
+    /**
+     * Read the delta record at the current position.
+     *
+     * @return false if the record ends past the block.
+     */
+    private boolean readDelta() {
+        int start = mPosition;
+        mPosition++;
+        long timestamp = readVarLong();
+        long latitude = readVarLong();
+        long longitude = readVarLong();
+        long altitude = readVarLong();
+        if (mPosition > mBlockLimit) {
+            mPosition = start;
+            return false;
+        }
+        mTimestamp += timestamp;
+        mLatitude += (int) latitude;
+        mLongitude += (int) longitude;
+        mAltitude += (int) altitude;
+        return true;
+    }
+
+    /**
+     * Decode a zig-zag encoded varint at the current position. Moves the
+     * position past the block limit if the varint is cut short.
+     */
+    private long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (mPosition >= mBlockLimit) {
+                mPosition = mBlockLimit + 1;
+                return 0;
+            }
+            b = mBuffer.get(mPosition++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
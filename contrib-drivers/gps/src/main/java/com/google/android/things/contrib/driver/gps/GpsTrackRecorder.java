@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.things.contrib.driver.gps;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records position fixes reported by a GPS module into a compact,
+ * append-only track file that can be read back with {@link GpsTrackReader}.
+ *
+ * Fixes are stored as fixed-point values, delta encoded against the previous
+ * fix with a full keyframe at the start of every block. Register the recorder
+ * with {@link NmeaGpsModule#setGpsModuleCallback(GpsModuleCallback)}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GpsTrackRecorder extends GpsModuleCallback implements AutoCloseable {
+    private static final String TAG = "GpsTrackRecorder";
+
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+
+    private final byte[] mBlock = new byte[GpsTrackFormat.BLOCK_SIZE];
+    private final ByteBuffer mBlockBuffer = ByteBuffer.wrap(mBlock);
+    private long mBlockIndex;
+    private int mBlockPosition;
+    private int mFlushedPosition;
+
+    private long mLastTimestamp;
+    private int mLastLatitude;
+    private int mLastLongitude;
+    private int mLastAltitude;
+
+    /**
+     * Create a new GpsTrackRecorder. If the file already contains a track,
+     * new fixes are appended starting with a new block.
+     *
+     * @param file Track file to append to. Created if it does not exist.
+     */
+    public GpsTrackRecorder(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        try {
+            mChannel = mFile.getChannel();
+            long size = mChannel.size();
+            if (size < GpsTrackFormat.HEADER_SIZE) {
+                writeHeader();
+                mBlockIndex = 0;
+            } else {
+                checkHeader();
+                size = truncatePartialRecord(file, size);
+                long data = size - GpsTrackFormat.HEADER_SIZE;
+                mBlockIndex = (data + GpsTrackFormat.BLOCK_SIZE - 1) / GpsTrackFormat.BLOCK_SIZE;
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GpsTrackFormat.HEADER_SIZE);
+        header.putInt(GpsTrackFormat.MAGIC);
+        header.putInt(GpsTrackFormat.VERSION);
+        header.flip();
+        mChannel.write(header, 0);
+    }
+
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GpsTrackFormat.HEADER_SIZE);
+        mChannel.read(header, 0);
+        header.flip();
+        if (header.getInt() != GpsTrackFormat.MAGIC
+                || header.getInt() != GpsTrackFormat.VERSION) {
+            throw new IOException("Not a GPS track file");
+        }
+    }
+
+    /**
+     * Remove a record cut short at the end of the file, for example by a crash
+     * while it was written. Otherwise the gap before the next block would read
+     * back as the rest of the record.
+     *
+     * @return the new size of the file.
+     */
+    private long truncatePartialRecord(File file, long size) throws IOException {
+        long end;
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            end = reader.getEndOffset();
+        }
+        if (end < size) {
+            Log.w(TAG, "Removing partial record at the end of " + file);
+            mChannel.truncate(end);
+            return end;
+        }
+        return size;
+    }
+
+    /**
+     * Append a position fix to the track. A fix with the same timestamp as the
+     * previous one is ignored, since modules report the position of an epoch
+     * in several sentences (e.g. GGA and RMC).
+     *
+     * @param timestamp Timestamp of the fix, in milliseconds.
+     * @param latitude Latitude, in degrees
+     * @param longitude Longitude, in degrees
+     * @param altitude Altitude, in meters, or -1 if not available.
+     */
+    public synchronized void record(long timestamp, double latitude, double longitude,
+                                    double altitude) throws IOException {
+        if (mChannel == null) {
+            throw new IllegalStateException("Track recorder is closed");
+        }
+        if (mBlockPosition != 0 && timestamp == mLastTimestamp) {
+            // Same epoch as the last fix recorded
+            return;
+        }
+
+        int lat = GpsTrackFormat.toFixedDegrees(latitude);
+        int lng = GpsTrackFormat.toFixedDegrees(longitude);
+        int alt = GpsTrackFormat.toFixedAltitude(altitude);
+
+        if (mBlockPosition + GpsTrackFormat.MAX_DELTA_SIZE > mBlock.length) {
+            // Block is full, the remainder is never written and reads back as padding
+            writeBlock();
+            mBlockIndex++;
+            mBlockPosition = 0;
+            mFlushedPosition = 0;
+        }
+
+        int position = mBlockPosition;
+        if (position == 0) {
+            mBlock[position++] = GpsTrackFormat.TAG_KEYFRAME;
+            position = GpsTrackFormat.writeLong(mBlock, position, timestamp);
+            position = GpsTrackFormat.writeInt(mBlock, position, lat);
+            position = GpsTrackFormat.writeInt(mBlock, position, lng);
+            position = GpsTrackFormat.writeInt(mBlock, position, alt);
+        } else {
+            // Integer overflow in the deltas wraps around and decodes back correctly
+            mBlock[position++] = GpsTrackFormat.TAG_DELTA;
+            position = GpsTrackFormat.writeVarLong(mBlock, position, timestamp - mLastTimestamp);
+            position = GpsTrackFormat.writeVarInt(mBlock, position, lat - mLastLatitude);
+            position = GpsTrackFormat.writeVarInt(mBlock, position, lng - mLastLongitude);
+            position = GpsTrackFormat.writeVarInt(mBlock, position, alt - mLastAltitude);
+        }
+        mBlockPosition = position;
+
+        mLastTimestamp = timestamp;
+        mLastLatitude = lat;
+        mLastLongitude = lng;
+        mLastAltitude = alt;
+    }
+
+    /**
+     * Write any buffered fixes to the track file.
+     */
+    public synchronized void flush() throws IOException {
+        if (mChannel != null) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write the unflushed part of the current block.
+     */
+    private void writeBlock() throws IOException {
+        if (mFlushedPosition == mBlockPosition) {
+            return;
+        }
+        long offset = GpsTrackFormat.getBlockOffset(mBlockIndex) + mFlushedPosition;
+        mBlockBuffer.limit(mBlockPosition);
+        mBlockBuffer.position(mFlushedPosition);
+        while (mBlockBuffer.hasRemaining()) {
+            offset += mChannel.write(mBlockBuffer, offset);
+        }
+        mFlushedPosition = mBlockPosition;
+    }
+
+    /**
+     * Flush the buffered fixes and close the track file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mFile != null) {
+            try {
+                if (mChannel != null) {
+                    writeBlock();
+                }
+            } finally {
+                mChannel = null;
+                try {
+                    mFile.close();
+                } finally {
+                    mFile = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onGpsSatelliteStatus(boolean active, int satellites) { }
+
+    @Override
+    public void onGpsTimeUpdate(long timestamp) { }
+
+    @Override
+    public void onGpsPositionUpdate(long timestamp,
+                                    double latitude, double longitude, double altitude) {
+        if (timestamp < 0) {
+            // No valid time for this fix
+            return;
+        }
+        try {
+            record(timestamp, latitude, longitude, altitude);
+        } catch (IOException | IllegalStateException e) {
+            Log.w(TAG, "Unable to record position", e);
+        }
+    }
+
+    @Override
+    public void onGpsSpeedUpdate(float speed, float bearing) { }
+}
@@ -37,6 +37,8 @@ public class NmeaGpsDriver implements AutoCloseable {
     private Context mContext;
     private GpsDriver mDriver;
     private NmeaGpsModule mGpsModule;
+    private GpsTrackFilter mTrackFilter;
+    private GpsClock mGpsClock;
 
     /**
      * Create a new NmeaGpsDriver to forward GPS location events to the
@@ -83,7 +85,21 @@ public class NmeaGpsDriver implements AutoCloseable {
         mContext = context.getApplicationContext();
         mGpsModule = module;
         mGpsModule.setGpsAccuracy(accuracy);
-        mGpsModule.setGpsModuleCallback(mCallback);
+        mTrackFilter = new GpsTrackFilter(mCallback);
+        mGpsModule.setGpsModuleCallback(mTrackFilter);
+    }
+
+    /**
+     * Drop position updates that moved less than the given distance since
+     * the last reported location. By default, every update is reported.
+     *
+     * @param meters minimum distance between reported locations, in meters.
+     * @param maxInterval maximum time between reported locations regardless
+     *                    of the distance moved, in milliseconds, or 0 for none.
+     */
+    public void setMinDistance(float meters, long maxInterval) {
+        mTrackFilter.setMinDistance(meters);
+        mTrackFilter.setMaxInterval(maxInterval);
     }
 
     /**
@@ -96,7 +112,11 @@ public class NmeaGpsDriver implements AutoCloseable {
         public void onGpsSatelliteStatus(boolean active, int satellites) { }
 
         @Override
-        public void onGpsTimeUpdate(long timestamp) { }
+        public void onGpsTimeUpdate(long timestamp) {
+            if (mGpsClock != null) {
+                mGpsClock.onGpsTimeUpdate(timestamp);
+            }
+        }
 
         @Override
         public void onGpsPositionUpdate(long timestamp,
@@ -141,6 +161,16 @@ public class NmeaGpsDriver implements AutoCloseable {
         }
     };
 
+    /**
+     * Discipline a {@link GpsClock} with the time updates received
+     * from the GPS module.
+     *
+     * @param clock The clock to update, or null to stop updating the current clock.
+     */
+    public void setGpsClock(GpsClock clock) {
+        mGpsClock = clock;
+    }
+
     /**
      * Register this driver with the Android location framework.
      */
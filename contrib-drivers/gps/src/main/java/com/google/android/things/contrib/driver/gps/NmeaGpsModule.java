@@ -114,6 +114,17 @@ public class NmeaGpsModule implements AutoCloseable {
         mParser.setGpsModuleCallback(callback);
     }
 
+    /**
+     * Register a callback to be invoked with the combined data of each
+     * epoch reported by the GPS module. This can be used together with
+     * {@link #setGpsModuleCallback(GpsModuleCallback)}.
+     *
+     * @param callback The callback to invoke, or null to remove the current callback.
+     */
+    public void setGpsFixCallback(GpsFixCallback callback) {
+        mParser.setGpsFixCallback(callback);
+    }
+
     /**
      * Close this device and any underlying resources associated with the connection.
      */
@@ -44,9 +44,20 @@ import java.util.TimeZone;
     private static final String GLL = "GPGLL";
     private static final String RMC = "GPRMC";
     private static final String VTG = "GPVTG";
+    private static final String ZDA = "GPZDA";
 
     private Calendar mTimestampCalendar;
     private GpsModuleCallback mGpsModuleCallback;
+    private GpsFixCallback mGpsFixCallback;
+
+    // Fix being assembled from the sentences of the current epoch
+    private GpsFix mPendingFix;
+    private String mEpochTime;
+    // Type of the last sentence of an epoch, learned from the previous epochs,
+    // and whether the fix of the current epoch was delivered on it
+    private String mSentenceType;
+    private String mClosingSentenceType;
+    private boolean mEpochClosed;
 
     /*package*/ NmeaParser() {
         // Initialize timestamp calendar to current time
@@ -57,6 +68,18 @@ import java.util.TimeZone;
         mGpsModuleCallback = callback;
     }
 
+    /*package*/ void setGpsFixCallback(GpsFixCallback callback) {
+        mGpsFixCallback = callback;
+        if (callback == null && mPendingFix != null) {
+            mPendingFix.recycle();
+            mPendingFix = null;
+            mEpochTime = null;
+            mSentenceType = null;
+            mClosingSentenceType = null;
+            mEpochClosed = false;
+        }
+    }
+
     /*package*/ byte getFrameStart() {
         return FRAME_START;
     }
@@ -94,9 +117,14 @@ import java.util.TimeZone;
             case VTG:
                 handleVelocityTrackData(tokens);
                 break;
+            case ZDA:
+                handleTimeAndDate(tokens);
+                break;
             default:
                 // Ignore the message
+                return;
         }
+        endSentence(tokens[0]);
     }
 
     /**
@@ -137,6 +165,7 @@ import java.util.TimeZone;
             Log.w(TAG, "Invalid GGA Message");
             return;
         }
+        beginEpoch(nmea[1]);
 
         int quality = Integer.parseInt(nmea[6]);
         int satelliteCount = Integer.parseInt(nmea[7]);
@@ -164,6 +193,7 @@ import java.util.TimeZone;
             Log.w(TAG, "Invalid GLL Message");
             return;
         }
+        beginEpoch(nmea[5]);
 
         String status = nmea[6];
         if (status.contains("V")) {
@@ -186,6 +216,7 @@ import java.util.TimeZone;
             Log.w(TAG, "Invalid RMC Message");
             return;
         }
+        beginEpoch(nmea[1]);
 
         String status = nmea[2];
         if (status.contains("V")) {
@@ -193,8 +224,16 @@ import java.util.TimeZone;
             return;
         }
 
-        long timestamp = getUpdatedTimestamp(nmea[1], nmea[9]);
-        postTime(timestamp);
+        long timestamp;
+        try {
+            timestamp = parseTimestamp(nmea[1], nmea[9]);
+            if (timestamp != -1) {
+                postTime(timestamp);
+            }
+        } catch (ParseException e) {
+            // Not a GPS time, keep the system time out of the time updates
+            timestamp = System.currentTimeMillis();
+        }
         double latitude = parseCoordinate(nmea[3], nmea[4]);
         double longitude = parseCoordinate(nmea[5], nmea[6]);
         postPosition(timestamp, latitude, longitude, -1);
@@ -219,7 +258,97 @@ import java.util.TimeZone;
         postSpeed(speed, bearing);
     }
 
+    /**
+     * Start a new epoch when a sentence with a new time arrives. The pending
+     * fix is delivered if the closing sentence of the previous epoch did not.
+     * @param timeString NMEA fix time string of the sentence
+     */
+    private void beginEpoch(String timeString) {
+        if (mGpsFixCallback == null || timeString.isEmpty()) {
+            return;
+        }
+        if (mEpochTime != null && !mEpochTime.equals(timeString)) {
+            deliverPendingFix();
+            // The sentence before this one was the last of the previous epoch
+            mClosingSentenceType = mSentenceType;
+            mEpochClosed = false;
+        }
+        mEpochTime = timeString;
+    }
+
+    /**
+     * Deliver the pending fix once the last sentence of the epoch is parsed.
+     * @param type NMEA type of the sentence
+     */
+    private void endSentence(String type) {
+        if (mGpsFixCallback == null) {
+            return;
+        }
+        mSentenceType = type;
+        if (type.equals(mClosingSentenceType) && !mEpochClosed) {
+            deliverPendingFix();
+            mEpochClosed = true;
+        }
+    }
+
+    private void deliverPendingFix() {
+        // Epochs without a valid sentence have no fix to deliver
+        if (mPendingFix != null) {
+            GpsFix fix = mPendingFix;
+            mPendingFix = null;
+            mGpsFixCallback.onGpsFix(fix);
+        }
+    }
+
+    /**
+     * Return the fix for the current epoch, or null if no fix callback is set
+     * or the fix of the epoch was already delivered.
+     */
+    private GpsFix getPendingFix() {
+        if (mGpsFixCallback == null || mEpochClosed) {
+            return null;
+        }
+        if (mPendingFix == null) {
+            mPendingFix = GpsFix.obtain();
+        }
+        return mPendingFix;
+    }
+
+    /**
+     * Parse the contents of a GPZDA sentence
+     * @param nmea Sentence tokens
+     */
+    private void handleTimeAndDate(String[] nmea) {
+        if (nmea.length < 5) {
+            Log.w(TAG, "Invalid ZDA Message");
+            return;
+        }
+
+        String day = nmea[2];
+        String month = nmea[3];
+        String year = nmea[4];
+        if (day.length() != 2 || month.length() != 2 || year.length() != 4) {
+            // No valid date
+            return;
+        }
+
+        try {
+            long timestamp = parseTimestamp(nmea[1], day + month + year.substring(2));
+            if (timestamp != -1) {
+                postTime(timestamp);
+            }
+        } catch (ParseException e) {
+            Log.w(TAG, "Invalid ZDA time");
+        }
+    }
+
     private void postSatelliteStatus(boolean active, int satellites) {
+        GpsFix fix = getPendingFix();
+        if (fix != null) {
+            fix.mActive = active;
+            fix.mSatellites = satellites;
+            fix.mFlags |= GpsFix.HAS_SATELLITES;
+        }
         if (mGpsModuleCallback != null) {
             mGpsModuleCallback.onGpsSatelliteStatus(active, satellites);
         }
@@ -232,12 +361,37 @@ import java.util.TimeZone;
     }
 
     private void postPosition(long timestamp, double latitude, double longitude, double altitude) {
+        GpsFix fix = getPendingFix();
+        if (fix != null) {
+            if (timestamp != -1) {
+                fix.mTimestamp = timestamp;
+                fix.mFlags |= GpsFix.HAS_TIME;
+            }
+            fix.mLatitude = latitude;
+            fix.mLongitude = longitude;
+            fix.mFlags |= GpsFix.HAS_POSITION;
+            if (altitude != -1) {
+                fix.mAltitude = altitude;
+                fix.mFlags |= GpsFix.HAS_ALTITUDE;
+            }
+        }
         if (mGpsModuleCallback != null) {
             mGpsModuleCallback.onGpsPositionUpdate(timestamp, latitude, longitude, altitude);
         }
     }
 
     private void postSpeed(float speed, float bearing) {
+        GpsFix fix = getPendingFix();
+        if (fix != null) {
+            if (speed != -1) {
+                fix.mSpeed = speed;
+                fix.mFlags |= GpsFix.HAS_SPEED;
+            }
+            if (bearing != -1) {
+                fix.mBearing = bearing;
+                fix.mFlags |= GpsFix.HAS_BEARING;
+            }
+        }
         if (mGpsModuleCallback != null) {
             mGpsModuleCallback.onGpsSpeedUpdate(speed, bearing);
         }
@@ -251,6 +405,23 @@ import java.util.TimeZone;
      */
     private static final SimpleDateFormat FORMAT = new SimpleDateFormat("ddMMyyHHmmss", Locale.US);
     private long getUpdatedTimestamp(String timeString, String dateString) {
+        try {
+            return parseTimestamp(timeString, dateString);
+        } catch (ParseException e) {
+            // Default to current time
+            return System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Apply the NMEA time parameters and parse the timestamp, without falling back to the
+     * system time.
+     * @param timeString NMEA fix time string
+     * @param dateString NMEA date string, optional
+     * @return Epoch timestamp, or -1 if the time or date is missing.
+     * @throws ParseException if the time or date is malformed.
+     */
+    private long parseTimestamp(String timeString, String dateString) throws ParseException {
         if (timeString.length() < 6) {
             // Invalid time
             return -1;
@@ -260,25 +431,19 @@ import java.util.TimeZone;
             return -1;
         }
 
-
-        try {
-            // Use last known date if not supplied
-            if (dateString == null) {
-                dateString = DateFormat.format("ddMMyy", mTimestampCalendar).toString();
-            }
-            // Truncate milliseconds
-            int pointIndex = timeString.indexOf('.');
-            if (pointIndex != -1) {
-                timeString = timeString.substring(0, pointIndex);
-            }
-
-            Date date = FORMAT.parse(dateString+timeString);
-            mTimestampCalendar.setTime(date);
-            return mTimestampCalendar.getTimeInMillis();
-        } catch (ParseException e) {
-            // Default to current time
-            return System.currentTimeMillis();
+        // Use last known date if not supplied
+        if (dateString == null) {
+            dateString = DateFormat.format("ddMMyy", mTimestampCalendar).toString();
         }
+        // Truncate milliseconds
+        int pointIndex = timeString.indexOf('.');
+        if (pointIndex != -1) {
+            timeString = timeString.substring(0, pointIndex);
+        }
+
+        Date date = FORMAT.parse(dateString+timeString);
+        mTimestampCalendar.setTime(date);
+        return mTimestampCalendar.getTimeInMillis();
     }
 
     /**
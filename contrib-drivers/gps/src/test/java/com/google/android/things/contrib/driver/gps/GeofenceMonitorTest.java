@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.things.contrib.driver.gps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceMonitorTest {
+
+    // About 111 meters of latitude
+    private static final double DEGREES_PER_100M = 100 / GeoMath.METERS_PER_DEGREE;
+
+    private static final double CENTER_LATITUDE = 0.005;
+    private static final double CENTER_LONGITUDE = 0.005;
+
+    private GeofenceMonitor mMonitor;
+    private GeofenceCallback mCallback;
+    private Geofence mFence;
+
+    /**
+     * Square fence of 0.002 degrees (about 220 m) around the center.
+     */
+    private static Geofence createFence(String id, double latitude, double longitude) {
+        return new Geofence(id,
+                new double[] {latitude - .001, latitude - .001, latitude + .001, latitude + .001},
+                new double[] {longitude - .001, longitude + .001, longitude + .001,
+                        longitude - .001});
+    }
+
+    private void moveTo(long timestamp, double latitude, double longitude) {
+        mMonitor.onGpsPositionUpdate(timestamp, latitude, longitude, -1);
+    }
+
+    @Before
+    public void setUp() {
+        mMonitor = new GeofenceMonitor();
+        mCallback = Mockito.mock(GeofenceCallback.class);
+        mMonitor.setGeofenceCallback(mCallback);
+        mFence = createFence("fence", CENTER_LATITUDE, CENTER_LONGITUDE);
+        mMonitor.addGeofence(mFence);
+    }
+
+    @Test
+    public void enterAndExit() {
+        moveTo(1, CENTER_LATITUDE + .01, CENTER_LONGITUDE);
+        Mockito.verifyZeroInteractions(mCallback);
+
+        moveTo(2, CENTER_LATITUDE, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceEnter(mFence, 2);
+        assertTrue(mMonitor.isInside(mFence));
+
+        moveTo(3, CENTER_LATITUDE + .0005, CENTER_LONGITUDE);
+        moveTo(4, CENTER_LATITUDE + .0015, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceExit(mFence, 4);
+        assertFalse(mMonitor.isInside(mFence));
+        Mockito.verifyNoMoreInteractions(mCallback);
+    }
+
+    @Test
+    public void exit_farFromFence() {
+        moveTo(1, CENTER_LATITUDE, CENTER_LONGITUDE);
+        // Not in any cell overlapping the fence
+        moveTo(2, CENTER_LATITUDE + 1, CENTER_LONGITUDE + 1);
+        Mockito.verify(mCallback).onGeofenceExit(mFence, 2);
+    }
+
+    @Test
+    public void hysteresis() {
+        mMonitor.setHysteresis(50);
+        double edge = CENTER_LATITUDE + .001;
+
+        moveTo(1, edge + DEGREES_PER_100M, CENTER_LONGITUDE);
+        // Inside, but within 50 m of the edge
+        moveTo(2, edge - DEGREES_PER_100M / 4, CENTER_LONGITUDE);
+        Mockito.verifyZeroInteractions(mCallback);
+
+        moveTo(3, edge - DEGREES_PER_100M * 3 / 4, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceEnter(mFence, 3);
+
+        // Outside, but within 50 m of the edge
+        moveTo(4, edge + DEGREES_PER_100M / 4, CENTER_LONGITUDE);
+        assertTrue(mMonitor.isInside(mFence));
+
+        moveTo(5, edge + DEGREES_PER_100M * 3 / 4, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceExit(mFence, 5);
+        Mockito.verifyNoMoreInteractions(mCallback);
+    }
+
+    @Test
+    public void multipleFences() {
+        Geofence other = createFence("other", CENTER_LATITUDE + .0015, CENTER_LONGITUDE);
+        mMonitor.addGeofence(other);
+
+        // Overlap of both fences
+        moveTo(1, CENTER_LATITUDE + .00075, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceEnter(mFence, 1);
+        Mockito.verify(mCallback).onGeofenceEnter(other, 1);
+
+        mMonitor.removeGeofence(mFence);
+        assertFalse(mMonitor.isInside(mFence));
+        assertTrue(mMonitor.isInside(other));
+
+        moveTo(2, CENTER_LATITUDE + .01, CENTER_LONGITUDE);
+        Mockito.verify(mCallback).onGeofenceExit(other, 2);
+        Mockito.verifyNoMoreInteractions(mCallback);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void addGeofence_throwsFromCallback() {
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                mMonitor.addGeofence(createFence("new", 0, 0));
+                return null;
+            }
+        }).when(mCallback).onGeofenceEnter(Mockito.any(Geofence.class), Mockito.anyLong());
+        moveTo(1, CENTER_LATITUDE, CENTER_LONGITUDE);
+    }
+}
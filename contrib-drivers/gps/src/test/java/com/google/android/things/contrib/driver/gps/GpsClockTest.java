@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.things.contrib.driver.gps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GpsClockTest {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long NANOS_PER_HOUR = 3600 * NANOS_PER_SECOND;
+    private static final long BASE_UTC = 1484000000000L;
+
+    @Rule
+    public ExpectedException mExpectedException = ExpectedException.none();
+
+    /**
+     * Returns the actual UTC time at a monotonic time, for a monotonic clock with the given drift.
+     */
+    private static double getTrueUtc(long monotonic, double driftPpm) {
+        return BASE_UTC + (double) monotonic / NANOS_PER_MILLI * (1 + driftPpm / 1e6);
+    }
+
+    /**
+     * Adds PPS samples, one per second.
+     */
+    private static void addPpsSamples(GpsClock clock, int count, double driftPpm) {
+        for (int i = 0; i < count; i++) {
+            long monotonic = Math.round(i * NANOS_PER_SECOND / (1 + driftPpm / 1e6));
+            clock.addSample(monotonic, Math.round(getTrueUtc(monotonic, driftPpm)), true);
+        }
+    }
+
+    /**
+     * Adds NMEA samples, reporting each second some time after it started.
+     */
+    private static void addNmeaSamples(GpsClock clock, int count, double driftPpm) {
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            long delay = 100 + random.nextInt(800);
+            long monotonic = Math.round((i * 1000L + delay) * NANOS_PER_MILLI
+                    / (1 + driftPpm / 1e6));
+            // Same as GpsClock.onGpsTimeUpdate(), centered in the reported second
+            clock.addSample(monotonic, BASE_UTC + i * 1000L + 500, false);
+        }
+    }
+
+    private static void assertWithinBound(GpsClock clock, long monotonic, double driftPpm) {
+        long error = Math.abs(clock.getUtcTime(monotonic)
+                - Math.round(getTrueUtc(monotonic, driftPpm)));
+        long bound = clock.getErrorBound(monotonic);
+        assertTrue("Error " + error + " ms over bound " + bound + " ms", error <= bound);
+    }
+
+    @Test
+    public void getUtcTime_throwsIfNotSynchronized() {
+        GpsClock clock = new GpsClock();
+        assertFalse(clock.isSynchronized());
+        mExpectedException.expect(IllegalStateException.class);
+        clock.getUtcTime(0);
+    }
+
+    @Test
+    public void pps_fitsDrift() {
+        GpsClock clock = new GpsClock();
+        addPpsSamples(clock, 64, 20);
+        assertTrue(clock.isSynchronized());
+        assertEquals(20, clock.getDrift(), 1);
+
+        long last = 63 * NANOS_PER_SECOND;
+        assertWithinBound(clock, last + NANOS_PER_SECOND / 2, 20);
+        assertWithinBound(clock, last + NANOS_PER_HOUR, 20);
+        // The fitted drift keeps the extrapolation close
+        assertEquals(getTrueUtc(last + NANOS_PER_HOUR, 20),
+                clock.getUtcTime(last + NANOS_PER_HOUR), 10);
+    }
+
+    @Test
+    public void pps_clampsDrift() {
+        GpsClock clock = new GpsClock();
+        addPpsSamples(clock, 10, 500);
+        assertEquals(100, clock.getDrift(), 1e-6);
+    }
+
+    @Test
+    public void nmea_doesNotFitDrift() {
+        GpsClock clock = new GpsClock();
+        addNmeaSamples(clock, 64, 80);
+        assertEquals(0, clock.getDrift(), 0);
+
+        long last = 63 * NANOS_PER_SECOND;
+        assertWithinBound(clock, last, 80);
+        assertWithinBound(clock, last + 10 * 60 * NANOS_PER_SECOND, 80);
+        assertWithinBound(clock, last + 10 * NANOS_PER_HOUR, 80);
+        assertWithinBound(clock, last + 10 * NANOS_PER_HOUR, -80);
+    }
+
+    @Test
+    public void getErrorBound_growsWithTime() {
+        GpsClock clock = new GpsClock();
+        addPpsSamples(clock, 10, 0);
+        long last = 9 * NANOS_PER_SECOND;
+        long bound = clock.getErrorBound(last);
+        assertTrue(bound <= 2);
+        // 100 ppm over an hour
+        assertEquals(bound + 360, clock.getErrorBound(last + NANOS_PER_HOUR));
+    }
+
+    @Test
+    public void addSample_restartsAfterStep() {
+        GpsClock clock = new GpsClock();
+        addPpsSamples(clock, 10, 0);
+        // The GPS time jumps by 10 seconds
+        clock.addSample(10 * NANOS_PER_SECOND, BASE_UTC + 20000, true);
+        assertEquals(BASE_UTC + 20000, clock.getUtcTime(10 * NANOS_PER_SECOND));
+        assertEquals(BASE_UTC + 21000, clock.getUtcTime(11 * NANOS_PER_SECOND));
+    }
+}
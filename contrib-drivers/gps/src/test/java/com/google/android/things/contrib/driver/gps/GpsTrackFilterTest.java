@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.things.contrib.driver.gps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+
+public class GpsTrackFilterTest {
+
+    private static final double DEGREES_PER_METER = 1 / GeoMath.METERS_PER_DEGREE;
+
+    private GpsModuleCallback mCallback;
+    private GpsTrackFilter mFilter;
+
+    @Before
+    public void setUp() {
+        mCallback = Mockito.mock(GpsModuleCallback.class);
+        mFilter = new GpsTrackFilter(mCallback);
+        mFilter.setMinDistance(10);
+    }
+
+    @Test
+    public void dropsCloseFixes() {
+        mFilter.onGpsPositionUpdate(1, 0, 0, -1);
+        mFilter.onGpsSpeedUpdate(1, 0);
+        mFilter.onGpsPositionUpdate(2, 5 * DEGREES_PER_METER, 0, -1);
+        mFilter.onGpsSpeedUpdate(2, 0);
+        mFilter.onGpsPositionUpdate(3, 12 * DEGREES_PER_METER, 0, -1);
+
+        Mockito.verify(mCallback).onGpsPositionUpdate(1, 0, 0, -1);
+        Mockito.verify(mCallback).onGpsSpeedUpdate(1, 0);
+        Mockito.verify(mCallback).onGpsPositionUpdate(3, 12 * DEGREES_PER_METER, 0, -1);
+        Mockito.verifyNoMoreInteractions(mCallback);
+        assertEquals(12, mFilter.getDistance(), .01);
+        assertEquals(0, mFilter.getBearing(), .01);
+    }
+
+    @Test
+    public void maxInterval() {
+        mFilter.setMaxInterval(1000);
+        mFilter.onGpsPositionUpdate(0, 0, 0, -1);
+        mFilter.onGpsPositionUpdate(500, 0, 0, -1);
+        mFilter.onGpsPositionUpdate(1000, 0, 0, -1);
+        Mockito.verify(mCallback).onGpsPositionUpdate(0, 0, 0, -1);
+        Mockito.verify(mCallback).onGpsPositionUpdate(1000, 0, 0, -1);
+        Mockito.verifyNoMoreInteractions(mCallback);
+    }
+
+    @Test
+    public void totalDistance() {
+        // East along the equator, then across the antimeridian
+        mFilter.onGpsPositionUpdate(1, 0, 179.9999, -1);
+        mFilter.onGpsPositionUpdate(2, 0, -179.9999, -1);
+        double expected = .0002 * GeoMath.METERS_PER_DEGREE;
+        assertEquals(expected, mFilter.getTotalDistance(), .01);
+        assertEquals(90, mFilter.getBearing(), .01);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.things.contrib.driver.gps;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GpsTrackTest {
+
+    private static final double DEGREES_TOLERANCE = 1e-7;
+    private static final double ALTITUDE_TOLERANCE = .01;
+    private static final long START_TIME = 1484000000000L;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static long getTime(int i) {
+        return START_TIME + i * 1000L;
+    }
+
+    private static double getLatitude(int i) {
+        return 37.4 + i * 1.3e-5;
+    }
+
+    private static double getLongitude(int i) {
+        return -122.1 - i * 2.1e-5 + (i % 7) * 1e-6;
+    }
+
+    private static double getAltitude(int i) {
+        // Some fixes without altitude
+        return i % 10 == 0 ? -1 : 30 + (i % 50) * .37;
+    }
+
+    private static void record(GpsTrackRecorder recorder, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            recorder.record(getTime(i), getLatitude(i), getLongitude(i), getAltitude(i));
+        }
+    }
+
+    private static void assertFix(GpsTrackReader reader, int i) {
+        assertEquals(getTime(i), reader.getTimestamp());
+        assertEquals(getLatitude(i), reader.getLatitude(), DEGREES_TOLERANCE);
+        assertEquals(getLongitude(i), reader.getLongitude(), DEGREES_TOLERANCE);
+        assertEquals(getAltitude(i), reader.getAltitude(), ALTITUDE_TOLERANCE);
+    }
+
+    private static void assertFixes(GpsTrackReader reader, int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertTrue("Missing fix " + i, reader.next());
+            assertFix(reader, i);
+        }
+    }
+
+    @Test
+    public void roundTrip_acrossBlocks() throws IOException {
+        File file = mFolder.newFile();
+        int count = 3000;
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, count);
+        }
+        // Several blocks were written
+        assertTrue(file.length() > GpsTrackFormat.getBlockOffset(2));
+
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            assertFixes(reader, 0, count);
+            assertFalse(reader.next());
+
+            reader.rewind();
+            assertFixes(reader, 0, 1);
+        }
+    }
+
+    @Test
+    public void roundTrip_largeDeltas() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            recorder.record(0, -89.9, -179.9, -1);
+            recorder.record(Long.MAX_VALUE / 2, 89.9, 179.9, 8848.86);
+            recorder.record(1, -89.9, 179.9, -420);
+        }
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            assertTrue(reader.next());
+            assertEquals(-179.9, reader.getLongitude(), DEGREES_TOLERANCE);
+            assertEquals(-1, reader.getAltitude(), 0);
+            assertTrue(reader.next());
+            assertEquals(Long.MAX_VALUE / 2, reader.getTimestamp());
+            assertEquals(89.9, reader.getLatitude(), DEGREES_TOLERANCE);
+            assertEquals(8848.86, reader.getAltitude(), ALTITUDE_TOLERANCE);
+            assertTrue(reader.next());
+            assertEquals(1, reader.getTimestamp());
+            assertEquals(179.9, reader.getLongitude(), DEGREES_TOLERANCE);
+            assertEquals(-420, reader.getAltitude(), ALTITUDE_TOLERANCE);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void append() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 10);
+        }
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 10, 1000);
+        }
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 1000, 1001);
+        }
+
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            assertFixes(reader, 0, 1001);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void flush_visibleToNewReader() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 5);
+            recorder.flush();
+            try (GpsTrackReader reader = new GpsTrackReader(file)) {
+                assertFixes(reader, 0, 5);
+                assertFalse(reader.next());
+            }
+        }
+    }
+
+    @Test
+    public void seek() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 3000);
+        }
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            reader.seek(getTime(2500));
+            assertFixes(reader, 2500, 2510);
+
+            // Between two fixes
+            reader.seek(getTime(1234) - 500);
+            assertFixes(reader, 1234, 1235);
+
+            // Keyframe of a block
+            reader.seek(getTime(0));
+            assertFixes(reader, 0, 1);
+
+            reader.seek(getTime(0) - 1);
+            assertFixes(reader, 0, 1);
+
+            reader.seek(getTime(3000));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void read_timeRange() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 3000);
+        }
+        GpsModuleCallback callback = Mockito.mock(GpsModuleCallback.class);
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            reader.read(getTime(900), getTime(1100), callback);
+        }
+        Mockito.verify(callback, Mockito.times(201)).onGpsPositionUpdate(Mockito.anyLong(),
+                Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyDouble());
+        Mockito.verify(callback).onGpsPositionUpdate(Mockito.eq(getTime(900)),
+                Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyDouble());
+        Mockito.verify(callback).onGpsPositionUpdate(Mockito.eq(getTime(1100)),
+                Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyDouble());
+        Mockito.verify(callback, Mockito.never()).onGpsPositionUpdate(Mockito.eq(getTime(1101)),
+                Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyDouble());
+    }
+
+    @Test
+    public void onGpsPositionUpdate_recordsEpochOnce() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            for (int i = 0; i < 3; i++) {
+                // GGA with altitude, then RMC without, for the same epoch
+                recorder.onGpsPositionUpdate(getTime(i), getLatitude(i), getLongitude(i), 30);
+                recorder.onGpsPositionUpdate(getTime(i), getLatitude(i), getLongitude(i), -1);
+            }
+        }
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(reader.next());
+                assertEquals(getTime(i), reader.getTimestamp());
+                assertEquals(30, reader.getAltitude(), ALTITUDE_TOLERANCE);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+
+    @Test
+    public void read_partialRecord() throws IOException {
+        File file = mFolder.newFile();
+        long completeLength;
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 9);
+            recorder.flush();
+            completeLength = file.length();
+            record(recorder, 9, 10);
+        }
+        // Cut the last record at every byte, as a crash of the recorder would
+        for (long length = file.length() - 1; length > completeLength; length--) {
+            truncate(file, length);
+            try (GpsTrackReader reader = new GpsTrackReader(file)) {
+                assertFixes(reader, 0, 9);
+                assertFalse(reader.next());
+                reader.seek(getTime(9));
+                assertFalse(reader.next());
+            }
+        }
+    }
+
+    @Test
+    public void read_partialKeyframe() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 1);
+        }
+        truncate(file, GpsTrackFormat.HEADER_SIZE + GpsTrackFormat.KEYFRAME_SIZE - 1);
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            assertFalse(reader.next());
+            reader.seek(getTime(0));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void append_afterPartialRecord() throws IOException {
+        File file = mFolder.newFile();
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 0, 10);
+        }
+        truncate(file, file.length() - 1);
+        try (GpsTrackRecorder recorder = new GpsTrackRecorder(file)) {
+            record(recorder, 10, 20);
+        }
+
+        try (GpsTrackReader reader = new GpsTrackReader(file)) {
+            assertFixes(reader, 0, 9);
+            assertFixes(reader, 10, 20);
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void reader_rejectsOtherFiles() throws IOException {
+        File file = mFolder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        }
+        new GpsTrackReader(file);
+    }
+
+    @Test
+    public void varints() {
+        byte[] buffer = new byte[10];
+        long[] values = {0, 1, -1, 63, -64, 64, Long.MAX_VALUE, Long.MIN_VALUE};
+        int[] sizes = {1, 1, 1, 1, 1, 2, 10, 10};
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(sizes[i], GpsTrackFormat.writeVarLong(buffer, 0, values[i]));
+        }
+        assertEquals(5, GpsTrackFormat.writeVarInt(buffer, 0, Integer.MIN_VALUE));
+    }
+}
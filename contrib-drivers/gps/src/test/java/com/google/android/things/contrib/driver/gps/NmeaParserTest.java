@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.things.contrib.driver.gps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class NmeaParserTest {
+
+    private NmeaParser mParser;
+    private GpsModuleCallback mModuleCallback;
+    private GpsFixCallback mFixCallback;
+
+    @Before
+    public void setUp() {
+        mParser = new NmeaParser();
+        mModuleCallback = Mockito.mock(GpsModuleCallback.class);
+        mFixCallback = Mockito.mock(GpsFixCallback.class);
+        mParser.setGpsModuleCallback(mModuleCallback);
+        mParser.setGpsFixCallback(mFixCallback);
+    }
+
+    /**
+     * Frames a sentence as received by the module, without the leading '$' and with its
+     * checksum.
+     */
+    private void process(String sentence) {
+        int checksum = 0;
+        for (int i = 0; i < sentence.length(); i++) {
+            checksum ^= sentence.charAt(i);
+        }
+        String frame = String.format("%s*%02X", sentence, checksum);
+        mParser.processMessageFrame(frame.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String rmc(String time, String status) {
+        return "GPRMC," + time + "," + status
+                + ",4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W";
+    }
+
+    private static String vtg() {
+        return "GPVTG,054.7,T,034.4,M,005.5,N,010.2,K";
+    }
+
+    @Test
+    public void gpsFix_firstDeliveredAtNextEpoch() {
+        process(rmc("123519", "A"));
+        Mockito.verifyZeroInteractions(mFixCallback);
+        process(rmc("123520", "A"));
+
+        ArgumentCaptor<GpsFix> fix = ArgumentCaptor.forClass(GpsFix.class);
+        Mockito.verify(mFixCallback, Mockito.atLeastOnce()).onGpsFix(fix.capture());
+        GpsFix first = fix.getAllValues().get(0);
+        assertTrue(first.hasPosition());
+        assertTrue(first.hasSpeed());
+        assertEquals(48.1173, first.getLatitude(), 1e-4);
+        first.recycle();
+    }
+
+    @Test
+    public void gpsFix_deliveredOnLastSentenceOfEpoch() {
+        process(rmc("123519", "A"));
+        process(vtg());
+        process(rmc("123520", "A"));
+        Mockito.verify(mFixCallback, Mockito.times(1)).onGpsFix(Mockito.any(GpsFix.class));
+
+        // VTG closes the epochs, the fix is delivered without waiting for the next one
+        process(vtg());
+        ArgumentCaptor<GpsFix> fix = ArgumentCaptor.forClass(GpsFix.class);
+        Mockito.verify(mFixCallback, Mockito.times(2)).onGpsFix(fix.capture());
+        GpsFix second = fix.getAllValues().get(1);
+        assertTrue(second.hasPosition());
+        // 5.5 knots from the VTG sentence
+        assertEquals(2.83, second.getSpeed(), .01);
+    }
+
+    @Test
+    public void gpsFix_skipsEpochWithoutFix() {
+        process(rmc("123519", "V"));
+        process(rmc("123520", "V"));
+        process(rmc("123521", "A"));
+        process(rmc("123522", "A"));
+
+        ArgumentCaptor<GpsFix> fix = ArgumentCaptor.forClass(GpsFix.class);
+        Mockito.verify(mFixCallback, Mockito.times(2)).onGpsFix(fix.capture());
+        for (GpsFix value : fix.getAllValues()) {
+            assertNotNull(value);
+        }
+    }
+
+    @Test
+    public void timeUpdate() {
+        process(rmc("123519", "A"));
+        // 23 March 1994 12:35:19 UTC
+        Mockito.verify(mModuleCallback).onGpsTimeUpdate(764426119000L);
+    }
+
+    @Test
+    public void timeUpdate_skipsMalformedTime() {
+        process(rmc("12a519", "A"));
+        Mockito.verify(mModuleCallback, Mockito.never()).onGpsTimeUpdate(Mockito.anyLong());
+        // The position is still reported
+        Mockito.verify(mModuleCallback).onGpsPositionUpdate(Mockito.anyLong(),
+                Mockito.anyDouble(), Mockito.anyDouble(), Mockito.anyDouble());
+    }
+}